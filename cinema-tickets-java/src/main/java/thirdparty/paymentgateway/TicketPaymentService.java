@@ -4,4 +4,6 @@ public interface TicketPaymentService {
 
     void makePayment(long accountId, int totalAmountToPay);
 
+    void refundPayment(long accountId, int totalAmountToRefund);
+
 }
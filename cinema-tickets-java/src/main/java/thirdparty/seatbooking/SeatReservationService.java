@@ -4,4 +4,6 @@ public interface SeatReservationService {
 
     void reserveSeat(long accountId, int totalSeatsToAllocate);
 
+    void releaseSeat(long accountId, int totalSeatsToRelease);
+
 }
@@ -0,0 +1,39 @@
+package uk.gov.dwp.uc.pairtest;
+
+import uk.gov.dwp.uc.pairtest.domain.TicketPurchaseReceipt;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * TicketService decorator recording every purchase attempt, and the reason for
+ * every rejection or failure, in a PurchaseAuditLog. The reason of a failure
+ * is its exception message, or the exception class without one.
+ * 
+ */
+public class AuditingTicketService implements TicketService {
+    private final TicketService ticketService;
+    private final PurchaseAuditLog purchaseAuditLog;
+
+    public AuditingTicketService(TicketService ticketService, PurchaseAuditLog purchaseAuditLog) {
+        this.ticketService = ticketService;
+        this.purchaseAuditLog = purchaseAuditLog;
+    }
+
+    @Override
+    public TicketPurchaseReceipt purchaseTickets(Long accountId, TicketTypeRequest... ticketTypeRequests)
+            throws InvalidPurchaseException {
+        TicketPurchaseReceipt receipt;
+        try {
+            receipt = ticketService.purchaseTickets(accountId, ticketTypeRequests);
+        } catch (InvalidPurchaseException e) {
+            purchaseAuditLog.record(accountId, ticketTypeRequests, e.getMessage(), false);
+            throw e;
+        } catch (RuntimeException e) {
+            purchaseAuditLog.record(accountId, ticketTypeRequests,
+                    e.getMessage() != null ? e.getMessage() : e.getClass().getName(), true);
+            throw e;
+        }
+        purchaseAuditLog.record(accountId, ticketTypeRequests, null, false);
+        return receipt;
+    }
+}
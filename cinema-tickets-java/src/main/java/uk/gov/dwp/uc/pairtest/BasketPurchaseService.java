@@ -0,0 +1,215 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import uk.gov.dwp.uc.pairtest.domain.BasketItem;
+import uk.gov.dwp.uc.pairtest.domain.PricingContext;
+import uk.gov.dwp.uc.pairtest.domain.TicketPurchaseReceipt;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Purchases tickets for several screenings in one checkout, all or nothing.
+ * 
+ * Every screening's ticket requests are validated before anything is reserved.
+ * Seats are then reserved for all screenings in parallel, the last on the
+ * calling thread, and one payment is taken for the whole basket. If any
+ * reservation or the payment fails, every reservation that succeeded is
+ * released before the failure is rethrown, so no partial booking is left
+ * behind. Releases go through the ticket purchase service's outbox where it
+ * has one, as the compensations of single screening purchases do.
+ * 
+ * Pricing, the payment, ticket ids and purchase listeners all go through the
+ * application's TicketPurchaseService. Each screening is priced as an order of
+ * its own with the active promotions, and listeners are notified of each
+ * screening as a purchase of that screening at its price.
+ * 
+ */
+public class BasketPurchaseService {
+    private final ValidationService validationService;
+    private final ScreeningSeatInventory seatInventory;
+    private final TicketPurchaseService ticketPurchaseService;
+    private final Executor reservationExecutor;
+
+    /**
+     * 
+     * @param seatInventory         seat inventory of every screening
+     * @param ticketPurchaseService ticket purchase service baskets are priced,
+     *                              paid for and reported through
+     * @param reservationExecutor   executor reservations run on in parallel
+     * 
+     */
+    public BasketPurchaseService(ScreeningSeatInventory seatInventory, TicketPurchaseService ticketPurchaseService,
+            Executor reservationExecutor) {
+        this(new ValidationService(), seatInventory, ticketPurchaseService, reservationExecutor);
+    }
+
+    BasketPurchaseService(ValidationService validationService, ScreeningSeatInventory seatInventory,
+            TicketPurchaseService ticketPurchaseService, Executor reservationExecutor) {
+        this.validationService = validationService;
+        this.seatInventory = seatInventory;
+        this.ticketPurchaseService = ticketPurchaseService;
+        this.reservationExecutor = reservationExecutor;
+    }
+
+    /**
+     * Purchase tickets for every screening of a basket
+     * 
+     * @param accountId   account Id
+     * @param basketItems one item per screening
+     * @return receipt with one ticket id per ticket, in basket order
+     * @throws InvalidPurchaseException if the basket is invalid or a screening
+     *                                  has not enough seats available
+     * 
+     */
+    public TicketPurchaseReceipt purchase(Long accountId, BasketItem... basketItems)
+            throws InvalidPurchaseException {
+        return purchase(accountId, PricingContext.STANDARD, basketItems);
+    }
+
+    /**
+     * Purchase tickets for every screening of a basket, at the best prices the
+     * active promotions give in a pricing context
+     * 
+     * @param accountId      account Id
+     * @param pricingContext pricing context
+     * @param basketItems    one item per screening
+     * @return receipt with one ticket id per ticket, in basket order
+     * @throws InvalidPurchaseException if the basket is invalid or a screening
+     *                                  has not enough seats available
+     * 
+     */
+    public TicketPurchaseReceipt purchase(Long accountId, PricingContext pricingContext, BasketItem... basketItems)
+            throws InvalidPurchaseException {
+        validationService.validate(accountId);
+        if (basketItems == null || basketItems.length == 0) {
+            throw new InvalidPurchaseException("Basket cannot be null or empty");
+        }
+
+        TicketTypeRequest[][] itemRequests = new TicketTypeRequest[basketItems.length][];
+        int[] itemSeats = new int[basketItems.length];
+        int[] itemCosts = new int[basketItems.length];
+        int totalCost = 0;
+        int totalSeats = 0;
+        int totalTickets = 0;
+        for (int i = 0; i < basketItems.length; i++) {
+            if (basketItems[i] == null) {
+                throw new InvalidPurchaseException("Basket item cannot be null");
+            }
+            itemRequests[i] = basketItems[i].getTicketTypeRequests();
+            validationService.validate(itemRequests[i]);
+            itemCosts[i] = ticketPurchaseService.getTotalCost(pricingContext, itemRequests[i]);
+            totalCost += itemCosts[i];
+
+            for (TicketTypeRequest ticketTypeRequest : itemRequests[i]) {
+                totalTickets += ticketTypeRequest.getNoOfTickets();
+                // Exclude infants from seat reservation count
+                if (!ticketTypeRequest.getTicketType().equals(TicketTypeRequest.Type.INFANT)) {
+                    itemSeats[i] += ticketTypeRequest.getNoOfTickets();
+                }
+            }
+            totalSeats += itemSeats[i];
+        }
+
+        boolean[] reserved = reserveAll(basketItems, itemSeats);
+        try {
+            ticketPurchaseService.takePayment(accountId, totalCost);
+        } catch (RuntimeException e) {
+            releaseReserved(e, basketItems, itemSeats, reserved);
+            throw e;
+        }
+
+        for (int i = 0; i < basketItems.length; i++) {
+            ticketPurchaseService.purchaseCompleted(basketItems[i].getScreening(), accountId, itemCosts[i],
+                    itemRequests[i]);
+        }
+        return new TicketPurchaseReceipt(accountId, ticketPurchaseService.nextTicketIds(totalTickets), totalSeats,
+                totalCost);
+    }
+
+    /**
+     * Reserve every item's seats in parallel, releasing them all if any item
+     * cannot be reserved or the executor refuses a reservation
+     * 
+     * @return which items have seats reserved
+     * 
+     */
+    private boolean[] reserveAll(BasketItem[] basketItems, int[] itemSeats) {
+        int last = basketItems.length - 1;
+        List<CompletableFuture<Boolean>> reservations = new ArrayList<>(last);
+        RuntimeException failure = null;
+        for (int i = 0; i < last; i++) {
+            int item = i;
+            try {
+                reservations.add(CompletableFuture.supplyAsync(() -> reserve(basketItems[item], itemSeats[item]),
+                        reservationExecutor));
+            } catch (RejectedExecutionException e) {
+                failure = e;
+                break;
+            }
+        }
+
+        boolean[] reserved = new boolean[basketItems.length];
+        if (failure == null) {
+            try {
+                reserved[last] = reserve(basketItems[last], itemSeats[last]);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        for (int i = 0; i < reservations.size(); i++) {
+            try {
+                reserved[i] = reservations.get(i).join();
+            } catch (CompletionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                        : e;
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+
+        if (failure == null) {
+            for (int i = 0; i <= last; i++) {
+                if (!reserved[i]) {
+                    failure = new InvalidPurchaseException("Not enough seats available");
+                    break;
+                }
+            }
+        }
+        if (failure != null) {
+            releaseReserved(failure, basketItems, itemSeats, reserved);
+            throw failure;
+        }
+        return reserved;
+    }
+
+    private boolean reserve(BasketItem basketItem, int seats) {
+        return seats == 0 || seatInventory.reserve(basketItem.getScreening(), seats);
+    }
+
+    /**
+     * Release the seats of every reserved item through the outbox of the
+     * ticket purchase service, if it has one, so a release that fails is
+     * replayed rather than lost. A release that fails without an outbox is
+     * recorded against the original failure rather than hidden
+     * 
+     */
+    private void releaseReserved(RuntimeException failure, BasketItem[] basketItems, int[] itemSeats,
+            boolean[] reserved) {
+        for (int i = 0; i < basketItems.length; i++) {
+            if (!reserved[i] || itemSeats[i] == 0) {
+                continue;
+            }
+            ticketPurchaseService.releaseScreeningSeats(failure, seatInventory, basketItems[i].getScreening(),
+                    itemSeats[i]);
+        }
+    }
+}
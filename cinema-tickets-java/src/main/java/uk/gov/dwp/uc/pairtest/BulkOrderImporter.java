@@ -0,0 +1,293 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Bulk import of block bookings from a CSV order file.
+ * 
+ * Each line holds one order: accountId,adultTickets,childTickets,infantTickets
+ * (blank lines and lines starting with '#' are ignored). The file is memory
+ * mapped and parsed straight from the mapped bytes, orders are validated in
+ * parallel and the accepted orders are then purchased in parallel, so orders
+ * competing for the last seats are not served in file order. A report line is
+ * written for every order: lineNumber,ACCEPTED or lineNumber,REJECTED,reason.
+ * 
+ */
+public class BulkOrderImporter {
+    private static final int VALIDATION_BATCH_SIZE = 1024;
+    private static final int PURCHASE_BATCH_SIZE = 8;
+    private static final String MALFORMED_LINE = "Malformed order line";
+    private static final TicketTypeRequestUtilities ticketTypeRequestUtilities = new TicketTypeRequestUtilities();
+
+    private final ValidationService validationService;
+    private final TicketPurchaseService ticketPurchaseService;
+    private final ForkJoinPool forkJoinPool;
+
+    public BulkOrderImporter(ValidationService validationService, TicketPurchaseService ticketPurchaseService) {
+        this(validationService, ticketPurchaseService, ForkJoinPool.commonPool());
+    }
+
+    public BulkOrderImporter(ValidationService validationService, TicketPurchaseService ticketPurchaseService,
+            ForkJoinPool forkJoinPool) {
+        this.validationService = validationService;
+        this.ticketPurchaseService = ticketPurchaseService;
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * Import orders from an order file and write the outcome of each order to a
+     * report file
+     * 
+     * @param orderFile  order file
+     * @param reportFile report file, replaced if it exists
+     * @return number of orders accepted and purchased
+     * @throws IOException if the order file cannot be read or the report written
+     * 
+     */
+    public int importOrders(Path orderFile, Path reportFile) throws IOException {
+        Orders orders = parse(orderFile);
+
+        forkJoinPool.invoke(new ValidateOrders(orders, 0, orders.size));
+        forkJoinPool.invoke(new PurchaseOrders(orders, 0, orders.size));
+
+        int accepted = 0;
+        for (int i = 0; i < orders.size; i++) {
+            if (orders.outcomes[i] == null) {
+                accepted++;
+            }
+        }
+
+        writeReport(orders, reportFile);
+        return accepted;
+    }
+
+    /**
+     * Parse the order file from a read only mapping of the file
+     * 
+     * @param orderFile order file
+     * @return parsed orders
+     * @throws IOException if the order file cannot be read
+     * 
+     */
+    private Orders parse(Path orderFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(orderFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Order file too large to import: " + orderFile);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Orders orders = new Orders();
+            int lineNumber = 0;
+            int position = 0;
+            int limit = buffer.limit();
+
+            while (position < limit) {
+                lineNumber++;
+                int end = position;
+                while (end < limit && buffer.get(end) != '\n') {
+                    end++;
+                }
+                int lineEnd = end > position && buffer.get(end - 1) == '\r' ? end - 1 : end;
+
+                if (lineEnd > position && buffer.get(position) != '#') {
+                    orders.add(lineNumber);
+                    parseLine(buffer, position, lineEnd, orders, orders.size - 1);
+                }
+                position = end + 1;
+            }
+            return orders;
+        }
+    }
+
+    /**
+     * Parse the four comma separated fields of an order line, marking the order
+     * malformed if a field is missing or not a number
+     * 
+     */
+    private void parseLine(MappedByteBuffer buffer, int start, int end, Orders orders, int index) {
+        int field = 0;
+        long value = 0;
+        int digits = 0;
+
+        for (int i = start; i <= end; i++) {
+            byte b = i < end ? buffer.get(i) : (byte) ',';
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                if (++digits > 18) {
+                    orders.outcomes[index] = MALFORMED_LINE;
+                    return;
+                }
+            } else if (b == ',') {
+                if (digits == 0 || field > 3 || (field > 0 && value > Integer.MAX_VALUE)) {
+                    orders.outcomes[index] = MALFORMED_LINE;
+                    return;
+                }
+                switch (field++) {
+                    case 0:
+                        orders.accountIds[index] = value;
+                        break;
+                    case 1:
+                        orders.adultTickets[index] = (int) value;
+                        break;
+                    case 2:
+                        orders.childTickets[index] = (int) value;
+                        break;
+                    default:
+                        orders.infantTickets[index] = (int) value;
+                }
+                value = 0;
+                digits = 0;
+            } else if (b != ' ') {
+                orders.outcomes[index] = MALFORMED_LINE;
+                return;
+            }
+        }
+
+        if (field != 4) {
+            orders.outcomes[index] = MALFORMED_LINE;
+        }
+    }
+
+    /**
+     * Write the outcome of each order to the report file
+     * 
+     */
+    private void writeReport(Orders orders, Path reportFile) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < orders.size; i++) {
+                writer.write(Integer.toString(orders.lineNumbers[i]));
+                if (orders.outcomes[i] == null) {
+                    writer.write(",ACCEPTED");
+                } else {
+                    writer.write(",REJECTED,");
+                    writer.write(orders.outcomes[i]);
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Validates a range of orders, splitting the range until it is small enough
+     * to validate directly
+     * 
+     */
+    private class ValidateOrders extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Orders orders;
+        private final int from;
+        private final int to;
+
+        ValidateOrders(Orders orders, int from, int to) {
+            this.orders = orders;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > VALIDATION_BATCH_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ValidateOrders(orders, from, middle), new ValidateOrders(orders, middle, to));
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                if (orders.outcomes[i] != null) {
+                    continue;
+                }
+                try {
+                    validationService.validate(orders.accountIds[i]);
+                    validationService.validate(orders.ticketTypeRequests(i));
+                } catch (InvalidPurchaseException e) {
+                    orders.outcomes[i] = e.getMessage();
+                }
+            }
+        }
+    }
+
+    /**
+     * Purchases the accepted orders in a range, splitting the range into small
+     * batches as each purchase waits on seat reservation and payment
+     * 
+     */
+    private class PurchaseOrders extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Orders orders;
+        private final int from;
+        private final int to;
+
+        PurchaseOrders(Orders orders, int from, int to) {
+            this.orders = orders;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PURCHASE_BATCH_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PurchaseOrders(orders, from, middle), new PurchaseOrders(orders, middle, to));
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                if (orders.outcomes[i] != null) {
+                    continue;
+                }
+                try {
+                    ticketPurchaseService.purchase(orders.accountIds[i], orders.ticketTypeRequests(i));
+                } catch (RuntimeException e) {
+                    orders.outcomes[i] = String.valueOf(e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Parsed orders held column by column, outcome is null while an order is
+     * accepted and holds the rejection reason once rejected
+     * 
+     */
+    private static class Orders {
+        int size;
+        int[] lineNumbers = new int[1024];
+        long[] accountIds = new long[1024];
+        int[] adultTickets = new int[1024];
+        int[] childTickets = new int[1024];
+        int[] infantTickets = new int[1024];
+        String[] outcomes = new String[1024];
+
+        void add(int lineNumber) {
+            if (size == lineNumbers.length) {
+                int capacity = size * 2;
+                lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+                accountIds = Arrays.copyOf(accountIds, capacity);
+                adultTickets = Arrays.copyOf(adultTickets, capacity);
+                childTickets = Arrays.copyOf(childTickets, capacity);
+                infantTickets = Arrays.copyOf(infantTickets, capacity);
+                outcomes = Arrays.copyOf(outcomes, capacity);
+            }
+            lineNumbers[size++] = lineNumber;
+        }
+
+        TicketTypeRequest[] ticketTypeRequests(int index) {
+            return ticketTypeRequestUtilities.getTicketTypeRequests(adultTickets[index], childTickets[index],
+                    infantTickets[index]);
+        }
+    }
+}
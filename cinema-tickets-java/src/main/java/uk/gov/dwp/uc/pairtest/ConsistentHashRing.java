@@ -0,0 +1,99 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.Arrays;
+
+/**
+ * Immutable consistent hash ring routing screenings to shards.
+ *
+ * Each shard is placed on the ring at a number of virtual points so that
+ * screenings spread evenly, and adding a shard only moves the screenings
+ * falling just before its points, about 1/n of them, from the shards that
+ * owned those points. Lookups binary search sorted arrays and allocate
+ * nothing.
+ *
+ */
+public class ConsistentHashRing {
+    static final int VIRTUAL_POINTS = 128;
+
+    private final long[] points;
+    private final int[] owners;
+    private final int shards;
+
+    public ConsistentHashRing() {
+        this(new long[0], new int[0], 0);
+    }
+
+    private ConsistentHashRing(long[] points, int[] owners, int shards) {
+        this.points = points;
+        this.owners = owners;
+        this.shards = shards;
+    }
+
+    /**
+     * Create a ring with one more shard, numbered after the existing ones
+     *
+     * @param shardKey key the shard's points are derived from, unique per shard
+     * @return new ring
+     *
+     */
+    public ConsistentHashRing withShard(String shardKey) {
+        int size = points.length + VIRTUAL_POINTS;
+        long[] newPoints = new long[size];
+        int[] newOwners = new int[size];
+
+        long[] added = new long[VIRTUAL_POINTS];
+        for (int i = 0; i < VIRTUAL_POINTS; i++) {
+            added[i] = mix((long) shardKey.hashCode() << 32 | i);
+        }
+        Arrays.sort(added);
+
+        // Merge the sorted existing and added points
+        int existing = 0;
+        int next = 0;
+        for (int i = 0; i < size; i++) {
+            if (next == VIRTUAL_POINTS || existing < points.length && points[existing] <= added[next]) {
+                newPoints[i] = points[existing];
+                newOwners[i] = owners[existing++];
+            } else {
+                newPoints[i] = added[next++];
+                newOwners[i] = shards;
+            }
+        }
+        return new ConsistentHashRing(newPoints, newOwners, shards + 1);
+    }
+
+    /**
+     * Find the shard owning a screening, the owner of the first point at or
+     * after the screening's hash
+     *
+     * @param screening screening number
+     * @return shard number
+     *
+     */
+    public int ownerOf(int screening) {
+        if (shards == 0) {
+            throw new IllegalStateException("No shards on the ring");
+        }
+        int index = Arrays.binarySearch(points, mix(screening));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * 64 bit finalizer from MurmurHash3, spreads nearby values over the ring
+     *
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        return value ^ value >>> 33;
+    }
+}
@@ -0,0 +1,373 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Seat maps for many screenings held off heap.
+ *
+ * Every screening has the same number of seats, packed two bits to a seat and
+ * 32 seats to a long word, in direct buffers allocated once up front. The heap
+ * holds only the buffer references, so heap use and GC work do not grow with
+ * the number of screenings. Words are updated with compare and set, so
+ * reservations for different screenings never contend and reservations for
+ * the same screening only retry when they touch the same word.
+ *
+ * Seats are counted rather than named: a reservation takes any free seats of
+ * the screening and a release frees any reserved ones. A reservation that
+ * spans words first marks seats HELD one word at a time, then turns as many
+ * HELD seats RESERVED, or back to FREE if not enough seats were found, so it
+ * is all or nothing. Held seats are not available, so a reservation racing
+ * another that is about to be rolled back may be refused while the screening
+ * is nearly full.
+ *
+ * Availability reads are served from consistent snapshots without locking.
+ * Each screening's seat words are preceded by two version words, one counting
+ * moves started and one counting moves finished. The counters are only ever
+ * compared for equality, so they may wrap around without harm. A reader reads
+ * moves started and finished, copies the seat words, then reads moves started
+ * again, and keeps the copy only if no move was in flight and none started
+ * since, like a seqlock that lets several writers in at once. Writers never
+ * wait for readers; a reader that loses the race to writers retries, spinning
+ * at first and then yielding in case a writer was descheduled mid move.
+ *
+ * Readers retry a bounded number of times. A reader still racing writers after
+ * that keeps its last copy instead: a lock-free approximate read, in which
+ * seats being moved show as HELD and are not counted as available. Such reads
+ * are counted in getApproximateReads.
+ *
+ */
+public class OffHeapSeatInventory implements ScreeningSeatInventory {
+    static final int FREE = 0;
+    static final int HELD = 1;
+    static final int RESERVED = 2;
+    static final int SEATS_PER_WORD = 32;
+    static final int SNAPSHOT_SPINS = 64;
+    static final int SNAPSHOT_ATTEMPTS = 1024;
+    // Version words ahead of a screening's seat words
+    private static final int MOVES_STARTED = 0;
+    private static final int MOVES_FINISHED = 1;
+    private static final int VERSION_WORDS = 2;
+    // Low bit of every two bit seat
+    private static final long LOW_BITS = 0x5555555555555555L;
+    private static final long MAX_CHUNK_BYTES = 1L << 30;
+    private static final VarHandle WORDS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+
+    private final int screenings;
+    private final int seatsPerScreening;
+    private final int wordsPerScreening;
+    // The version words followed by the seat words
+    private final int screeningWords;
+    private final long lastWordSeats;
+    private final int screeningsPerChunk;
+    private final ByteBuffer[] chunks;
+    private final LongAdder approximateReads = new LongAdder();
+
+    /**
+     *
+     * @param screenings        number of screenings, numbered from 0
+     * @param seatsPerScreening seats in every screening
+     *
+     */
+    public OffHeapSeatInventory(int screenings, int seatsPerScreening) {
+        if (screenings <= 0 || seatsPerScreening <= 0) {
+            throw new IllegalArgumentException("Screenings and seats per screening should be greater than 0");
+        }
+        this.screenings = screenings;
+        this.seatsPerScreening = seatsPerScreening;
+        this.wordsPerScreening = (seatsPerScreening + SEATS_PER_WORD - 1) / SEATS_PER_WORD;
+        this.screeningWords = wordsPerScreening + VERSION_WORDS;
+        int seatsInLastWord = seatsPerScreening - (wordsPerScreening - 1) * SEATS_PER_WORD;
+        this.lastWordSeats = seatsInLastWord == SEATS_PER_WORD ? LOW_BITS
+                : LOW_BITS & ((1L << (2 * seatsInLastWord)) - 1);
+
+        // A screening never straddles two chunks
+        this.screeningsPerChunk = (int) Math.min(screenings,
+                MAX_CHUNK_BYTES / (screeningWords * (long) Long.BYTES));
+        int chunkCount = (screenings + screeningsPerChunk - 1) / screeningsPerChunk;
+        this.chunks = new ByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            int chunkScreenings = Math.min(screeningsPerChunk, screenings - i * screeningsPerChunk);
+            chunks[i] = ByteBuffer.allocateDirect(chunkScreenings * screeningWords * Long.BYTES)
+                    .order(ByteOrder.nativeOrder());
+        }
+    }
+
+    @Override
+    public boolean reserve(int screening, int seats) {
+        return move(screening, seats, FREE, RESERVED);
+    }
+
+    @Override
+    public boolean release(int screening, int seats) {
+        return move(screening, seats, RESERVED, FREE);
+    }
+
+    /**
+     * Count the free seats of a screening as of a moment no reservation or
+     * release of it was in flight, or approximately if writers kept it busy
+     * for SNAPSHOT_ATTEMPTS reads
+     *
+     * @param screening screening number
+     * @return free seats
+     *
+     */
+    @Override
+    public int available(int screening) {
+        ByteBuffer chunk = chunkOf(screening);
+        int base = offsetOf(screening);
+        for (int attempt = 0;; attempt++) {
+            long version = readVersion(chunk, base);
+            int available = 0;
+            for (int word = 0; word < wordsPerScreening; word++) {
+                available += Long.bitCount(seatsIn(getWord(chunk, base, word), FREE) & validSeats(word));
+            }
+            if (isSnapshot(chunk, base, version, attempt)) {
+                return available;
+            }
+        }
+    }
+
+    /**
+     * Copy the seat map of a screening as of a moment no reservation or release
+     * of it was in flight, or approximately if writers kept it busy for
+     * SNAPSHOT_ATTEMPTS reads
+     *
+     * @param screening  screening number
+     * @param seatStates receives FREE, HELD or RESERVED for each seat, at least
+     *                   seats per screening long
+     * @return free seats
+     *
+     */
+    public int seatMap(int screening, byte[] seatStates) {
+        if (seatStates.length < seatsPerScreening) {
+            throw new IllegalArgumentException("Seat states should hold " + seatsPerScreening + " seats");
+        }
+        ByteBuffer chunk = chunkOf(screening);
+        int base = offsetOf(screening);
+        for (int attempt = 0;; attempt++) {
+            long version = readVersion(chunk, base);
+            int available = 0;
+            for (int word = 0; word < wordsPerScreening; word++) {
+                long seats = getWord(chunk, base, word);
+                available += Long.bitCount(seatsIn(seats, FREE) & validSeats(word));
+                int first = word * SEATS_PER_WORD;
+                int last = Math.min(first + SEATS_PER_WORD, seatsPerScreening);
+                for (int seat = first; seat < last; seat++, seats >>>= 2) {
+                    seatStates[seat] = (byte) (seats & 3);
+                }
+            }
+            if (isSnapshot(chunk, base, version, attempt)) {
+                return available;
+            }
+        }
+    }
+
+    /**
+     * Get the state of one seat
+     *
+     * @param screening screening number
+     * @param seat      seat number
+     * @return FREE, HELD or RESERVED
+     *
+     */
+    int seatState(int screening, int seat) {
+        long word = getWord(chunkOf(screening), offsetOf(screening), seat / SEATS_PER_WORD);
+        return (int) (word >>> (2 * (seat % SEATS_PER_WORD))) & 3;
+    }
+
+    @Override
+    public int getScreenings() {
+        return screenings;
+    }
+
+    @Override
+    public int getSeatsPerScreening() {
+        return seatsPerScreening;
+    }
+
+    /**
+     * Get the number of availability reads and seat maps that gave up on a
+     * snapshot and returned an approximate copy
+     *
+     * @return approximate reads
+     *
+     */
+    public long getApproximateReads() {
+        return approximateReads.sum();
+    }
+
+    /**
+     * Get the off heap memory held by the seat maps
+     *
+     * @return bytes
+     *
+     */
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (ByteBuffer chunk : chunks) {
+            bytes += chunk.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Move seats of a screening from one state to another through HELD
+     *
+     */
+    private boolean move(int screening, int seats, int from, int to) {
+        if (seats <= 0) {
+            throw new IllegalArgumentException("Seats should be greater than 0");
+        }
+        ByteBuffer chunk = chunkOf(screening);
+        int base = offsetOf(screening);
+        beginMove(chunk, base);
+
+        int held = 0;
+        for (int word = 0; word < wordsPerScreening && held < seats; word++) {
+            held += transition(chunk, base, word, from, HELD, seats - held);
+        }
+
+        int target = held == seats ? to : from;
+        int remaining = held;
+        // Held seats are anonymous, any held seat can settle this move's count
+        while (remaining > 0) {
+            for (int word = 0; word < wordsPerScreening && remaining > 0; word++) {
+                remaining -= transition(chunk, base, word, HELD, target, remaining);
+            }
+        }
+        endMove(chunk, base);
+        return held == seats;
+    }
+
+    /**
+     * Mark a move of a screening in flight without moving any seats, as a
+     * writer descheduled mid move would leave it
+     *
+     * @param screening screening number
+     *
+     */
+    void beginMove(int screening) {
+        beginMove(chunkOf(screening), offsetOf(screening));
+    }
+
+    /**
+     * Finish a move begun by beginMove
+     *
+     * @param screening screening number
+     *
+     */
+    void endMove(int screening) {
+        endMove(chunkOf(screening), offsetOf(screening));
+    }
+
+    private static void beginMove(ByteBuffer chunk, int base) {
+        WORDS.getAndAdd(chunk, (base + MOVES_STARTED) * Long.BYTES, 1L);
+    }
+
+    private static void endMove(ByteBuffer chunk, int base) {
+        WORDS.getAndAdd(chunk, (base + MOVES_FINISHED) * Long.BYTES, 1L);
+    }
+
+    /**
+     * Move up to a number of seats of one word from one state to another
+     *
+     * @return seats moved
+     *
+     */
+    private int transition(ByteBuffer chunk, int base, int word, int from, int to, int limit) {
+        int index = (base + VERSION_WORDS + word) * Long.BYTES;
+        while (true) {
+            long current = (long) WORDS.getVolatile(chunk, index);
+            long candidates = seatsIn(current, from) & validSeats(word);
+            if (candidates == 0) {
+                return 0;
+            }
+
+            long picked = 0;
+            int count = 0;
+            while (candidates != 0 && count < limit) {
+                long seat = Long.lowestOneBit(candidates);
+                picked |= seat;
+                candidates ^= seat;
+                count++;
+            }
+
+            // Clear the picked seats' bits then set the new state
+            long updated = current & ~(picked | picked << 1) | picked * to;
+            if (WORDS.compareAndSet(chunk, index, current, updated)) {
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Mark the low bit of every seat of a word in the given state
+     *
+     */
+    private static long seatsIn(long word, int state) {
+        long low = state == HELD ? word : ~word;
+        long high = state == RESERVED ? word >>> 1 : ~(word >>> 1);
+        return low & high & LOW_BITS;
+    }
+
+    private long validSeats(int word) {
+        return word == wordsPerScreening - 1 ? lastWordSeats : LOW_BITS;
+    }
+
+    private long getWord(ByteBuffer chunk, int base, int word) {
+        return (long) WORDS.getVolatile(chunk, (base + VERSION_WORDS + word) * Long.BYTES);
+    }
+
+    /**
+     * Read the moves started of a screening ahead of copying its seat words
+     *
+     * @return moves started, or the moves started a snapshot can never match
+     *         if a move is in flight
+     *
+     */
+    private static long readVersion(ByteBuffer chunk, int base) {
+        long started = (long) WORDS.getAcquire(chunk, (base + MOVES_STARTED) * Long.BYTES);
+        long finished = (long) WORDS.getAcquire(chunk, (base + MOVES_FINISHED) * Long.BYTES);
+        // Every move started before moves started was read has finished
+        return started == finished ? started : started - 1;
+    }
+
+    /**
+     * Check that words read since a version was read form a snapshot: no move
+     * was in flight when the version was read and none has started since.
+     * Backs off before a retry if not, and gives up on a snapshot after
+     * SNAPSHOT_ATTEMPTS
+     *
+     */
+    private boolean isSnapshot(ByteBuffer chunk, int base, long version, int attempt) {
+        if ((long) WORDS.getAcquire(chunk, (base + MOVES_STARTED) * Long.BYTES) == version) {
+            return true;
+        }
+        if (attempt + 1 >= SNAPSHOT_ATTEMPTS) {
+            approximateReads.increment();
+            return true;
+        }
+        if (attempt < SNAPSHOT_SPINS) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+        return false;
+    }
+
+    private ByteBuffer chunkOf(int screening) {
+        if (screening < 0 || screening >= screenings) {
+            throw new IllegalArgumentException("Unknown screening " + screening);
+        }
+        return chunks[screening / screeningsPerChunk];
+    }
+
+    private int offsetOf(int screening) {
+        return (screening % screeningsPerChunk) * screeningWords;
+    }
+}
@@ -0,0 +1,139 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.List;
+
+import uk.gov.dwp.uc.pairtest.domain.PricingContext;
+import uk.gov.dwp.uc.pairtest.domain.Promotion;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ * Best prices for every order shape, compiled from the active promotions.
+ *
+ * At construction the promotions are compiled, for each pricing context, into
+ * a table holding the best price of every (adult, child, infant) shape up to
+ * the maximum tickets per order. Ticket price promotions lower the unit
+ * prices, bundles are combined by dynamic programming over smaller shapes, so
+ * an order gets the cheapest mix of bundles and single tickets, and the
+ * largest qualifying percentage comes off the result. Pricing an order is
+ * then one array read, whatever the number of promotions, and allocates
+ * nothing. To change the active promotions compile a new engine.
+ *
+ */
+public class PromotionEngine {
+    private final int side;
+    private final int[][] bestPrices;
+
+    /**
+     *
+     * @param maxTickets maximum tickets per order, larger orders are charged
+     *                   list prices
+     * @param promotions active promotions
+     *
+     */
+    public PromotionEngine(int maxTickets, List<Promotion> promotions) {
+        this.side = maxTickets + 1;
+        this.bestPrices = new int[PricingContext.values().length][];
+        for (PricingContext pricingContext : PricingContext.values()) {
+            bestPrices[pricingContext.ordinal()] = compile(pricingContext, promotions);
+        }
+    }
+
+    /**
+     * Get the best price of an order
+     *
+     * @param pricingContext pricing context of the purchase
+     * @param adultTickets   adult tickets count
+     * @param childTickets   child tickets count
+     * @param infantTickets  infant tickets count
+     * @return best price
+     *
+     */
+    public int price(PricingContext pricingContext, int adultTickets, int childTickets, int infantTickets) {
+        if (adultTickets >= side || childTickets >= side || infantTickets >= side
+                || adultTickets + childTickets + infantTickets >= side) {
+            return adultTickets * TicketTypeRequest.Type.ADULT.price
+                    + childTickets * TicketTypeRequest.Type.CHILD.price
+                    + infantTickets * TicketTypeRequest.Type.INFANT.price;
+        }
+        return bestPrices[pricingContext.ordinal()][index(adultTickets, childTickets, infantTickets)];
+    }
+
+    /**
+     * Compile the best price table of one pricing context
+     *
+     */
+    private int[] compile(PricingContext pricingContext, List<Promotion> promotions) {
+        int adultPrice = TicketTypeRequest.Type.ADULT.price;
+        int childPrice = TicketTypeRequest.Type.CHILD.price;
+        int infantPrice = TicketTypeRequest.Type.INFANT.price;
+        int percentOff = 0;
+        int bundles = 0;
+
+        for (Promotion promotion : promotions) {
+            if (!promotion.appliesTo(pricingContext)) {
+                continue;
+            }
+            switch (promotion.getKind()) {
+            case TICKET_PRICE:
+                if (promotion.getTicketType() == TicketTypeRequest.Type.ADULT) {
+                    adultPrice = Math.min(adultPrice, promotion.getValue());
+                } else if (promotion.getTicketType() == TicketTypeRequest.Type.CHILD) {
+                    childPrice = Math.min(childPrice, promotion.getValue());
+                } else {
+                    infantPrice = Math.min(infantPrice, promotion.getValue());
+                }
+                break;
+            case PERCENT_OFF:
+                percentOff = Math.max(percentOff, promotion.getValue());
+                break;
+            default:
+                bundles++;
+            }
+        }
+
+        // Qualifying bundles as parallel arrays for the inner loop
+        int[] bundleAdults = new int[bundles];
+        int[] bundleChildren = new int[bundles];
+        int[] bundleInfants = new int[bundles];
+        int[] bundlePrices = new int[bundles];
+        int b = 0;
+        for (Promotion promotion : promotions) {
+            if (promotion.getKind() == Promotion.Kind.BUNDLE && promotion.appliesTo(pricingContext)) {
+                bundleAdults[b] = promotion.getAdultTickets();
+                bundleChildren[b] = promotion.getChildTickets();
+                bundleInfants[b] = promotion.getInfantTickets();
+                bundlePrices[b++] = promotion.getValue();
+            }
+        }
+
+        // Shapes are visited with every count increasing, so each shape's
+        // smaller shapes are already priced
+        int[] prices = new int[side * side * side];
+        for (int adults = 0; adults < side; adults++) {
+            for (int children = 0; adults + children < side; children++) {
+                for (int infants = 0; adults + children + infants < side; infants++) {
+                    int best = adults * adultPrice + children * childPrice + infants * infantPrice;
+                    for (int i = 0; i < bundles; i++) {
+                        if (bundleAdults[i] <= adults && bundleChildren[i] <= children
+                                && bundleInfants[i] <= infants) {
+                            best = Math.min(best, bundlePrices[i] + prices[index(adults - bundleAdults[i],
+                                    children - bundleChildren[i], infants - bundleInfants[i])]);
+                        }
+                    }
+                    prices[index(adults, children, infants)] = best;
+                }
+            }
+        }
+
+        if (percentOff > 0) {
+            for (int i = 0; i < prices.length; i++) {
+                prices[i] = prices[i] * (100 - percentOff) / 100;
+            }
+        }
+        return prices;
+    }
+
+    private int index(int adultTickets, int childTickets, int infantTickets) {
+        return (adultTickets * side + childTickets) * side + infantTickets;
+    }
+}
@@ -0,0 +1,424 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ * Asynchronous audit trail of purchase attempts, in the style of the
+ * Disruptor.
+ * 
+ * Producers claim a slot of a preallocated ring buffer with a compare and set,
+ * copy the attempt into it as primitives and publish it, without allocating.
+ * A single background consumer writes published attempts as binary records to
+ * rolling files audit-N.log in the audit directory. What happens when the ring
+ * is full is set by the FullBufferPolicy.
+ * 
+ * Record layout, 32 bytes big endian: long timestamp millis | long accountId
+ * (Long.MIN_VALUE when null) | int adultTickets | int childTickets | int
+ * infantTickets | byte outcome | byte padding | unsigned short reasonCode.
+ * Outcome is ACCEPTED, REJECTED for invalid purchases or FAILED for purchases
+ * that failed otherwise. Reason code 0 is no reason, any other code is a
+ * reason text from the reason dictionary, reasons.dict in the audit directory.
+ * 
+ * The consumer assigns a code the first time it sees a reason text and appends
+ * int code | short length | UTF-8 text to the dictionary, which is reloaded on
+ * restart so codes stay stable across files. Producers only store a reference
+ * to the text. Once MAX_REASONS texts are known further new texts are recorded
+ * as REASON_TABLE_FULL.
+ * 
+ */
+public class PurchaseAuditLog implements Closeable {
+    static final int RECORD_BYTES = 32;
+    static final byte ACCEPTED = 0;
+    static final byte REJECTED = 1;
+    static final byte FAILED = 2;
+    static final int NO_REASON = 0;
+    static final int MAX_REASONS = 0xFFFE;
+    static final int REASON_TABLE_FULL = 0xFFFF;
+    static final String REASONS_FILE = "reasons.dict";
+    private static final int WRITE_BATCH_RECORDS = 1024;
+
+    /**
+     * What a producer does when the ring buffer is full
+     * 
+     * - BLOCK: wait for the consumer to free a slot
+     * - DROP: drop the attempt
+     * - SAMPLE: wait for a slot for one in every sampleRate attempts made while
+     * full, drop the rest
+     * 
+     */
+    public enum FullBufferPolicy {
+        BLOCK, DROP, SAMPLE
+    }
+
+    private final int mask;
+    private final long[] timestamps;
+    private final long[] accountIds;
+    private final int[] adultTickets;
+    private final int[] childTickets;
+    private final int[] infantTickets;
+    private final byte[] outcomes;
+    private final String[] reasons;
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLong fullAttempts = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long consumed = -1;
+    private volatile boolean closed;
+
+    private final FullBufferPolicy fullBufferPolicy;
+    private final int sampleRate;
+    private final Path directory;
+    private final long maxFileBytes;
+    private final Thread consumer;
+    private final Map<String, Integer> reasonCodes;
+    private final FileChannel reasonsFile;
+    private FileChannel file;
+    private int fileIndex;
+    private long fileBytes;
+    private volatile IOException writeFailure;
+
+    /**
+     * 
+     * @param directory        audit directory
+     * @param capacity         ring buffer slots, rounded up to a power of two
+     * @param fullBufferPolicy what producers do when the ring is full
+     * @param sampleRate       for SAMPLE, one in sampleRate attempts made while
+     *                         full is kept
+     * @param maxFileBytes     size at which the audit file is rolled
+     * @throws IOException if the first audit file cannot be created
+     * 
+     */
+    public PurchaseAuditLog(Path directory, int capacity, FullBufferPolicy fullBufferPolicy, int sampleRate,
+            long maxFileBytes) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.timestamps = new long[size];
+        this.accountIds = new long[size];
+        this.adultTickets = new int[size];
+        this.childTickets = new int[size];
+        this.infantTickets = new int[size];
+        this.outcomes = new byte[size];
+        this.reasons = new String[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+
+        this.fullBufferPolicy = fullBufferPolicy;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+
+        Files.createDirectories(directory);
+        this.reasonCodes = new HashMap<>();
+        Map<Integer, String> knownReasons = new HashMap<>();
+        long reasonsBytes = readReasons(directory, knownReasons);
+        knownReasons.forEach((code, reason) -> reasonCodes.put(reason, code));
+        this.reasonsFile = FileChannel.open(directory.resolve(REASONS_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        reasonsFile.truncate(reasonsBytes);
+        reasonsFile.position(reasonsBytes);
+        this.fileIndex = lastFileIndex(directory);
+        rollFile();
+
+        this.consumer = new Thread(this::consume, "purchase-audit-log");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Record a purchase attempt
+     * 
+     * @param accountId          account Id
+     * @param ticketTypeRequests ticket type requests of the attempt
+     * @param reason             rejection or failure reason, null if
+     *                           accepted
+     * @param failed             true if the purchase failed other than by being
+     *                           invalid
+     * 
+     */
+    public void record(Long accountId, TicketTypeRequest[] ticketTypeRequests, String reason, boolean failed) {
+        long sequence = claim();
+        if (sequence < 0) {
+            return;
+        }
+
+        int slot = (int) sequence & mask;
+        timestamps[slot] = System.currentTimeMillis();
+        accountIds[slot] = accountId == null ? Long.MIN_VALUE : accountId;
+        adultTickets[slot] = ticketsCount(TicketTypeRequest.Type.ADULT, ticketTypeRequests);
+        childTickets[slot] = ticketsCount(TicketTypeRequest.Type.CHILD, ticketTypeRequests);
+        infantTickets[slot] = ticketsCount(TicketTypeRequest.Type.INFANT, ticketTypeRequests);
+        outcomes[slot] = failed ? FAILED : reason == null ? ACCEPTED : REJECTED;
+        reasons[slot] = reason;
+        published.set(slot, sequence);
+    }
+
+    /**
+     * Get the number of attempts dropped because the ring was full
+     * 
+     * @return dropped attempts
+     * 
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Write every attempt already recorded and close the audit file
+     * 
+     * @throws IOException if an audit record could not be written
+     * 
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        file.close();
+        reasonsFile.close();
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+    }
+
+    /**
+     * Claim the next slot, applying the full buffer policy
+     * 
+     * @return claimed sequence, -1 if the attempt is dropped
+     * 
+     */
+    private long claim() {
+        boolean mayWait = fullBufferPolicy == FullBufferPolicy.BLOCK;
+        boolean decided = false;
+        while (true) {
+            long current = claimed.get();
+            long next = current + 1;
+            if (next - consumed > mask + 1) {
+                if (!decided) {
+                    decided = true;
+                    if (fullBufferPolicy == FullBufferPolicy.SAMPLE) {
+                        mayWait = fullAttempts.incrementAndGet() % sampleRate == 0;
+                    }
+                }
+                if (!mayWait || closed) {
+                    dropped.incrementAndGet();
+                    return -1;
+                }
+                LockSupport.parkNanos(1000);
+                continue;
+            }
+            if (claimed.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Consumer loop, writes published records in batches until closed and
+     * drained
+     * 
+     */
+    private void consume() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BATCH_RECORDS * RECORD_BYTES);
+        int idleSpins = 0;
+
+        while (true) {
+            long next = consumed + 1;
+            int records = 0;
+            buffer.clear();
+            while (records < WRITE_BATCH_RECORDS && published.get((int) (next + records) & mask) == next + records) {
+                int slot = (int) (next + records) & mask;
+                int reasonCode = reasonCode(reasons[slot]);
+                reasons[slot] = null;
+                buffer.putLong(timestamps[slot]).putLong(accountIds[slot]).putInt(adultTickets[slot])
+                        .putInt(childTickets[slot]).putInt(infantTickets[slot]).put(outcomes[slot])
+                        .put((byte) 0).putShort((short) reasonCode);
+                records++;
+            }
+
+            if (records == 0) {
+                if (closed && claimed.get() < next) {
+                    return;
+                }
+                if (++idleSpins < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(100_000);
+                }
+                continue;
+            }
+            idleSpins = 0;
+            consumed = next + records - 1;
+
+            buffer.flip();
+            write(buffer);
+        }
+    }
+
+    /**
+     * Write a batch of records, rolling the audit file whenever it fills so no
+     * file grows past the configured size by more than one record
+     * 
+     */
+    private void write(ByteBuffer buffer) {
+        if (writeFailure != null) {
+            return;
+        }
+        try {
+            int limit = buffer.limit();
+            while (buffer.position() < limit) {
+                if (fileBytes > 0 && fileBytes + RECORD_BYTES > maxFileBytes) {
+                    rollFile();
+                }
+                long fileRecords = Math.max(1, (maxFileBytes - fileBytes) / RECORD_BYTES);
+                buffer.limit((int) Math.min(limit, buffer.position() + fileRecords * RECORD_BYTES));
+                while (buffer.hasRemaining()) {
+                    fileBytes += file.write(buffer);
+                }
+                buffer.limit(limit);
+            }
+        } catch (IOException e) {
+            writeFailure = e;
+        }
+    }
+
+    private void rollFile() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+        fileIndex++;
+        file = FileChannel.open(directory.resolve("audit-" + fileIndex + ".log"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileBytes = file.size();
+    }
+
+    private static int lastFileIndex(Path directory) throws IOException {
+        int last = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "audit-*.log")) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                try {
+                    last = Math.max(last, Integer.parseInt(name.substring(6, name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Get the code of a reason, adding it to the reason dictionary the first
+     * time it is seen. Called on the consumer thread.
+     * 
+     */
+    private int reasonCode(String reason) {
+        if (reason == null) {
+            return NO_REASON;
+        }
+        Integer code = reasonCodes.get(reason);
+        if (code != null) {
+            return code;
+        }
+        if (reasonCodes.size() >= MAX_REASONS) {
+            return REASON_TABLE_FULL;
+        }
+
+        int newCode = reasonCodes.size() + 1;
+        byte[] text = reason.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(text.length, Short.MAX_VALUE);
+        ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + Short.BYTES + length).putInt(newCode)
+                .putShort((short) length).put(text, 0, length);
+        entry.flip();
+        try {
+            while (entry.hasRemaining()) {
+                reasonsFile.write(entry);
+            }
+        } catch (IOException e) {
+            writeFailure = e;
+            return REASON_TABLE_FULL;
+        }
+        reasonCodes.put(reason, newCode);
+        return newCode;
+    }
+
+    /**
+     * Read the reason dictionary of an audit directory
+     * 
+     * @param directory audit directory
+     * @return reason texts by code, empty if there is no dictionary
+     * @throws IOException if the dictionary cannot be read
+     * 
+     */
+    public static Map<Integer, String> readReasons(Path directory) throws IOException {
+        Map<Integer, String> reasons = new HashMap<>();
+        readReasons(directory, reasons);
+        return reasons;
+    }
+
+    /**
+     * Read the reason dictionary into reasons, ignoring a partially written
+     * trailing entry left by a crash
+     * 
+     * @return bytes of whole entries read
+     * 
+     */
+    private static long readReasons(Path directory, Map<Integer, String> reasons) throws IOException {
+        Path reasonsPath = directory.resolve(REASONS_FILE);
+        if (!Files.exists(reasonsPath)) {
+            return 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(reasonsPath));
+        int entriesEnd = 0;
+        while (buffer.remaining() >= Integer.BYTES + Short.BYTES) {
+            int code = buffer.getInt();
+            int length = buffer.getShort();
+            if (buffer.remaining() < length) {
+                break;
+            }
+            reasons.put(code, new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8));
+            buffer.position(buffer.position() + length);
+            entriesEnd = buffer.position();
+        }
+        return entriesEnd;
+    }
+
+    /**
+     * Count tickets of a type, tolerating the null and invalid requests of
+     * rejected attempts
+     * 
+     */
+    private static int ticketsCount(TicketTypeRequest.Type ticketType, TicketTypeRequest[] ticketTypeRequests) {
+        int count = 0;
+        if (ticketTypeRequests != null) {
+            for (TicketTypeRequest ticketTypeRequest : ticketTypeRequests) {
+                if (ticketTypeRequest != null && ticketTypeRequest.getTicketType() == ticketType) {
+                    count += ticketTypeRequest.getNoOfTickets();
+                }
+            }
+        }
+        return count;
+    }
+}
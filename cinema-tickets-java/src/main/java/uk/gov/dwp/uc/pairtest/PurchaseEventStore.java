@@ -0,0 +1,281 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event sourced record of completed purchases.
+ * 
+ * Each purchase is appended to a binary log of fixed size records: long
+ * accountId | short adultTickets | short childTickets | short infantTickets |
+ * short totalSeats | int totalCost. The PurchaseLedger derived from the log is
+ * snapshotted every snapshotInterval purchases together with the log position
+ * it covers, so a restart loads the latest snapshot through a memory mapped
+ * read and replays only the log written after it.
+ * 
+ * Records are buffered and written to the log when the buffer fills, on
+ * snapshot and on flush. A background thread owned by the store flushes every
+ * flushIntervalMillis, bounding what a crash can lose, and writes the
+ * snapshots, so purchasing threads never wait on a snapshot or an fsync. Only
+ * the copy of the ledger into the snapshot buffer holds back purchases.
+ * 
+ */
+public class PurchaseEventStore implements PurchaseListener, Closeable {
+    static final int RECORD_BYTES = 20;
+    private static final String LOG_FILE = "purchases.log";
+    private static final String SNAPSHOT_FILE = "purchases.snapshot";
+    private static final int SNAPSHOT_MAGIC = 0x50534e50;
+    private static final int SNAPSHOT_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    private static final int LOG_BUFFER_BYTES = RECORD_BYTES * 4096;
+    private static final long MAX_REPLAY_CHUNK_BYTES = RECORD_BYTES * (1L << 26);
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+
+    private final Path directory;
+    private final FileChannel log;
+    private final ByteBuffer logBuffer = ByteBuffer.allocateDirect(LOG_BUFFER_BYTES);
+    private final int snapshotInterval;
+    private final PurchaseLedger ledger;
+    private final ScheduledExecutorService background;
+    private final Object snapshotLock = new Object();
+    private int purchasesSinceSnapshot;
+    private boolean snapshotScheduled;
+    private volatile long backgroundFailures;
+
+    private PurchaseEventStore(Path directory, FileChannel log, PurchaseLedger ledger, int snapshotInterval,
+            long flushIntervalMillis) {
+        this.directory = directory;
+        this.log = log;
+        this.ledger = ledger;
+        this.snapshotInterval = snapshotInterval;
+        this.background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "purchase-event-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        background.scheduleWithFixedDelay(() -> runInBackground(this::flush), flushIntervalMillis,
+                flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open the store in directory, recovering the ledger from the latest snapshot
+     * and the log written after it. A partially written trailing record left by
+     * a crash is discarded.
+     * 
+     * @param directory        store directory
+     * @param snapshotInterval purchases between snapshots, 0 to only snapshot
+     *                         when asked
+     * @return purchase event store
+     * @throws IOException if the store cannot be read
+     * 
+     */
+    public static PurchaseEventStore open(Path directory, int snapshotInterval) throws IOException {
+        return open(directory, snapshotInterval, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Open the store in directory, recovering the ledger from the latest snapshot
+     * and the log written after it. A partially written trailing record left by
+     * a crash is discarded.
+     * 
+     * @param directory           store directory
+     * @param snapshotInterval    purchases between snapshots, 0 to only
+     *                            snapshot when asked
+     * @param flushIntervalMillis milliseconds between background flushes
+     * @return purchase event store
+     * @throws IOException if the store cannot be read
+     * 
+     */
+    public static PurchaseEventStore open(Path directory, int snapshotInterval, long flushIntervalMillis)
+            throws IOException {
+        Files.createDirectories(directory);
+        FileChannel log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long logSize = log.size() - log.size() % RECORD_BYTES;
+        log.truncate(logSize);
+
+        PurchaseLedger ledger = new PurchaseLedger();
+        long snapshotPosition = 0;
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try (FileChannel snapshotChannel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = snapshotChannel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        snapshotChannel.size());
+                if (buffer.getInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Not a purchase snapshot: " + snapshot);
+                }
+                snapshotPosition = buffer.getLong();
+                ledger = PurchaseLedger.readFrom(buffer);
+            }
+        }
+        if (snapshotPosition > logSize) {
+            throw new IOException("Purchase snapshot is ahead of the purchase log");
+        }
+
+        for (long position = snapshotPosition; position < logSize;) {
+            long chunk = Math.min(logSize - position, MAX_REPLAY_CHUNK_BYTES);
+            MappedByteBuffer tail = log.map(FileChannel.MapMode.READ_ONLY, position, chunk);
+            while (tail.hasRemaining()) {
+                ledger.apply(tail.getLong(), tail.getShort(), tail.getShort(), tail.getShort(), tail.getShort(),
+                        tail.getInt());
+            }
+            position += chunk;
+        }
+
+        log.position(logSize);
+        return new PurchaseEventStore(directory, log, ledger, snapshotInterval, flushIntervalMillis);
+    }
+
+    /**
+     * Append a completed purchase to the log and apply it to the ledger,
+     * scheduling a background snapshot every snapshotInterval purchases
+     * 
+     */
+    @Override
+    public synchronized void purchaseCompleted(long accountId, int adultTickets, int childTickets,
+            int infantTickets, int totalSeats, int totalCost) {
+        if (adultTickets > Short.MAX_VALUE || childTickets > Short.MAX_VALUE || infantTickets > Short.MAX_VALUE
+                || totalSeats > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Ticket count too large to record");
+        }
+
+        try {
+            if (!logBuffer.hasRemaining()) {
+                writeLogBuffer();
+            }
+            logBuffer.putLong(accountId).putShort((short) adultTickets).putShort((short) childTickets)
+                    .putShort((short) infantTickets).putShort((short) totalSeats).putInt(totalCost);
+            ledger.apply(accountId, adultTickets, childTickets, infantTickets, totalSeats, totalCost);
+
+            if (snapshotInterval > 0 && ++purchasesSinceSnapshot >= snapshotInterval && !snapshotScheduled) {
+                snapshotScheduled = true;
+                background.execute(() -> runInBackground(this::snapshot));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public PurchaseLedger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * Write buffered records to the log and force it to disk. Purchases wait
+     * only for the write, not the force
+     * 
+     * @throws IOException if the log cannot be written
+     * 
+     */
+    public void flush() throws IOException {
+        synchronized (this) {
+            writeLogBuffer();
+        }
+        log.force(false);
+    }
+
+    /**
+     * Flush the log and write a snapshot of the ledger covering everything
+     * logged so far. The snapshot is written to a temporary file and moved into
+     * place, so a crash leaves the previous snapshot intact. Purchases wait
+     * only while the ledger is copied, not for the snapshot to be written.
+     * 
+     * @throws IOException if the snapshot cannot be written
+     * 
+     */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            ByteBuffer buffer;
+            synchronized (this) {
+                // Cleared before any I/O, so a failed snapshot is scheduled
+                // again by the next purchase
+                snapshotScheduled = false;
+                writeLogBuffer();
+                buffer = ByteBuffer.allocate(SNAPSHOT_HEADER_BYTES + ledger.serializedSize());
+                buffer.putInt(SNAPSHOT_MAGIC).putLong(log.position());
+                ledger.writeTo(buffer);
+                purchasesSinceSnapshot = 0;
+            }
+            buffer.flip();
+
+            // the log the snapshot covers must be durable before the snapshot
+            log.force(false);
+            Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Get the number of background flushes and snapshots that failed, each
+     * retried by the next flush or snapshot
+     * 
+     * @return background failures
+     * 
+     */
+    public long getBackgroundFailures() {
+        return backgroundFailures;
+    }
+
+    /**
+     * Stop the background thread, letting a running flush or snapshot finish,
+     * then flush and close the log
+     * 
+     */
+    @Override
+    public void close() throws IOException {
+        background.shutdown();
+        try {
+            background.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            flush();
+            log.close();
+        }
+    }
+
+    /**
+     * Run a flush or snapshot on the background thread, counting a failure
+     * rather than letting it cancel the flush schedule
+     * 
+     */
+    private void runInBackground(IOAction action) {
+        try {
+            action.run();
+        } catch (IOException | RuntimeException e) {
+            backgroundFailures++;
+        }
+    }
+
+    private interface IOAction {
+        void run() throws IOException;
+    }
+
+    private void writeLogBuffer() throws IOException {
+        logBuffer.flip();
+        while (logBuffer.hasRemaining()) {
+            log.write(logBuffer);
+        }
+        logBuffer.clear();
+    }
+}
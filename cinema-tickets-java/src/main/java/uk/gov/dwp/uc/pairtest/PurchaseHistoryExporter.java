@@ -0,0 +1,359 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ * Streams completed purchases into a columnar file for analytics, one row per
+ * ticket type bought in a purchase.
+ * 
+ * Rows are collected into fixed size row groups held in primitive arrays. Full
+ * groups are handed to a background writer, and a fixed number of groups is
+ * allocated up front, so memory is bounded. If the writer falls behind and no
+ * group is free, rows are dropped and counted rather than slowing the purchase
+ * path.
+ * 
+ * Purchasing threads fill row groups through stripes chosen by thread id, each
+ * with its own lock and group, so threads rarely contend. A stripe takes a free
+ * group only when it has a row to add, and there is always at least one more
+ * group than stripes, so stripes holding groups never starve the writer of
+ * groups to return. Rows of one thread are exported in purchase order, rows of
+ * different threads are exported a row group at a time.
+ * 
+ * File layout, all values big endian: int magic, then row groups of int
+ * rowCount | dictionary: byte size, then per entry short length and ASCII type
+ * name | columns, each int byteLength followed by the column data:
+ * 
+ * - type: one byte dictionary index per row
+ * - accountId: zigzag varint deltas from the previous row (first from 0)
+ * - timestamp: epoch millis, zigzag varint deltas as for accountId
+ * - count: int per row
+ * - amount: int per row, the row's share of the amount paid for the purchase
+ * apportioned by list price, so the rows of a purchase add up to what was
+ * paid
+ * 
+ */
+public class PurchaseHistoryExporter implements PurchaseListener, Closeable {
+    static final int MAGIC = 0x50484331;
+    private static final TicketTypeRequest.Type[] TICKET_TYPES = TicketTypeRequest.Type.values();
+
+    private final FileChannel file;
+    private final int rowGroupSize;
+    private final BlockingQueue<RowGroup> freeGroups;
+    private final BlockingQueue<RowGroup> fullGroups;
+    private final Stripe[] stripes;
+    private final ByteBuffer encodeBuffer;
+    private final Thread writer;
+    private final LongAdder droppedRows = new LongAdder();
+    private volatile IOException writeFailure;
+
+    /**
+     * 
+     * @param file         export file, replaced if it exists
+     * @param rowGroupSize rows per row group
+     * @param rowGroups    row groups allocated, at least 2 so one can fill while
+     *                     another is written. Purchasing threads are spread
+     *                     over one stripe per processor, up to one fewer than
+     *                     the row groups
+     * @throws IOException if the export file cannot be created
+     * 
+     */
+    public PurchaseHistoryExporter(Path file, int rowGroupSize, int rowGroups) throws IOException {
+        this(file, rowGroupSize, rowGroups, Math.min(Runtime.getRuntime().availableProcessors(), rowGroups - 1));
+    }
+
+    /**
+     * 
+     * @param file         export file, replaced if it exists
+     * @param rowGroupSize rows per row group
+     * @param rowGroups    row groups allocated, at least one more than the
+     *                     stripes so one can fill in every stripe while another
+     *                     is written
+     * @param stripes      stripes purchasing threads are spread over, at least 1
+     * @throws IOException if the export file cannot be created
+     * 
+     */
+    public PurchaseHistoryExporter(Path file, int rowGroupSize, int rowGroups, int stripes) throws IOException {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("At least 1 stripe is needed");
+        }
+        if (rowGroups < stripes + 1) {
+            throw new IllegalArgumentException("At least " + (stripes + 1) + " row groups are needed");
+        }
+        this.file = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.rowGroupSize = rowGroupSize;
+        this.freeGroups = new ArrayBlockingQueue<>(rowGroups);
+        this.fullGroups = new ArrayBlockingQueue<>(rowGroups + 1);
+        for (int i = 0; i < rowGroups; i++) {
+            freeGroups.add(new RowGroup(rowGroupSize));
+        }
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.encodeBuffer = ByteBuffer.allocateDirect(maxEncodedSize(rowGroupSize));
+
+        ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).putInt(0, MAGIC);
+        while (magic.hasRemaining()) {
+            this.file.write(magic);
+        }
+
+        this.writer = new Thread(this::writeGroups, "purchase-history-exporter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void purchaseCompleted(long accountId, int adultTickets, int childTickets, int infantTickets,
+            int totalSeats, int totalCost) {
+        long timestamp = System.currentTimeMillis();
+        int adultPrice = adultTickets * TicketTypeRequest.Type.ADULT.price;
+        int childPrice = childTickets * TicketTypeRequest.Type.CHILD.price;
+        int listPrice = adultPrice + childPrice + infantTickets * TicketTypeRequest.Type.INFANT.price;
+
+        // Shares rounded down, the last row with tickets takes the remainder
+        int adultAmount = share(totalCost, adultPrice, listPrice);
+        int childAmount = share(totalCost, childPrice, listPrice);
+        int infantAmount = totalCost - adultAmount - childAmount;
+        if (infantTickets == 0) {
+            if (childTickets > 0) {
+                childAmount += infantAmount;
+            } else {
+                adultAmount += infantAmount;
+            }
+            infantAmount = 0;
+        }
+
+        Stripe stripe = stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+        synchronized (stripe) {
+            addRow(stripe, timestamp, accountId, TicketTypeRequest.Type.ADULT, adultTickets, adultAmount);
+            addRow(stripe, timestamp, accountId, TicketTypeRequest.Type.CHILD, childTickets, childAmount);
+            addRow(stripe, timestamp, accountId, TicketTypeRequest.Type.INFANT, infantTickets, infantAmount);
+        }
+    }
+
+    /**
+     * Get the number of rows dropped because the writer fell behind
+     * 
+     * @return dropped rows
+     * 
+     */
+    public long getDroppedRows() {
+        return droppedRows.sum();
+    }
+
+    /**
+     * Write the partially filled row group and every queued group, then close
+     * the export file
+     * 
+     * @throws IOException if a row group could not be written
+     * 
+     */
+    @Override
+    public void close() throws IOException {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                if (stripe.current != null && stripe.current.size > 0) {
+                    fullGroups.add(stripe.current);
+                }
+                stripe.current = null;
+                stripe.closed = true;
+            }
+        }
+        fullGroups.add(RowGroup.END);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        file.close();
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+    }
+
+    private static int share(int totalCost, int price, int listPrice) {
+        return listPrice == 0 ? 0 : (int) ((long) totalCost * price / listPrice);
+    }
+
+    /**
+     * Add a row to the stripe's current group, taking a free group if it has
+     * none, and hand the group to the writer when full. Called holding the
+     * stripe lock.
+     * 
+     */
+    private void addRow(Stripe stripe, long timestamp, long accountId, TicketTypeRequest.Type ticketType, int count,
+            int amount) {
+        if (count == 0) {
+            return;
+        }
+        RowGroup current = stripe.current;
+        if (current == null) {
+            current = stripe.closed ? null : freeGroups.poll();
+            if (current == null) {
+                droppedRows.increment();
+                return;
+            }
+            stripe.current = current;
+        }
+
+        int row = current.size++;
+        current.timestamps[row] = timestamp;
+        current.accountIds[row] = accountId;
+        current.types[row] = (byte) ticketType.ordinal();
+        current.counts[row] = count;
+        current.amounts[row] = amount;
+
+        if (current.size == rowGroupSize) {
+            fullGroups.add(current);
+            stripe.current = null;
+        }
+    }
+
+    /**
+     * Writer loop, encodes and writes full row groups until the end marker
+     * 
+     */
+    private void writeGroups() {
+        while (true) {
+            RowGroup group;
+            try {
+                group = fullGroups.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (group == RowGroup.END) {
+                return;
+            }
+
+            if (group.size > 0 && writeFailure == null) {
+                try {
+                    encode(group, encodeBuffer);
+                    while (encodeBuffer.hasRemaining()) {
+                        file.write(encodeBuffer);
+                    }
+                } catch (IOException e) {
+                    writeFailure = e;
+                }
+            }
+            group.size = 0;
+            freeGroups.add(group);
+        }
+    }
+
+    /**
+     * Encode a row group into buffer, leaving it ready to be written
+     * 
+     */
+    private static void encode(RowGroup group, ByteBuffer buffer) {
+        buffer.clear();
+        buffer.putInt(group.size);
+
+        buffer.put((byte) TICKET_TYPES.length);
+        for (TicketTypeRequest.Type ticketType : TICKET_TYPES) {
+            byte[] name = ticketType.name().getBytes(StandardCharsets.US_ASCII);
+            buffer.putShort((short) name.length).put(name);
+        }
+
+        int lengthPosition = startColumn(buffer);
+        buffer.put(group.types, 0, group.size);
+        endColumn(buffer, lengthPosition);
+
+        lengthPosition = startColumn(buffer);
+        putDeltas(buffer, group.accountIds, group.size);
+        endColumn(buffer, lengthPosition);
+
+        lengthPosition = startColumn(buffer);
+        putDeltas(buffer, group.timestamps, group.size);
+        endColumn(buffer, lengthPosition);
+
+        lengthPosition = startColumn(buffer);
+        for (int i = 0; i < group.size; i++) {
+            buffer.putInt(group.counts[i]);
+        }
+        endColumn(buffer, lengthPosition);
+
+        lengthPosition = startColumn(buffer);
+        for (int i = 0; i < group.size; i++) {
+            buffer.putInt(group.amounts[i]);
+        }
+        endColumn(buffer, lengthPosition);
+
+        buffer.flip();
+    }
+
+    private static int startColumn(ByteBuffer buffer) {
+        int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        return lengthPosition;
+    }
+
+    private static void endColumn(ByteBuffer buffer, int lengthPosition) {
+        buffer.putInt(lengthPosition, buffer.position() - lengthPosition - Integer.BYTES);
+    }
+
+    private static void putDeltas(ByteBuffer buffer, long[] values, int size) {
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            long delta = values[i] - previous;
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            buffer.put((byte) zigzag);
+            previous = values[i];
+        }
+    }
+
+    private static int maxEncodedSize(int rowGroupSize) {
+        int dictionary = 1;
+        for (TicketTypeRequest.Type ticketType : TICKET_TYPES) {
+            dictionary += Short.BYTES + ticketType.name().length();
+        }
+        return Integer.BYTES + dictionary + 5 * Integer.BYTES + rowGroupSize * (1 + 10 + 10 + 4 + 4);
+    }
+
+    /**
+     * Row group being filled by the threads of one stripe
+     * 
+     */
+    private static class Stripe {
+        RowGroup current;
+        boolean closed;
+    }
+
+    /**
+     * Rows of one row group, column by column
+     * 
+     */
+    private static class RowGroup {
+        static final RowGroup END = new RowGroup(0);
+
+        final long[] timestamps;
+        final long[] accountIds;
+        final byte[] types;
+        final int[] counts;
+        final int[] amounts;
+        int size;
+
+        RowGroup(int capacity) {
+            timestamps = new long[capacity];
+            accountIds = new long[capacity];
+            types = new byte[capacity];
+            counts = new int[capacity];
+            amounts = new int[capacity];
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads files written by PurchaseHistoryExporter back row by row.
+ * 
+ */
+public class PurchaseHistoryReader {
+
+    /**
+     * Receives each row of a purchase history file
+     * 
+     */
+    public interface RowConsumer {
+        void accept(long timestamp, long accountId, String ticketType, int count, int amount);
+    }
+
+    private PurchaseHistoryReader() {
+    }
+
+    /**
+     * Read every row of a purchase history file
+     * 
+     * @param file     purchase history file
+     * @param consumer receives each row
+     * @return number of rows read
+     * @throws IOException if the file cannot be read or is not a purchase
+     *                     history file
+     * 
+     */
+    public static long read(Path file, RowConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < Integer.BYTES || buffer.getInt() != PurchaseHistoryExporter.MAGIC) {
+                throw new IOException("Not a purchase history file: " + file);
+            }
+
+            long rows = 0;
+            while (buffer.hasRemaining()) {
+                int rowCount = buffer.getInt();
+
+                String[] dictionary = new String[buffer.get()];
+                for (int i = 0; i < dictionary.length; i++) {
+                    byte[] name = new byte[buffer.getShort()];
+                    buffer.get(name);
+                    dictionary[i] = new String(name, StandardCharsets.US_ASCII);
+                }
+
+                int typesStart = skipColumn(buffer);
+                int accountIdsStart = skipColumn(buffer);
+                int timestampsStart = skipColumn(buffer);
+                int countsStart = skipColumn(buffer);
+                int amountsStart = skipColumn(buffer);
+                int next = buffer.position();
+
+                int accountIdPosition = accountIdsStart;
+                int timestampPosition = timestampsStart;
+                long accountId = 0;
+                long timestamp = 0;
+                for (int row = 0; row < rowCount; row++) {
+                    buffer.position(accountIdPosition);
+                    accountId += getZigzagVarint(buffer);
+                    accountIdPosition = buffer.position();
+
+                    buffer.position(timestampPosition);
+                    timestamp += getZigzagVarint(buffer);
+                    timestampPosition = buffer.position();
+
+                    consumer.accept(timestamp, accountId, dictionary[buffer.get(typesStart + row)],
+                            buffer.getInt(countsStart + row * Integer.BYTES),
+                            buffer.getInt(amountsStart + row * Integer.BYTES));
+                }
+                rows += rowCount;
+                buffer.position(next);
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Skip a length prefixed column, returning the position its data starts at
+     * 
+     */
+    private static int skipColumn(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        int start = buffer.position();
+        buffer.position(start + length);
+        return start;
+    }
+
+    private static long getZigzagVarint(MappedByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,124 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ * State derived from completed purchases: seats reserved, tickets sold per
+ * ticket type, revenue, and purchases, seats and amount paid per account.
+ * 
+ * Updated by PurchaseEventStore as purchases are logged, safe to read from
+ * any thread.
+ * 
+ */
+public class PurchaseLedger {
+    private static final int PURCHASES = 0;
+    private static final int SEATS = 1;
+    private static final int AMOUNT_PAID = 2;
+
+    private final long[] ticketsSold = new long[TicketTypeRequest.Type.values().length];
+    private final Map<Long, long[]> accountTotals = new HashMap<>();
+    private long purchases;
+    private long seatsReserved;
+    private long revenue;
+
+    /**
+     * Apply a completed purchase
+     * 
+     */
+    synchronized void apply(long accountId, int adultTickets, int childTickets, int infantTickets, int totalSeats,
+            int totalCost) {
+        ticketsSold[TicketTypeRequest.Type.ADULT.ordinal()] += adultTickets;
+        ticketsSold[TicketTypeRequest.Type.CHILD.ordinal()] += childTickets;
+        ticketsSold[TicketTypeRequest.Type.INFANT.ordinal()] += infantTickets;
+        purchases++;
+        seatsReserved += totalSeats;
+        revenue += totalCost;
+
+        long[] totals = accountTotals.computeIfAbsent(accountId, id -> new long[3]);
+        totals[PURCHASES]++;
+        totals[SEATS] += totalSeats;
+        totals[AMOUNT_PAID] += totalCost;
+    }
+
+    public synchronized long getTicketsSold(TicketTypeRequest.Type ticketType) {
+        return ticketsSold[ticketType.ordinal()];
+    }
+
+    public synchronized long getPurchases() {
+        return purchases;
+    }
+
+    public synchronized long getSeatsReserved() {
+        return seatsReserved;
+    }
+
+    public synchronized long getRevenue() {
+        return revenue;
+    }
+
+    public synchronized long getAccountPurchases(long accountId) {
+        return accountTotal(accountId, PURCHASES);
+    }
+
+    public synchronized long getAccountSeats(long accountId) {
+        return accountTotal(accountId, SEATS);
+    }
+
+    public synchronized long getAccountAmountPaid(long accountId) {
+        return accountTotal(accountId, AMOUNT_PAID);
+    }
+
+    private long accountTotal(long accountId, int total) {
+        long[] totals = accountTotals.get(accountId);
+        return totals == null ? 0 : totals[total];
+    }
+
+    /**
+     * Size in bytes of the ledger once written with writeTo
+     * 
+     */
+    synchronized int serializedSize() {
+        return Long.BYTES * (ticketsSold.length + 3) + Integer.BYTES + accountTotals.size() * Long.BYTES * 4;
+    }
+
+    /**
+     * Write the ledger to a buffer with serializedSize bytes remaining
+     * 
+     */
+    synchronized void writeTo(ByteBuffer buffer) {
+        for (long sold : ticketsSold) {
+            buffer.putLong(sold);
+        }
+        buffer.putLong(purchases).putLong(seatsReserved).putLong(revenue).putInt(accountTotals.size());
+        for (Map.Entry<Long, long[]> entry : accountTotals.entrySet()) {
+            long[] totals = entry.getValue();
+            buffer.putLong(entry.getKey()).putLong(totals[PURCHASES]).putLong(totals[SEATS])
+                    .putLong(totals[AMOUNT_PAID]);
+        }
+    }
+
+    /**
+     * Read a ledger written with writeTo
+     * 
+     */
+    static PurchaseLedger readFrom(ByteBuffer buffer) {
+        PurchaseLedger ledger = new PurchaseLedger();
+        for (int i = 0; i < ledger.ticketsSold.length; i++) {
+            ledger.ticketsSold[i] = buffer.getLong();
+        }
+        ledger.purchases = buffer.getLong();
+        ledger.seatsReserved = buffer.getLong();
+        ledger.revenue = buffer.getLong();
+
+        int accounts = buffer.getInt();
+        for (int i = 0; i < accounts; i++) {
+            ledger.accountTotals.put(buffer.getLong(),
+                    new long[] { buffer.getLong(), buffer.getLong(), buffer.getLong() });
+        }
+        return ledger;
+    }
+}
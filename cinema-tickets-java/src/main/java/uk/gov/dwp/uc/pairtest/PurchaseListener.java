@@ -0,0 +1,43 @@
+package uk.gov.dwp.uc.pairtest;
+
+/**
+ * Notified by TicketPurchaseService after each purchase has been reserved and
+ * paid for. Called on the purchasing thread, so implementations should be
+ * quick. An exception thrown by a listener is counted by TicketPurchaseService
+ * and does not reach the purchaser, the purchase itself has completed.
+ * 
+ */
+public interface PurchaseListener {
+
+    /**
+     * 
+     * @param accountId     account Id
+     * @param adultTickets  adult tickets purchased
+     * @param childTickets  child tickets purchased
+     * @param infantTickets infant tickets purchased
+     * @param totalSeats    seats reserved
+     * @param totalCost     amount paid
+     * 
+     */
+    void purchaseCompleted(long accountId, int adultTickets, int childTickets, int infantTickets, int totalSeats,
+            int totalCost);
+
+    /**
+     * Notified instead of purchaseCompleted for a purchase of a known
+     * screening, as each screening of a basket. Listeners that do not track
+     * screenings get purchaseCompleted
+     * 
+     * @param screening     screening number
+     * @param accountId     account Id
+     * @param adultTickets  adult tickets purchased
+     * @param childTickets  child tickets purchased
+     * @param infantTickets infant tickets purchased
+     * @param totalSeats    seats reserved
+     * @param totalCost     amount paid
+     * 
+     */
+    default void screeningPurchaseCompleted(int screening, long accountId, int adultTickets, int childTickets,
+            int infantTickets, int totalSeats, int totalCost) {
+        purchaseCompleted(accountId, adultTickets, childTickets, infantTickets, totalSeats, totalCost);
+    }
+}
@@ -0,0 +1,329 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Durable append-only outbox of compensations still owed to the third party
+ * services, replayed by PurchaseOutboxDrainer.
+ * 
+ * Appends are queued and written by a single writer thread, which writes and
+ * forces every queued record as one batch (group commit), so callers never
+ * wait on the disk and there is one fsync per batch rather than per record.
+ * Appends and close exclude each other, so every append is either queued
+ * ahead of close and written, or refused.
+ * 
+ * The log holds fixed size records: int compensation | long accountId | int
+ * quantity. RELEASE_SCREENING_SEATS records hold the screening in place of the
+ * account Id, as a screening's seats are not held per account. A separate
+ * checkpoint file holds the log position up to which records have been
+ * replayed, and a dead letter file holds, in the same format, records the
+ * drainer gave up replaying.
+ * 
+ */
+public class PurchaseOutbox implements Closeable {
+    static final int RECORD_BYTES = 16;
+    private static final String LOG_FILE = "outbox.log";
+    private static final String CHECKPOINT_FILE = "outbox.checkpoint";
+    private static final String DEAD_LETTER_FILE = "outbox.dead";
+    private static final int MAX_BATCH_RECORDS = 4096;
+    private static final PendingRecord CLOSE = new PendingRecord(null, 0, 0);
+
+    /**
+     * Compensations that can be recorded, quantity is seats for RELEASE_SEATS
+     * and RELEASE_SCREENING_SEATS and amount for REFUND_PAYMENT. New types go
+     * last, records store the ordinal
+     * 
+     */
+    public enum Compensation {
+        RELEASE_SEATS, REFUND_PAYMENT, RELEASE_SCREENING_SEATS
+    }
+
+    /**
+     * Receives records read back from the outbox
+     * 
+     */
+    public interface RecordConsumer {
+        void accept(Compensation compensation, long accountId, int quantity);
+    }
+
+    private final FileChannel log;
+    private final FileChannel checkpoint;
+    private final FileChannel deadLetters;
+    private final BlockingQueue<PendingRecord> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    // Appends share the read lock, close takes the write lock
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile long committedPosition;
+    private boolean closed;
+
+    /**
+     * Open the outbox in directory, creating it if needed. A partially written
+     * trailing record left by a crash is discarded.
+     * 
+     * @param directory outbox directory
+     * @throws IOException if the outbox files cannot be opened
+     * 
+     */
+    public PurchaseOutbox(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.checkpoint = FileChannel.open(directory.resolve(CHECKPOINT_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.deadLetters = FileChannel.open(directory.resolve(DEAD_LETTER_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        deadLetters.truncate(deadLetters.size() - deadLetters.size() % RECORD_BYTES);
+
+        long size = log.size();
+        this.committedPosition = size - size % RECORD_BYTES;
+        log.truncate(committedPosition);
+        log.position(committedPosition);
+
+        this.writer = new Thread(this::writeBatches, "purchase-outbox-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queue a compensation for durable recording
+     * 
+     * @param compensation compensation type
+     * @param accountId    account Id
+     * @param quantity     seats or amount to compensate
+     * @return future completing once the record has been forced to disk
+     * 
+     */
+    public CompletableFuture<Void> append(Compensation compensation, long accountId, int quantity) {
+        PendingRecord record = new PendingRecord(compensation, accountId, quantity);
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                record.durable.completeExceptionally(new IOException("Outbox closed"));
+            } else {
+                pending.add(record);
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return record.durable;
+    }
+
+    /**
+     * Read committed records starting at a log position
+     * 
+     * @param position   log position to start from
+     * @param maxRecords maximum records to read
+     * @param consumer   receives each record
+     * @return log position after the last record read
+     * @throws IOException if the log cannot be read
+     * 
+     */
+    public long read(long position, int maxRecords, RecordConsumer consumer) throws IOException {
+        long end = Math.min(committedPosition, position + (long) maxRecords * RECORD_BYTES);
+        if (end <= position) {
+            return position;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - position));
+        while (buffer.hasRemaining()) {
+            if (log.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Outbox log truncated");
+            }
+        }
+        buffer.flip();
+
+        Compensation[] compensations = Compensation.values();
+        while (buffer.hasRemaining()) {
+            consumer.accept(compensations[buffer.getInt()], buffer.getLong(), buffer.getInt());
+            position += RECORD_BYTES;
+        }
+        return position;
+    }
+
+    /**
+     * Get the log position up to which records have been replayed
+     * 
+     * @return replayed log position
+     * @throws IOException if the checkpoint cannot be read
+     * 
+     */
+    public long getCheckpoint() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        while (buffer.hasRemaining()) {
+            if (checkpoint.read(buffer, buffer.position()) < 0) {
+                return 0;
+            }
+        }
+        return buffer.getLong(0);
+    }
+
+    /**
+     * Durably record the log position up to which records have been replayed
+     * 
+     * @param position replayed log position
+     * @throws IOException if the checkpoint cannot be written
+     * 
+     */
+    public void checkpoint(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(0, position);
+        while (buffer.hasRemaining()) {
+            checkpoint.write(buffer, buffer.position());
+        }
+        checkpoint.force(false);
+    }
+
+    public long getCommittedPosition() {
+        return committedPosition;
+    }
+
+    /**
+     * Durably record a compensation the drainer gave up replaying, for manual
+     * resolution
+     * 
+     * @param compensation compensation type
+     * @param accountId    account Id
+     * @param quantity     seats or amount to compensate
+     * @throws IOException if the dead letter file cannot be written
+     * 
+     */
+    public synchronized void deadLetter(Compensation compensation, long accountId, int quantity)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES).putInt(compensation.ordinal()).putLong(accountId)
+                .putInt(quantity);
+        buffer.flip();
+        long position = deadLetters.size();
+        while (buffer.hasRemaining()) {
+            position += deadLetters.write(buffer, position);
+        }
+        deadLetters.force(false);
+    }
+
+    /**
+     * Read every dead lettered compensation
+     * 
+     * @param consumer receives each record
+     * @throws IOException if the dead letter file cannot be read
+     * 
+     */
+    public synchronized void readDeadLetters(RecordConsumer consumer) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) deadLetters.size());
+        while (buffer.hasRemaining()) {
+            if (deadLetters.read(buffer, buffer.position()) < 0) {
+                throw new IOException("Outbox dead letters truncated");
+            }
+        }
+        buffer.flip();
+
+        Compensation[] compensations = Compensation.values();
+        while (buffer.hasRemaining()) {
+            consumer.accept(compensations[buffer.getInt()], buffer.getLong(), buffer.getInt());
+        }
+    }
+
+    /**
+     * Write the records already queued, then close the outbox files
+     * 
+     */
+    @Override
+    public void close() throws IOException {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+            pending.add(CLOSE);
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        checkpoint.close();
+        deadLetters.close();
+    }
+
+    /**
+     * Writer loop, writes and forces everything queued as one batch until the
+     * outbox is closed
+     * 
+     */
+    private void writeBatches() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_BATCH_RECORDS * RECORD_BYTES);
+        List<PendingRecord> batch = new ArrayList<>(MAX_BATCH_RECORDS);
+        boolean closing = false;
+
+        while (!closing) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            pending.drainTo(batch, MAX_BATCH_RECORDS - batch.size());
+            closing = batch.remove(CLOSE);
+            if (batch.isEmpty()) {
+                continue;
+            }
+
+            buffer.clear();
+            for (PendingRecord record : batch) {
+                buffer.putInt(record.compensation.ordinal()).putLong(record.accountId).putInt(record.quantity);
+            }
+            buffer.flip();
+            writeBatch(buffer, batch);
+            batch.clear();
+        }
+
+        IOException outboxClosed = new IOException("Outbox closed");
+        pending.forEach(record -> record.durable.completeExceptionally(outboxClosed));
+    }
+
+    /**
+     * Write and force a batch, on failure the log is cut back to the last
+     * committed record so a partial write cannot corrupt later batches
+     * 
+     */
+    private void writeBatch(ByteBuffer buffer, List<PendingRecord> batch) {
+        try {
+            while (buffer.hasRemaining()) {
+                log.write(buffer);
+            }
+            log.force(false);
+            committedPosition = log.position();
+            batch.forEach(record -> record.durable.complete(null));
+        } catch (IOException e) {
+            batch.forEach(record -> record.durable.completeExceptionally(e));
+            try {
+                log.truncate(committedPosition);
+                log.position(committedPosition);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+            }
+        }
+    }
+
+    private static class PendingRecord {
+        final Compensation compensation;
+        final long accountId;
+        final int quantity;
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        PendingRecord(Compensation compensation, long accountId, int quantity) {
+            this.compensation = compensation;
+            this.accountId = accountId;
+            this.quantity = quantity;
+        }
+    }
+}
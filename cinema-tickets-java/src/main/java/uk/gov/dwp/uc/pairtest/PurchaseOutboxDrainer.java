@@ -0,0 +1,178 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+
+/**
+ * Replays compensations recorded in a PurchaseOutbox against the third party
+ * services, and basket releases against the screening seat inventory, in
+ * batches. Schedule it with a fixed delay to drain in the
+ * background.
+ * 
+ * The checkpoint is advanced after each batch, up to the first record whose
+ * replay failed, so a failed compensation is retried on the next run. A
+ * record failing maxAttempts runs in a row is moved to the outbox's dead
+ * letters and skipped, so one bad record cannot hold back every record after
+ * it. Attempts are counted in memory, a restart gives the record a fresh set.
+ * Replays are at least once, a crash between a replay and the checkpoint
+ * replays that batch again.
+ * 
+ * Not thread safe, run it from one thread at a time.
+ * 
+ */
+public class PurchaseOutboxDrainer implements Runnable {
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    private final PurchaseOutbox outbox;
+    private final SeatReservationService seatReservationService;
+    private final ScreeningSeatInventory screeningSeatInventory;
+    private final TicketPaymentService ticketPaymentService;
+    private final int batchSize;
+    private final int maxAttempts;
+    private long failingPosition = -1;
+    private int failedAttempts;
+    private long deadLettered;
+
+    public PurchaseOutboxDrainer(PurchaseOutbox outbox, SeatReservationService seatReservationService,
+            TicketPaymentService ticketPaymentService, int batchSize) {
+        this(outbox, seatReservationService, ticketPaymentService, batchSize, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * 
+     * @param outbox                 outbox to drain
+     * @param seatReservationService seat reservation service releases are
+     *                               replayed against
+     * @param ticketPaymentService   ticket payment service refunds are
+     *                               replayed against
+     * @param batchSize              records replayed per checkpoint
+     * @param maxAttempts            failed replays in a row before a record is
+     *                               dead lettered
+     * 
+     */
+    public PurchaseOutboxDrainer(PurchaseOutbox outbox, SeatReservationService seatReservationService,
+            TicketPaymentService ticketPaymentService, int batchSize, int maxAttempts) {
+        this(outbox, seatReservationService, null, ticketPaymentService, batchSize, maxAttempts);
+    }
+
+    /**
+     * 
+     * @param outbox                 outbox to drain
+     * @param seatReservationService seat reservation service releases are
+     *                               replayed against
+     * @param screeningSeatInventory seat inventory basket releases are
+     *                               replayed against, null if baskets do not
+     *                               share the outbox
+     * @param ticketPaymentService   ticket payment service refunds are
+     *                               replayed against
+     * @param batchSize              records replayed per checkpoint
+     * @param maxAttempts            failed replays in a row before a record is
+     *                               dead lettered
+     * 
+     */
+    public PurchaseOutboxDrainer(PurchaseOutbox outbox, SeatReservationService seatReservationService,
+            ScreeningSeatInventory screeningSeatInventory, TicketPaymentService ticketPaymentService, int batchSize,
+            int maxAttempts) {
+        this.outbox = outbox;
+        this.seatReservationService = seatReservationService;
+        this.screeningSeatInventory = screeningSeatInventory;
+        this.ticketPaymentService = ticketPaymentService;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Drain every committed record, stopping early if a replay fails
+     * 
+     */
+    @Override
+    public void run() {
+        try {
+            while (drainBatch() == batchSize) {
+                // a full batch may have more records behind it
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replay one batch of records and advance the checkpoint past the records
+     * replayed or dead lettered
+     * 
+     * @return number of records replayed or dead lettered, less than the batch
+     *         size when caught up or a replay failed
+     * @throws IOException if the outbox cannot be read, checkpointed or dead
+     *                     lettered
+     * 
+     */
+    public int drainBatch() throws IOException {
+        long start = outbox.getCheckpoint();
+        long[] replayed = { start };
+        PurchaseOutbox.Compensation[] failedCompensation = new PurchaseOutbox.Compensation[1];
+        long[] failedRecord = new long[2];
+
+        try {
+            outbox.read(start, batchSize, (compensation, accountId, quantity) -> {
+                failedCompensation[0] = compensation;
+                failedRecord[0] = accountId;
+                failedRecord[1] = quantity;
+                replay(compensation, accountId, quantity);
+                replayed[0] += PurchaseOutbox.RECORD_BYTES;
+            });
+        } catch (RuntimeException e) {
+            // retried from this record on the next run, until it runs out of
+            // attempts
+            failedAttempts = replayed[0] == failingPosition ? failedAttempts + 1 : 1;
+            failingPosition = replayed[0];
+            if (failedAttempts >= maxAttempts) {
+                outbox.deadLetter(failedCompensation[0], failedRecord[0], (int) failedRecord[1]);
+                deadLettered++;
+                failingPosition = -1;
+                replayed[0] += PurchaseOutbox.RECORD_BYTES;
+            }
+        }
+
+        if (replayed[0] > start) {
+            outbox.checkpoint(replayed[0]);
+        }
+        return (int) ((replayed[0] - start) / PurchaseOutbox.RECORD_BYTES);
+    }
+
+    /**
+     * Replay one record, throwing if it could not be replayed
+     * 
+     */
+    private void replay(PurchaseOutbox.Compensation compensation, long accountId, int quantity) {
+        switch (compensation) {
+            case RELEASE_SEATS:
+                seatReservationService.releaseSeat(accountId, quantity);
+                break;
+            case REFUND_PAYMENT:
+                ticketPaymentService.refundPayment(accountId, quantity);
+                break;
+            default:
+                // the account Id field holds the screening
+                if (screeningSeatInventory == null) {
+                    throw new IllegalStateException("No screening seat inventory to release seats of screening "
+                            + accountId);
+                }
+                if (!screeningSeatInventory.release((int) accountId, quantity)) {
+                    throw new IllegalStateException("Seats of screening " + accountId + " could not be released");
+                }
+        }
+    }
+
+    /**
+     * Get the number of records dead lettered by this drainer
+     * 
+     * @return records dead lettered
+     * 
+     */
+    public long getDeadLettered() {
+        return deadLettered;
+    }
+}
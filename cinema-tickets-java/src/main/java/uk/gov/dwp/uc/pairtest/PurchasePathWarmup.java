@@ -0,0 +1,181 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import uk.gov.dwp.uc.pairtest.domain.PricingContext;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Start up warm-up of the purchase path.
+ *
+ * Runs synthetic orders of every shape up to the maximum tickets, valid and
+ * rejected for each validation rule, in every pricing context, through a real
+ * TicketServiceImpl and ValidationService and a TicketPurchaseService from the
+ * application's factory, so the JIT has compiled them before the first
+ * customer arrives. Rejected orders are included so the exception paths are
+ * compiled too.
+ *
+ * The factory should build the service the application serves with, with the
+ * same executor, promotion engine, listeners and outbox configuration, but
+ * backed by the no-op TicketPaymentServiceImpl and SeatReservationServiceImpl
+ * and by listeners that may see synthetic purchases, so the paths they take
+ * are warmed and nothing reaches the real payment or seat services.
+ *
+ * Callers start the warm-up when the application starts and report ready only
+ * once isReady returns true or awaitReady returns, as TicketHttpServer does
+ * on its readiness probe given warmup::isReady.
+ *
+ */
+public class PurchasePathWarmup implements Runnable {
+    public static final int DEFAULT_ITERATIONS = 20_000;
+    private static final int MAX_TICKETS = TicketRequestValidationService.DEFAULT_MAX_ALLOWED_TICKETS;
+
+    private final int iterations;
+    private final Supplier<TicketPurchaseService> ticketPurchaseServiceFactory;
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private volatile int completedIterations;
+
+    /**
+     *
+     * @param ticketPurchaseServiceFactory builds the application's ticket
+     *                                     purchase service over no-op payment
+     *                                     and seat services
+     *
+     */
+    public PurchasePathWarmup(Supplier<TicketPurchaseService> ticketPurchaseServiceFactory) {
+        this(DEFAULT_ITERATIONS, ticketPurchaseServiceFactory);
+    }
+
+    /**
+     *
+     * @param iterations                   synthetic purchase attempts to run,
+     *                                     0 to be ready at once
+     * @param ticketPurchaseServiceFactory builds the application's ticket
+     *                                     purchase service over no-op payment
+     *                                     and seat services
+     *
+     */
+    public PurchasePathWarmup(int iterations, Supplier<TicketPurchaseService> ticketPurchaseServiceFactory) {
+        if (iterations < 0) {
+            throw new IllegalArgumentException("Iterations should be 0 or more");
+        }
+        if (ticketPurchaseServiceFactory == null) {
+            throw new IllegalArgumentException("Ticket purchase service factory should not be null");
+        }
+        this.iterations = iterations;
+        this.ticketPurchaseServiceFactory = ticketPurchaseServiceFactory;
+    }
+
+    /**
+     * Run the warm-up on a new daemon thread
+     *
+     */
+    public void start() {
+        Thread thread = new Thread(this, "purchase-path-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Run the warm-up on the calling thread, then signal ready. Ready is
+     * signalled even if the warm-up fails, a cold purchase path still works.
+     * Each pass over the order shapes runs in the next pricing context,
+     * standard passes through TicketServiceImpl
+     *
+     */
+    @Override
+    public void run() {
+        try {
+            ValidationService validationService = new ValidationService();
+            TicketPurchaseService ticketPurchaseService = ticketPurchaseServiceFactory.get();
+            TicketService ticketService = new TicketServiceImpl(validationService, ticketPurchaseService);
+            PricingContext[] pricingContexts = PricingContext.values();
+            List<Long> accountIds = new ArrayList<>();
+            List<TicketTypeRequest[]> orders = new ArrayList<>();
+            addOrders(accountIds, orders);
+
+            for (int i = 0; i < iterations; i++) {
+                int order = i % orders.size();
+                PricingContext pricingContext = pricingContexts[(i / orders.size()) % pricingContexts.length];
+                Long accountId = accountIds.get(order);
+                TicketTypeRequest[] ticketTypeRequests = orders.get(order);
+                try {
+                    if (pricingContext == PricingContext.STANDARD) {
+                        ticketService.purchaseTickets(accountId, ticketTypeRequests);
+                    } else {
+                        validationService.validate(accountId);
+                        validationService.validate(ticketTypeRequests);
+                        ticketPurchaseService.purchase(accountId, pricingContext, ticketTypeRequests);
+                    }
+                } catch (InvalidPurchaseException e) {
+                    // expected for rejected orders
+                }
+                completedIterations = i + 1;
+            }
+        } finally {
+            ready.countDown();
+        }
+    }
+
+    public boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
+    /**
+     * Wait for the warm-up to finish
+     *
+     * @param timeout maximum time to wait
+     * @param unit    unit of timeout
+     * @return true if ready, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     *
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    public int getCompletedIterations() {
+        return completedIterations;
+    }
+
+    /**
+     * Add every valid order shape, then orders and accounts rejected by each
+     * validation rule
+     *
+     */
+    private static void addOrders(List<Long> accountIds, List<TicketTypeRequest[]> orders) {
+        TicketTypeRequestUtilities ticketTypeRequestUtilities = new TicketTypeRequestUtilities();
+        long accountId = 1;
+
+        for (int adultTickets = 1; adultTickets <= MAX_TICKETS; adultTickets++) {
+            for (int childTickets = 0; adultTickets + childTickets <= MAX_TICKETS; childTickets++) {
+                for (int infantTickets = 0; infantTickets <= adultTickets
+                        && adultTickets + childTickets + infantTickets <= MAX_TICKETS; infantTickets++) {
+                    accountIds.add(accountId++);
+                    orders.add(ticketTypeRequestUtilities.getTicketTypeRequests(adultTickets, childTickets,
+                            infantTickets));
+                }
+            }
+        }
+
+        TicketTypeRequest adult = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1);
+        TicketTypeRequest[][] rejectedOrders = { null, {}, { null }, { new TicketTypeRequest(null, 1) },
+                { new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 0) },
+                { new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 2) },
+                { adult, new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 2) },
+                { new TicketTypeRequest(TicketTypeRequest.Type.ADULT, MAX_TICKETS + 1) } };
+        for (TicketTypeRequest[] rejectedOrder : rejectedOrders) {
+            accountIds.add(accountId++);
+            orders.add(rejectedOrder);
+        }
+        accountIds.add(null);
+        orders.add(new TicketTypeRequest[] { adult });
+        accountIds.add(0L);
+        orders.add(new TicketTypeRequest[] { adult });
+    }
+}
@@ -0,0 +1,217 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.nio.charset.StandardCharsets;
+
+import uk.gov.dwp.uc.pairtest.domain.PurchaseOrder;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Single pass parser for the JSON purchase payload
+ * 
+ * {"accountId": 1, "ADULT": 2, "CHILD": 1, "INFANT": 1}
+ * 
+ * Only the fields above are accepted, each holding an integer (accountId may
+ * also be null). Ticket types that are missing or zero are left out of the
+ * order, business rules are left to the validation service.
+ * 
+ */
+public class PurchaseRequestParser {
+    private static final byte[] ACCOUNT_ID = "accountId".getBytes(StandardCharsets.US_ASCII);
+    private static final TicketTypeRequestUtilities ticketTypeRequestUtilities = new TicketTypeRequestUtilities();
+    private static final TicketTypeRequest.Type[] TICKET_TYPES = TicketTypeRequest.Type.values();
+    private static final byte[][] TICKET_TYPE_NAMES = new byte[TICKET_TYPES.length][];
+
+    static {
+        for (int i = 0; i < TICKET_TYPES.length; i++) {
+            TICKET_TYPE_NAMES[i] = TICKET_TYPES[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final byte[] json;
+    private final int length;
+    private int position;
+
+    private PurchaseRequestParser(byte[] json, int length) {
+        this.json = json;
+        this.length = length;
+    }
+
+    /**
+     * Parse a purchase payload
+     * 
+     * @param json   payload bytes
+     * @param length number of payload bytes in json
+     * @return purchase order
+     * @throws InvalidPurchaseException if the payload is malformed
+     * 
+     */
+    public static PurchaseOrder parse(byte[] json, int length) {
+        return new PurchaseRequestParser(json, length).parseOrder();
+    }
+
+    private PurchaseOrder parseOrder() {
+        Long accountId = null;
+        int[] ticketCounts = new int[TICKET_TYPES.length];
+        boolean[] seen = new boolean[TICKET_TYPES.length + 1];
+
+        expect('{');
+        if (peek() == '}') {
+            position++;
+        } else {
+            do {
+                int keyStart = parseKeyStart();
+                int keyEnd = position - 1;
+                expect(':');
+                int field = fieldIndex(keyStart, keyEnd);
+                if (seen[field]) {
+                    throw malformed();
+                }
+                seen[field] = true;
+
+                if (field == TICKET_TYPES.length) {
+                    accountId = parseNullableLong();
+                } else {
+                    long count = parseLong();
+                    if (count < Integer.MIN_VALUE || count > Integer.MAX_VALUE) {
+                        throw malformed();
+                    }
+                    ticketCounts[field] = (int) count;
+                }
+            } while (nextMember());
+        }
+
+        skipWhitespace();
+        if (position != length) {
+            throw malformed();
+        }
+
+        TicketTypeRequest[] ticketTypeRequests = ticketTypeRequestUtilities.getTicketTypeRequests(
+                ticketCounts[TicketTypeRequest.Type.ADULT.ordinal()],
+                ticketCounts[TicketTypeRequest.Type.CHILD.ordinal()],
+                ticketCounts[TicketTypeRequest.Type.INFANT.ordinal()]);
+        return new PurchaseOrder(accountId, ticketTypeRequests);
+    }
+
+    /**
+     * Read a quoted key, returning the offset of its first character and leaving
+     * the position after the closing quote
+     * 
+     */
+    private int parseKeyStart() {
+        expect('"');
+        int start = position;
+        while (position < length && json[position] != '"') {
+            if (json[position] == '\\') {
+                throw malformed();
+            }
+            position++;
+        }
+        if (position == length) {
+            throw malformed();
+        }
+        position++;
+        return start;
+    }
+
+    /**
+     * Match a key against the known fields, ticket types map to their ordinal and
+     * accountId to the number of ticket types
+     * 
+     */
+    private int fieldIndex(int start, int end) {
+        if (matches(ACCOUNT_ID, start, end)) {
+            return TICKET_TYPES.length;
+        }
+        for (int i = 0; i < TICKET_TYPE_NAMES.length; i++) {
+            if (matches(TICKET_TYPE_NAMES[i], start, end)) {
+                return i;
+            }
+        }
+        throw malformed();
+    }
+
+    private boolean matches(byte[] name, int start, int end) {
+        if (end - start != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (json[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Long parseNullableLong() {
+        skipWhitespace();
+        if (position + 4 <= length && json[position] == 'n' && json[position + 1] == 'u'
+                && json[position + 2] == 'l' && json[position + 3] == 'l') {
+            position += 4;
+            return null;
+        }
+        return parseLong();
+    }
+
+    private long parseLong() {
+        skipWhitespace();
+        boolean negative = position < length && json[position] == '-';
+        if (negative) {
+            position++;
+        }
+        int start = position;
+        long value = 0;
+        while (position < length && json[position] >= '0' && json[position] <= '9') {
+            if (position - start == 18) {
+                throw malformed();
+            }
+            value = value * 10 + (json[position++] - '0');
+        }
+        if (position == start) {
+            throw malformed();
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Consume the separator after a member, returning true if another member
+     * follows
+     * 
+     */
+    private boolean nextMember() {
+        skipWhitespace();
+        if (position < length && json[position] == ',') {
+            position++;
+            return true;
+        }
+        expect('}');
+        return false;
+    }
+
+    private byte peek() {
+        skipWhitespace();
+        if (position == length) {
+            throw malformed();
+        }
+        return json[position];
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw malformed();
+        }
+        position++;
+    }
+
+    private void skipWhitespace() {
+        while (position < length
+                && (json[position] == ' ' || json[position] == '\t' || json[position] == '\n'
+                        || json[position] == '\r')) {
+            position++;
+        }
+    }
+
+    private InvalidPurchaseException malformed() {
+        return new InvalidPurchaseException("Malformed purchase request");
+    }
+}
@@ -0,0 +1,173 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import uk.gov.dwp.uc.pairtest.domain.PurchaseOrder;
+
+/**
+ * One stage of the purchase pipeline. Orders are processed by a dedicated pool
+ * of workers and passed downstream once the stage action succeeds.
+ * 
+ * Demand is requested from upstream one order at a time as workers free up, and
+ * publishing downstream blocks while the downstream buffer is full, so a slow
+ * stage throttles the stages in front of it.
+ * 
+ * Orders the action accepted but that cannot be published, because the stage
+ * was closed by an upstream error or otherwise, are passed to the publish
+ * failure handler rather than the rejection handler, as the action's effects
+ * have already happened. The workers are shut down whenever the stage closes.
+ * 
+ */
+public class PurchaseStage extends SubmissionPublisher<PurchaseOrder>
+        implements Flow.Processor<PurchaseOrder, PurchaseOrder> {
+
+    private final Consumer<PurchaseOrder> action;
+    private final BiConsumer<PurchaseOrder, RuntimeException> rejectionHandler;
+    private final BiConsumer<PurchaseOrder, RuntimeException> publishFailureHandler;
+    private final int parallelism;
+    private final ExecutorService workers;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile Flow.Subscription subscription;
+    private volatile boolean upstreamCompleted;
+
+    /**
+     * 
+     * @param action           stage action, throws to reject the order
+     * @param parallelism      number of orders processed concurrently
+     * @param bufferCapacity   maximum orders buffered for the downstream stage
+     * @param rejectionHandler called with orders the stage action rejected
+     * 
+     */
+    public PurchaseStage(Consumer<PurchaseOrder> action, int parallelism, int bufferCapacity,
+            BiConsumer<PurchaseOrder, RuntimeException> rejectionHandler) {
+        this(action, parallelism, bufferCapacity, rejectionHandler, rejectionHandler);
+    }
+
+    /**
+     * 
+     * @param action                stage action, throws to reject the order
+     * @param parallelism           number of orders processed concurrently
+     * @param bufferCapacity        maximum orders buffered for the downstream
+     *                              stage
+     * @param rejectionHandler      called with orders the stage action
+     *                              rejected
+     * @param publishFailureHandler called with orders the stage action
+     *                              accepted that could not be published, to
+     *                              compensate or report them
+     * 
+     */
+    public PurchaseStage(Consumer<PurchaseOrder> action, int parallelism, int bufferCapacity,
+            BiConsumer<PurchaseOrder, RuntimeException> rejectionHandler,
+            BiConsumer<PurchaseOrder, RuntimeException> publishFailureHandler) {
+        super(ForkJoinPool.commonPool(), bufferCapacity);
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Stage parallelism should be greater than 0");
+        }
+        this.action = action;
+        this.rejectionHandler = rejectionHandler;
+        this.publishFailureHandler = publishFailureHandler;
+        this.parallelism = parallelism;
+        this.workers = Executors.newFixedThreadPool(parallelism);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(parallelism);
+    }
+
+    @Override
+    public void onNext(PurchaseOrder order) {
+        inFlight.incrementAndGet();
+        try {
+            workers.execute(() -> process(order));
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            rejectionHandler.accept(order, e);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        closeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamCompleted = true;
+        closeWhenDrained();
+    }
+
+    /**
+     * Stop taking orders from upstream, finish the orders in flight, then
+     * close the stage
+     * 
+     */
+    public void cancel() {
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        onComplete();
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+        super.close();
+    }
+
+    @Override
+    public void closeExceptionally(Throwable error) {
+        workers.shutdown();
+        super.closeExceptionally(error);
+    }
+
+    /**
+     * Run the stage action on an order and publish it downstream if accepted
+     * 
+     * @param order purchase order
+     * 
+     */
+    private void process(PurchaseOrder order) {
+        try {
+            try {
+                action.accept(order);
+            } catch (RuntimeException e) {
+                rejectionHandler.accept(order, e);
+                return;
+            }
+            try {
+                submit(order);
+            } catch (RuntimeException e) {
+                publishFailureHandler.accept(order, e);
+            }
+        } finally {
+            inFlight.decrementAndGet();
+            subscription.request(1);
+            closeWhenDrained();
+        }
+    }
+
+    /**
+     * Close the stage once upstream has completed and no orders are in flight
+     * 
+     */
+    private void closeWhenDrained() {
+        if (upstreamCompleted && inFlight.get() == 0) {
+            close();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Client for one SeatShardServer. Each caller borrows a pooled connection for
+ * the length of a request, so concurrent callers each have a request in
+ * flight on their own connection.
+ *
+ * Connecting and waiting for each reply are bounded by a timeout, so a hung
+ * shard fails requests rather than blocking callers. A reservation whose reply
+ * is lost after it was sent may still have been made, the shard completes
+ * requests it has read even if the client has gone, so its seats are released
+ * before the failure is thrown.
+ *
+ */
+public class RemoteSeatInventory implements ScreeningSeatInventory, Closeable {
+    public static final int DEFAULT_TIMEOUT_MILLIS = 5_000;
+
+    private final InetSocketAddress address;
+    private final int screenings;
+    private final int seatsPerScreening;
+    private final int timeoutMillis;
+    private final Queue<Connection> idleConnections = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    /**
+     *
+     * @param address           shard server address
+     * @param screenings        number of screenings
+     * @param seatsPerScreening seats in every screening
+     *
+     */
+    public RemoteSeatInventory(InetSocketAddress address, int screenings, int seatsPerScreening) {
+        this(address, screenings, seatsPerScreening, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     *
+     * @param address           shard server address
+     * @param screenings        number of screenings
+     * @param seatsPerScreening seats in every screening
+     * @param timeoutMillis     connect and reply timeout
+     *
+     */
+    public RemoteSeatInventory(InetSocketAddress address, int screenings, int seatsPerScreening,
+            int timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Timeout should be greater than 0");
+        }
+        this.address = address;
+        this.screenings = screenings;
+        this.seatsPerScreening = seatsPerScreening;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Reserve seats on the shard. If the reply is lost once the request was
+     * sent the outcome is unknown, the seats are released and the failure
+     * thrown
+     *
+     */
+    @Override
+    public boolean reserve(int screening, int seats) {
+        Connection connection = borrow();
+        try {
+            send(connection, SeatShardProtocol.RESERVE, screening, seats);
+        } catch (IOException e) {
+            throw broken(connection, e);
+        }
+        try {
+            int result = connection.input.readInt();
+            returnConnection(connection);
+            return result == 1;
+        } catch (IOException e) {
+            UncheckedIOException failure = broken(connection, e);
+            try {
+                call(SeatShardProtocol.RELEASE, screening, seats);
+            } catch (RuntimeException releaseFailure) {
+                failure.addSuppressed(releaseFailure);
+            }
+            throw failure;
+        }
+    }
+
+    @Override
+    public boolean release(int screening, int seats) {
+        return call(SeatShardProtocol.RELEASE, screening, seats) == 1;
+    }
+
+    @Override
+    public int available(int screening) {
+        return call(SeatShardProtocol.AVAILABLE, screening, 0);
+    }
+
+    @Override
+    public int getScreenings() {
+        return screenings;
+    }
+
+    @Override
+    public int getSeatsPerScreening() {
+        return seatsPerScreening;
+    }
+
+    /**
+     * Read the reservations of screenings on the shard, leaving them in place
+     *
+     * @param screeningNumbers screenings to export
+     * @param count            number of screenings to export
+     * @param reserved         receives the reserved seats of each screening
+     *
+     */
+    void exportScreenings(int[] screeningNumbers, int count, int[] reserved) {
+        Connection connection = borrow();
+        try {
+            connection.output.writeByte(SeatShardProtocol.EXPORT);
+            connection.output.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                connection.output.writeInt(screeningNumbers[i]);
+            }
+            connection.output.flush();
+            for (int i = 0; i < count; i++) {
+                reserved[i] = connection.input.readInt();
+            }
+        } catch (IOException e) {
+            throw broken(connection, e);
+        }
+        returnConnection(connection);
+    }
+
+    /**
+     * Set the reservations of screenings on the shard, replacing whatever they
+     * held. Safe to repeat, and importing 0 seats clears a screening
+     *
+     * @param screeningNumbers screenings to import
+     * @param count            number of screenings to import
+     * @param reserved         reserved seats of each screening
+     * @return true if every screening now holds its reserved seats
+     *
+     */
+    boolean importScreenings(int[] screeningNumbers, int count, int[] reserved) {
+        Connection connection = borrow();
+        try {
+            connection.output.writeByte(SeatShardProtocol.IMPORT);
+            connection.output.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                connection.output.writeInt(screeningNumbers[i]);
+                connection.output.writeInt(reserved[i]);
+            }
+            connection.output.flush();
+            int imported = connection.input.readInt();
+            returnConnection(connection);
+            return imported == 1;
+        } catch (IOException e) {
+            throw broken(connection, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idleConnections.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private int call(byte operation, int screening, int value) {
+        Connection connection = borrow();
+        try {
+            send(connection, operation, screening, value);
+            int result = connection.input.readInt();
+            returnConnection(connection);
+            return result;
+        } catch (IOException e) {
+            throw broken(connection, e);
+        }
+    }
+
+    private static void send(Connection connection, byte operation, int screening, int value) throws IOException {
+        connection.output.writeByte(operation);
+        connection.output.writeInt(screening);
+        connection.output.writeInt(value);
+        connection.output.flush();
+    }
+
+    private Connection borrow() {
+        if (closed) {
+            throw new IllegalStateException("Seat inventory closed");
+        }
+        Connection connection = idleConnections.poll();
+        if (connection != null) {
+            return connection;
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(address, timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            return new Connection(socket);
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void returnConnection(Connection connection) {
+        idleConnections.offer(connection);
+        if (closed) {
+            close();
+        }
+    }
+
+    private static UncheckedIOException broken(Connection connection, IOException e) {
+        connection.close();
+        return new UncheckedIOException(e);
+    }
+
+    private static final class Connection {
+        private final Socket socket;
+        private final DataInputStream input;
+        private final DataOutputStream output;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+}
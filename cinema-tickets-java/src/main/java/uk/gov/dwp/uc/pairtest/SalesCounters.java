@@ -0,0 +1,210 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import uk.gov.dwp.uc.pairtest.domain.SalesSnapshot;
+
+/**
+ * Live sales counters updated from the purchase path.
+ * 
+ * Counters are striped like a LongAdder so concurrent purchases update
+ * different cache lines. Each stripe is guarded by a sequence number (a
+ * seqlock): a writer claims a stripe by moving its sequence from even to odd,
+ * trying the next stripe if another writer holds it, and readers retry a
+ * stripe whose sequence changed while they read it. Writers never wait for
+ * readers, and every purchase is either fully counted in a snapshot or not at
+ * all, so tickets, seats and revenue in a snapshot agree.
+ * 
+ * Readers retry a stripe a bounded number of times, spinning at first and then
+ * yielding in case its writer was descheduled mid update. A reader still
+ * racing writers after that takes the stripe's counters as they stand, which
+ * may hold part of a purchase. Such reads are counted in getApproximateReads.
+ * 
+ * Purchases of a known screening, as from a basket, are also counted per
+ * screening. Purchases made without a screening count in the totals only.
+ * 
+ */
+public class SalesCounters implements PurchaseListener {
+    private static final int SEQUENCE = 0;
+    private static final int PURCHASES = 1;
+    private static final int ADULT_TICKETS = 2;
+    private static final int CHILD_TICKETS = 3;
+    private static final int INFANT_TICKETS = 4;
+    private static final int SEATS = 5;
+    private static final int REVENUE = 6;
+    // 16 longs per stripe keeps each stripe on its own pair of cache lines
+    private static final int STRIPE_LONGS = 16;
+    static final int SNAPSHOT_SPINS = 64;
+    static final int SNAPSHOT_ATTEMPTS = 1024;
+
+    private final AtomicLongArray stripes;
+    private final int stripeMask;
+    private final LongAdder approximateReads;
+    private final ConcurrentMap<Integer, SalesCounters> screenings;
+
+    public SalesCounters() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * 
+     * @param minimumStripes stripes to spread writers over, rounded up to a power
+     *                       of two
+     * 
+     */
+    public SalesCounters(int minimumStripes) {
+        this(Integer.highestOneBit(Math.max(1, minimumStripes - 1)) << 1, new LongAdder(),
+                new ConcurrentHashMap<>());
+    }
+
+    private SalesCounters(int stripeCount, LongAdder approximateReads,
+            ConcurrentMap<Integer, SalesCounters> screenings) {
+        this.stripes = new AtomicLongArray(stripeCount * STRIPE_LONGS);
+        this.stripeMask = stripeCount - 1;
+        this.approximateReads = approximateReads;
+        this.screenings = screenings;
+    }
+
+    @Override
+    public void purchaseCompleted(long accountId, int adultTickets, int childTickets, int infantTickets,
+            int totalSeats, int totalCost) {
+        int stripe = stripeFor(Thread.currentThread().getId());
+        while (!beginUpdate(stripe)) {
+            stripe = (stripe + 1) & stripeMask;
+        }
+        int base = stripe * STRIPE_LONGS;
+        add(base + PURCHASES, 1);
+        add(base + ADULT_TICKETS, adultTickets);
+        add(base + CHILD_TICKETS, childTickets);
+        add(base + INFANT_TICKETS, infantTickets);
+        add(base + SEATS, totalSeats);
+        add(base + REVENUE, totalCost);
+        endUpdate(stripe);
+    }
+
+    @Override
+    public void screeningPurchaseCompleted(int screening, long accountId, int adultTickets, int childTickets,
+            int infantTickets, int totalSeats, int totalCost) {
+        purchaseCompleted(accountId, adultTickets, childTickets, infantTickets, totalSeats, totalCost);
+        screenings.computeIfAbsent(screening, ignored -> new SalesCounters(stripeMask + 1, approximateReads, null))
+                .purchaseCompleted(accountId, adultTickets, childTickets, infantTickets, totalSeats, totalCost);
+    }
+
+    /**
+     * Sum the stripes into a snapshot without blocking writers, approximately
+     * if writers kept a stripe busy for SNAPSHOT_ATTEMPTS reads
+     * 
+     * @return sales snapshot
+     * 
+     */
+    public SalesSnapshot snapshot() {
+        long purchases = 0;
+        long adultTickets = 0;
+        long childTickets = 0;
+        long infantTickets = 0;
+        long seats = 0;
+        long revenue = 0;
+
+        for (int base = 0; base < stripes.length(); base += STRIPE_LONGS) {
+            for (int attempt = 0;; attempt++) {
+                long sequence = stripes.get(base + SEQUENCE);
+                boolean approximate = attempt + 1 >= SNAPSHOT_ATTEMPTS;
+                if ((sequence & 1) != 0 && !approximate) {
+                    backOff(attempt);
+                    continue;
+                }
+                long stripePurchases = stripes.get(base + PURCHASES);
+                long stripeAdultTickets = stripes.get(base + ADULT_TICKETS);
+                long stripeChildTickets = stripes.get(base + CHILD_TICKETS);
+                long stripeInfantTickets = stripes.get(base + INFANT_TICKETS);
+                long stripeSeats = stripes.get(base + SEATS);
+                long stripeRevenue = stripes.get(base + REVENUE);
+                if (approximate || stripes.get(base + SEQUENCE) == sequence) {
+                    if (approximate) {
+                        approximateReads.increment();
+                    }
+                    purchases += stripePurchases;
+                    adultTickets += stripeAdultTickets;
+                    childTickets += stripeChildTickets;
+                    infantTickets += stripeInfantTickets;
+                    seats += stripeSeats;
+                    revenue += stripeRevenue;
+                    break;
+                }
+                backOff(attempt);
+            }
+        }
+        return new SalesSnapshot(purchases, adultTickets, childTickets, infantTickets, seats, revenue);
+    }
+
+    /**
+     * Snapshot the purchases of one screening
+     * 
+     * @param screening screening number
+     * @return sales snapshot, empty if nothing has been sold for the screening
+     * 
+     */
+    public SalesSnapshot snapshot(int screening) {
+        SalesCounters screeningCounters = screenings.get(screening);
+        return screeningCounters == null ? new SalesSnapshot(0, 0, 0, 0, 0, 0) : screeningCounters.snapshot();
+    }
+
+    /**
+     * Get the number of times a snapshot gave up waiting for a stripe's writer
+     * and summed its counters as they stood
+     * 
+     * @return approximate reads
+     * 
+     */
+    public long getApproximateReads() {
+        return approximateReads.sum();
+    }
+
+    /**
+     * Claim a stripe for an update by moving its sequence from even to odd
+     * 
+     * @param stripe stripe number
+     * @return true if claimed, false if another writer holds it
+     * 
+     */
+    boolean beginUpdate(int stripe) {
+        int index = stripe * STRIPE_LONGS + SEQUENCE;
+        long sequence = stripes.get(index);
+        return (sequence & 1) == 0 && stripes.compareAndSet(index, sequence, sequence + 1);
+    }
+
+    /**
+     * Finish an update begun by beginUpdate
+     * 
+     * @param stripe stripe number
+     * 
+     */
+    void endUpdate(int stripe) {
+        int index = stripe * STRIPE_LONGS + SEQUENCE;
+        stripes.set(index, stripes.getPlain(index) + 1);
+    }
+
+    private static void backOff(int attempt) {
+        if (attempt < SNAPSHOT_SPINS) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Add to a counter of a stripe held by the calling thread
+     * 
+     */
+    private void add(int index, long value) {
+        stripes.setOpaque(index, stripes.getPlain(index) + value);
+    }
+
+    private int stripeFor(long threadId) {
+        long hash = threadId * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & stripeMask;
+    }
+}
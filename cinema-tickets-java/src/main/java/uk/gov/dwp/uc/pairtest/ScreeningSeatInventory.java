@@ -0,0 +1,43 @@
+package uk.gov.dwp.uc.pairtest;
+
+/**
+ * Seat inventory for numbered screenings that all have the same number of
+ * seats. Seats are counted rather than named.
+ *
+ */
+public interface ScreeningSeatInventory {
+
+    /**
+     * Reserve seats for a screening, all or none
+     *
+     * @param screening screening number
+     * @param seats     seats to reserve
+     * @return true if the seats were reserved, false if not enough were free
+     *
+     */
+    boolean reserve(int screening, int seats);
+
+    /**
+     * Release reserved seats of a screening, all or none
+     *
+     * @param screening screening number
+     * @param seats     seats to release
+     * @return true if the seats were released, false if fewer were reserved
+     *
+     */
+    boolean release(int screening, int seats);
+
+    /**
+     * Count the free seats of a screening
+     *
+     * @param screening screening number
+     * @return free seats
+     *
+     */
+    int available(int screening);
+
+    int getScreenings();
+
+    int getSeatsPerScreening();
+
+}
@@ -0,0 +1,39 @@
+package uk.gov.dwp.uc.pairtest;
+
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Seat reservation service for one screening of a seat inventory
+ *
+ */
+public class ScreeningSeatReservationService implements SeatReservationService {
+    private final ScreeningSeatInventory seatInventory;
+    private final int screening;
+
+    /**
+     *
+     * @param seatInventory seat inventory
+     * @param screening     screening seats are reserved for
+     *
+     */
+    public ScreeningSeatReservationService(ScreeningSeatInventory seatInventory, int screening) {
+        this.seatInventory = seatInventory;
+        this.screening = screening;
+    }
+
+    @Override
+    public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+        if (totalSeatsToAllocate > 0 && !seatInventory.reserve(screening, totalSeatsToAllocate)) {
+            throw new InvalidPurchaseException("Not enough seats available");
+        }
+    }
+
+    @Override
+    public void releaseSeat(long accountId, int totalSeatsToRelease) {
+        if (totalSeatsToRelease > 0 && !seatInventory.release(screening, totalSeatsToRelease)) {
+            throw new IllegalStateException("Fewer seats reserved than released");
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package uk.gov.dwp.uc.pairtest;
+
+/**
+ * Binary frame layout shared by SeatShardServer and RemoteSeatInventory.
+ *
+ * Requests start with a one byte operation. All values are big endian and
+ * each request is answered before the next is read from the connection.
+ *
+ * RESERVE, RELEASE: byte op | int screening | int seats, answered by int 1 if
+ * done or 0 if not
+ *
+ * AVAILABLE: byte op | int screening | int 0, answered by int free seats
+ *
+ * EXPORT: byte op | int count | count x int screening, answered by count x int
+ * reserved seats. The screenings are left unchanged
+ *
+ * IMPORT: byte op | int count | count x (int screening | int reserved seats),
+ * answered by int 1 once every screening holds exactly its reserved seats, or
+ * 0 if a count did not fit. Setting rather than adding makes an import safe
+ * to repeat, and an import of 0 seats clears a screening
+ *
+ */
+public final class SeatShardProtocol {
+    public static final byte RESERVE = 1;
+    public static final byte RELEASE = 2;
+    public static final byte AVAILABLE = 3;
+    public static final byte EXPORT = 4;
+    public static final byte IMPORT = 5;
+
+    private SeatShardProtocol() {
+    }
+}
@@ -0,0 +1,189 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves one shard of a seat inventory to ShardedSeatInventory over local TCP
+ * using SeatShardProtocol.
+ *
+ * Connections are served by a thread each and send one request at a time, so
+ * a client keeps a connection per concurrent caller. Run main to start a
+ * shard as its own process.
+ *
+ */
+public class SeatShardServer {
+    private final ScreeningSeatInventory seatInventory;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     *
+     * @param address       address to bind, port 0 picks a free port
+     * @param seatInventory inventory holding this shard's screenings
+     * @throws IOException if the address cannot be bound
+     *
+     */
+    public SeatShardServer(InetSocketAddress address, ScreeningSeatInventory seatInventory) throws IOException {
+        this.seatInventory = seatInventory;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(address);
+    }
+
+    /**
+     * Start a shard process and serve until standard input closes, so the
+     * shard exits with the process that started it
+     *
+     * Usage: SeatShardServer [port] [screenings] [seatsPerScreening]
+     *
+     * Prints "READY port" once accepting connections
+     *
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        int screenings = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int seatsPerScreening = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+
+        SeatShardServer server = new SeatShardServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                new OffHeapSeatInventory(screenings, seatsPerScreening));
+        server.start();
+        System.out.println("READY " + server.getPort());
+        System.out.flush();
+
+        while (System.in.read() != -1) {
+            // wait for the parent to close standard input
+        }
+        server.stop();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Start accepting connections on a new thread
+     *
+     */
+    public void start() {
+        Thread thread = new Thread(this::acceptConnections, "seat-shard-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop accepting connections and close every open one
+     *
+     */
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+        for (Socket connection : connections) {
+            close(connection);
+        }
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket connection = serverSocket.accept();
+                connection.setTcpNoDelay(true);
+                connections.add(connection);
+                Thread thread = new Thread(() -> serve(connection), "seat-shard-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                // server socket closed by stop
+            }
+        }
+    }
+
+    /**
+     * Answer requests on a connection until it closes
+     *
+     */
+    private void serve(Socket connection) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+                DataOutputStream output = new DataOutputStream(
+                        new BufferedOutputStream(connection.getOutputStream()))) {
+            while (true) {
+                byte operation = input.readByte();
+                switch (operation) {
+                case SeatShardProtocol.RESERVE:
+                    output.writeInt(seatInventory.reserve(input.readInt(), input.readInt()) ? 1 : 0);
+                    break;
+                case SeatShardProtocol.RELEASE:
+                    output.writeInt(seatInventory.release(input.readInt(), input.readInt()) ? 1 : 0);
+                    break;
+                case SeatShardProtocol.AVAILABLE:
+                    int screening = input.readInt();
+                    input.readInt();
+                    output.writeInt(seatInventory.available(screening));
+                    break;
+                case SeatShardProtocol.EXPORT:
+                    exportScreenings(input, output);
+                    break;
+                case SeatShardProtocol.IMPORT:
+                    importScreenings(input, output);
+                    break;
+                default:
+                    throw new IOException("Unknown operation " + operation);
+                }
+                output.flush();
+            }
+        } catch (EOFException e) {
+            // client closed the connection
+        } catch (IOException | RuntimeException e) {
+            // drop the connection, the client sees it close
+        } finally {
+            connections.remove(connection);
+            close(connection);
+        }
+    }
+
+    private void exportScreenings(DataInputStream input, DataOutputStream output) throws IOException {
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            int screening = input.readInt();
+            output.writeInt(seatInventory.getSeatsPerScreening() - seatInventory.available(screening));
+        }
+    }
+
+    private void importScreenings(DataInputStream input, DataOutputStream output) throws IOException {
+        int count = input.readInt();
+        boolean imported = true;
+        for (int i = 0; i < count; i++) {
+            int screening = input.readInt();
+            int reserved = input.readInt();
+            int current;
+            // Retry if a reservation still in flight changes the count
+            do {
+                current = seatInventory.getSeatsPerScreening() - seatInventory.available(screening);
+            } while (current > 0 && !seatInventory.release(screening, current));
+            if (reserved > 0 && !seatInventory.reserve(screening, reserved)) {
+                imported = false;
+            }
+        }
+        output.writeInt(imported ? 1 : 0);
+    }
+
+    private static void close(Socket connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+}
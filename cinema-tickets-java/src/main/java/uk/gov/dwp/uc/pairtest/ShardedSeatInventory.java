@@ -0,0 +1,255 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Seat inventory spread over SeatShardServer processes, each screening owned
+ * by the shard a consistent hash ring routes it to.
+ *
+ * Adding a shard moves the reservations of the screenings the new shard takes
+ * over from their old owners, in batches. Each batch is copied: the counts
+ * are read from the old owner, set on the new shard, and only then cleared on
+ * the old owner. If any step fails the move is rolled back by setting every
+ * batch touched so far back to its counts on its old owner. Imports set
+ * rather than add, so the rollback is correct wherever the failure happened.
+ * Requests are held back while a shard is being added so no request reaches a
+ * screening mid move; requests otherwise only share a read lock. Every shard
+ * request is bounded by the shard timeout, so a hung shard fails a move,
+ * which is rolled back, rather than holding requests back indefinitely.
+ *
+ */
+public class ShardedSeatInventory implements ScreeningSeatInventory, Closeable {
+    static final int MOVE_BATCH = 4096;
+
+    private final int screenings;
+    private final int seatsPerScreening;
+    private final int shardTimeoutMillis;
+    private final ReadWriteLock rebalanceLock = new ReentrantReadWriteLock();
+    private final List<RemoteSeatInventory> shards = new ArrayList<>();
+    private volatile ConsistentHashRing ring = new ConsistentHashRing();
+
+    /**
+     *
+     * @param screenings        number of screenings
+     * @param seatsPerScreening seats in every screening, as configured on every
+     *                          shard
+     *
+     */
+    public ShardedSeatInventory(int screenings, int seatsPerScreening) {
+        this(screenings, seatsPerScreening, RemoteSeatInventory.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     *
+     * @param screenings         number of screenings
+     * @param seatsPerScreening  seats in every screening, as configured on
+     *                           every shard
+     * @param shardTimeoutMillis connect and reply timeout of shard requests
+     *
+     */
+    public ShardedSeatInventory(int screenings, int seatsPerScreening, int shardTimeoutMillis) {
+        this.screenings = screenings;
+        this.seatsPerScreening = seatsPerScreening;
+        this.shardTimeoutMillis = shardTimeoutMillis;
+    }
+
+    /**
+     * Add a shard and move to it the reservations of the screenings it now
+     * owns
+     *
+     * @param address shard server address
+     * @return screenings moved to the new shard
+     *
+     */
+    public int addShard(InetSocketAddress address) {
+        rebalanceLock.writeLock().lock();
+        try {
+            RemoteSeatInventory shard = new RemoteSeatInventory(address, screenings, seatsPerScreening,
+                    shardTimeoutMillis);
+            ConsistentHashRing currentRing = ring;
+            ConsistentHashRing newRing = currentRing.withShard(address.toString());
+            int newShard = shards.size();
+            shards.add(shard);
+
+            int moved = 0;
+            if (newShard > 0) {
+                List<MovedBatch> movedBatches = new ArrayList<>();
+                try {
+                    moved = moveScreenings(currentRing, newRing, newShard, movedBatches);
+                } catch (RuntimeException e) {
+                    // Screenings keep their old owners, which get their
+                    // reservations back
+                    rollBack(movedBatches, newShard, e);
+                    shards.remove(newShard);
+                    shard.close();
+                    throw e;
+                }
+            }
+            ring = newRing;
+            return moved;
+        } finally {
+            rebalanceLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean reserve(int screening, int seats) {
+        rebalanceLock.readLock().lock();
+        try {
+            return shardOf(screening).reserve(screening, seats);
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean release(int screening, int seats) {
+        rebalanceLock.readLock().lock();
+        try {
+            return shardOf(screening).release(screening, seats);
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int available(int screening) {
+        rebalanceLock.readLock().lock();
+        try {
+            return shardOf(screening).available(screening);
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getScreenings() {
+        return screenings;
+    }
+
+    @Override
+    public int getSeatsPerScreening() {
+        return seatsPerScreening;
+    }
+
+    public int getShards() {
+        return ring.getShards();
+    }
+
+    @Override
+    public void close() {
+        rebalanceLock.writeLock().lock();
+        try {
+            for (RemoteSeatInventory shard : shards) {
+                shard.close();
+            }
+        } finally {
+            rebalanceLock.writeLock().unlock();
+        }
+    }
+
+    private ScreeningSeatInventory shardOf(int screening) {
+        if (screening < 0 || screening >= screenings) {
+            throw new IllegalArgumentException("Unknown screening " + screening);
+        }
+        return shards.get(ring.ownerOf(screening));
+    }
+
+    /**
+     * Move every screening the new ring gives the new shard from its old
+     * owner, one batch per old owner at a time
+     *
+     * @param movedBatches receives each batch before it is moved, for rollback
+     *
+     */
+    private int moveScreenings(ConsistentHashRing currentRing, ConsistentHashRing newRing, int newShard,
+            List<MovedBatch> movedBatches) {
+        int[][] batches = new int[newShard][MOVE_BATCH];
+        int[] batchSizes = new int[newShard];
+        int moved = 0;
+
+        for (int screening = 0; screening < screenings; screening++) {
+            if (newRing.ownerOf(screening) != newShard) {
+                continue;
+            }
+            int owner = currentRing.ownerOf(screening);
+            batches[owner][batchSizes[owner]++] = screening;
+            moved++;
+            if (batchSizes[owner] == MOVE_BATCH) {
+                moveBatch(owner, newShard, batches[owner], MOVE_BATCH, movedBatches);
+                batchSizes[owner] = 0;
+            }
+        }
+        for (int owner = 0; owner < newShard; owner++) {
+            if (batchSizes[owner] > 0) {
+                moveBatch(owner, newShard, batches[owner], batchSizes[owner], movedBatches);
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Copy a batch's reservations to the new shard, then clear them on the
+     * old owner
+     *
+     */
+    private void moveBatch(int owner, int newShard, int[] batch, int count, List<MovedBatch> movedBatches) {
+        int[] screeningNumbers = Arrays.copyOf(batch, count);
+        int[] reserved = new int[count];
+        shards.get(owner).exportScreenings(screeningNumbers, count, reserved);
+        movedBatches.add(new MovedBatch(owner, screeningNumbers, reserved));
+
+        if (!shards.get(newShard).importScreenings(screeningNumbers, count, reserved)) {
+            throw new IllegalStateException("New shard could not hold the reservations of moved screenings");
+        }
+        if (!shards.get(owner).importScreenings(screeningNumbers, count, new int[count])) {
+            throw new IllegalStateException("Old shard could not clear moved screenings");
+        }
+    }
+
+    /**
+     * Put the reservations of every batch touched by a failed move back on its
+     * old owner, and clear them on the new shard as far as it can be reached.
+     * A failure to restore an old owner is added to the move failure, the
+     * inventory then needs repair.
+     *
+     */
+    private void rollBack(List<MovedBatch> movedBatches, int newShard, RuntimeException failure) {
+        for (MovedBatch movedBatch : movedBatches) {
+            int count = movedBatch.screeningNumbers.length;
+            try {
+                shards.get(movedBatch.owner).importScreenings(movedBatch.screeningNumbers, count,
+                        movedBatch.reserved);
+            } catch (RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+            try {
+                shards.get(newShard).importScreenings(movedBatch.screeningNumbers, count, new int[count]);
+            } catch (RuntimeException e) {
+                // the new shard is dropped, and cleared by a later import
+            }
+        }
+    }
+
+    /**
+     * Screenings of one batch and the reservations read from their old owner
+     *
+     */
+    private static final class MovedBatch {
+        private final int owner;
+        private final int[] screeningNumbers;
+        private final int[] reserved;
+
+        private MovedBatch(int owner, int[] screeningNumbers, int[] reserved) {
+            this.owner = owner;
+            this.screeningNumbers = screeningNumbers;
+            this.reserved = reserved;
+        }
+    }
+}
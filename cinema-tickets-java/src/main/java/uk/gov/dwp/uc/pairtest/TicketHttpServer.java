@@ -0,0 +1,191 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import uk.gov.dwp.uc.pairtest.domain.PurchaseOrder;
+import uk.gov.dwp.uc.pairtest.domain.TicketPurchaseReceipt;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Embedded HTTP front end for TicketService.
+ * 
+ * POST /purchases with a JSON purchase payload (see PurchaseRequestParser)
+ * responds 200 {"status":"ACCEPTED","ticketIds":["..."]} when the purchase
+ * succeeds and 400 {"status":"REJECTED","reason":"..."} when it is invalid.
+ * Any other failure, as of the payment or the seat reservation, responds 500
+ * {"status":"FAILED","reason":"Purchase failed"} without the failure's detail.
+ * Ticket ids are sent as strings, they do not fit in a JSON number safely.
+ * 
+ * GET /ready responds 200 {"status":"READY"} once the server is ready, as
+ * once PurchasePathWarmup has finished, and 503 {"status":"STARTING"} before,
+ * for load balancers to hold traffic back from a cold purchase path.
+ * 
+ * Run with -Dsun.net.httpserver.nodelay=true, otherwise the small responses
+ * are held back by Nagle's algorithm and latency rises to tens of
+ * milliseconds.
+ * 
+ */
+public class TicketHttpServer {
+    static final String PURCHASES_PATH = "/purchases";
+    static final String READY_PATH = "/ready";
+    private static final int MAX_REQUEST_BYTES = 1024;
+    private static final byte[] FAILED = "{\"status\":\"FAILED\",\"reason\":\"Purchase failed\"}"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] READY = "{\"status\":\"READY\"}".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STARTING = "{\"status\":\"STARTING\"}".getBytes(StandardCharsets.US_ASCII);
+
+    private final HttpServer httpServer;
+    private final TicketService ticketService;
+    private final BooleanSupplier readiness;
+
+    /**
+     * 
+     * @param address       address to bind, port 0 picks a free port
+     * @param ticketService ticket service purchases are dispatched to
+     * @param executor      executor requests are handled on
+     * @throws IOException if the address cannot be bound
+     * 
+     */
+    public TicketHttpServer(InetSocketAddress address, TicketService ticketService, Executor executor)
+            throws IOException {
+        this(address, ticketService, executor, () -> true);
+    }
+
+    /**
+     * 
+     * @param address       address to bind, port 0 picks a free port
+     * @param ticketService ticket service purchases are dispatched to
+     * @param executor      executor requests are handled on
+     * @param readiness     whether the server is ready, as warmup::isReady
+     * @throws IOException if the address cannot be bound
+     * 
+     */
+    public TicketHttpServer(InetSocketAddress address, TicketService ticketService, Executor executor,
+            BooleanSupplier readiness) throws IOException {
+        this.ticketService = ticketService;
+        this.readiness = readiness;
+        this.httpServer = HttpServer.create(address, 0);
+        this.httpServer.createContext(PURCHASES_PATH, this::handlePurchase);
+        this.httpServer.createContext(READY_PATH, this::handleReady);
+        this.httpServer.setExecutor(executor);
+    }
+
+    public void start() {
+        httpServer.start();
+    }
+
+    /**
+     * Stop accepting requests, waiting up to delaySeconds for requests in
+     * progress to complete
+     * 
+     * @param delaySeconds maximum seconds to wait
+     * 
+     */
+    public void stop(int delaySeconds) {
+        httpServer.stop(delaySeconds);
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Handle a purchase request
+     * 
+     * @param exchange http exchange
+     * 
+     */
+    private void handlePurchase(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body = new byte[MAX_REQUEST_BYTES];
+            int length = readBody(exchange.getRequestBody(), body);
+            if (length < 0) {
+                exchange.sendResponseHeaders(413, -1);
+                return;
+            }
+
+            try {
+                PurchaseOrder order = PurchaseRequestParser.parse(body, length);
+                TicketPurchaseReceipt receipt = ticketService.purchaseTickets(order.getAccountId(),
+                        order.getTicketTypeRequests());
+                respond(exchange, 200, accepted(receipt));
+            } catch (InvalidPurchaseException e) {
+                respond(exchange, 400, rejected(e.getMessage()));
+            } catch (RuntimeException e) {
+                respond(exchange, 500, FAILED);
+            }
+        }
+    }
+
+    /**
+     * Handle a readiness probe
+     * 
+     * @param exchange http exchange
+     * 
+     */
+    private void handleReady(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (readiness.getAsBoolean()) {
+                respond(exchange, 200, READY);
+            } else {
+                respond(exchange, 503, STARTING);
+            }
+        }
+    }
+
+    /**
+     * Read the request body into buffer
+     * 
+     * @return number of bytes read, -1 if the body does not fit in buffer
+     * 
+     */
+    private int readBody(InputStream requestBody, byte[] buffer) throws IOException {
+        int length = requestBody.readNBytes(buffer, 0, buffer.length);
+        if (length == buffer.length && requestBody.read() != -1) {
+            return -1;
+        }
+        return length;
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private byte[] accepted(TicketPurchaseReceipt receipt) {
+        StringBuilder body = new StringBuilder("{\"status\":\"ACCEPTED\",\"ticketIds\":[");
+        long[] ticketIds = receipt.getTicketIds();
+        for (int i = 0; i < ticketIds.length; i++) {
+            body.append(i == 0 ? "" : ",").append('"').append(ticketIds[i]).append('"');
+        }
+        return body.append("]}").toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private byte[] rejected(String reason) {
+        String escaped = String.valueOf(reason).replace("\\", "\\\\").replace("\"", "\\\"");
+        return ("{\"status\":\"REJECTED\",\"reason\":\"" + escaped + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+}
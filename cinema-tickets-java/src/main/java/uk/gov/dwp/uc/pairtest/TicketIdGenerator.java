@@ -0,0 +1,80 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free generator of unique, time ordered 64 bit ticket ids.
+ * 
+ * Ids are laid out Snowflake style: 41 bits of milliseconds since 2024-01-01,
+ * 10 bits of node id and 12 bits of sequence within the millisecond. The
+ * millisecond and sequence are kept together in one AtomicLong, and a whole
+ * order's ids are reserved with a single compare and set, so a 20 ticket order
+ * costs the same as a 1 ticket order and threads never wait on each other. A
+ * burst of more than 4096 ids in a millisecond borrows from the following
+ * milliseconds rather than waiting for the clock.
+ * 
+ * Generators with the same node id issue colliding ids, so a node creates one
+ * generator and shares it between every service issuing tickets. Services not
+ * given one share the process default, node 0.
+ * 
+ */
+public class TicketIdGenerator {
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long EPOCH_MILLIS = 1704067200000L;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final TicketIdGenerator PROCESS_DEFAULT = new TicketIdGenerator(0);
+
+    private final long node;
+    private final AtomicLong lastReserved = new AtomicLong();
+
+    /**
+     * 
+     * @param nodeId id of this node, unique among nodes issuing tickets, 0 to
+     *               1023
+     * 
+     */
+    public TicketIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId >= 1 << NODE_BITS) {
+            throw new IllegalArgumentException("Node id should be between 0 and " + ((1 << NODE_BITS) - 1));
+        }
+        this.node = (long) nodeId << SEQUENCE_BITS;
+    }
+
+    /**
+     * Get the generator shared by services in this process that were not given
+     * one
+     * 
+     * @return node 0 generator
+     * 
+     */
+    public static TicketIdGenerator processDefault() {
+        return PROCESS_DEFAULT;
+    }
+
+    /**
+     * Reserve ids for an order
+     * 
+     * @param count number of ids
+     * @return ids in increasing order
+     * 
+     */
+    public long[] nextIds(int count) {
+        long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long first;
+        while (true) {
+            long last = lastReserved.get();
+            first = Math.max(last, now);
+            if (lastReserved.compareAndSet(last, first + count)) {
+                break;
+            }
+        }
+
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            long reserved = first + i;
+            ids[i] = (reserved >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS) | node | (reserved & SEQUENCE_MASK);
+        }
+        return ids;
+    }
+}
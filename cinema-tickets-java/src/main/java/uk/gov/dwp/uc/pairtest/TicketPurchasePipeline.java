@@ -0,0 +1,138 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import uk.gov.dwp.uc.pairtest.domain.PurchaseOrder;
+
+/**
+ * Streaming alternative to TicketService.purchaseTickets for partner channels.
+ * 
+ * Orders flow through three independent stages: validation, seat reservation
+ * and payment. Each stage has its own worker pool and buffer so it can be
+ * scaled on its own, with backpressure applied between stages. Orders that
+ * complete every stage are published to subscribers of the pipeline, rejected
+ * orders are passed to the rejection handler with the exception raised, seats
+ * of orders whose payment fails are released first. Orders are priced in
+ * their own pricing context with the active promotions.
+ * 
+ * If the pipeline is stopped by an upstream error, reserved orders that can no
+ * longer reach the payment stage have their seats released and are rejected.
+ * Paid orders that can no longer be published are complete, and are only
+ * counted in getUnpublishedOrders.
+ * 
+ * Subscribe to the pipeline before connecting it to an order publisher, orders
+ * completed while there are no subscribers are not retained.
+ * 
+ */
+public class TicketPurchasePipeline implements Flow.Processor<PurchaseOrder, PurchaseOrder> {
+
+    private final PurchaseStage validationStage;
+    private final PurchaseStage reservationStage;
+    private final PurchaseStage paymentStage;
+    private final LongAdder unpublishedOrders = new LongAdder();
+
+    /**
+     * 
+     * @param validationService       validation service
+     * @param ticketPurchaseService   ticket purchase service
+     * @param validationParallelism   concurrent orders in the validation stage
+     * @param reservationParallelism  concurrent orders in the reservation stage
+     * @param paymentParallelism      concurrent orders in the payment stage
+     * @param bufferCapacity          orders buffered between stages
+     * @param rejectionHandler        called with rejected orders
+     * 
+     */
+    public TicketPurchasePipeline(ValidationService validationService, TicketPurchaseService ticketPurchaseService,
+            int validationParallelism, int reservationParallelism, int paymentParallelism, int bufferCapacity,
+            BiConsumer<PurchaseOrder, RuntimeException> rejectionHandler) {
+
+        validationStage = new PurchaseStage(order -> {
+            validationService.validate(order.getAccountId());
+            validationService.validate(order.getTicketTypeRequests());
+        }, validationParallelism, bufferCapacity, rejectionHandler);
+
+        reservationStage = new PurchaseStage(order -> {
+            ticketPurchaseService.reserveSeats(order.getAccountId(), order.getTicketTypeRequests());
+        }, reservationParallelism, bufferCapacity, rejectionHandler, (order, e) -> {
+            try {
+                ticketPurchaseService.releaseSeats(order.getAccountId(), order.getTicketTypeRequests());
+            } catch (RuntimeException releaseFailure) {
+                e.addSuppressed(releaseFailure);
+            }
+            rejectionHandler.accept(order, e);
+        });
+
+        paymentStage = new PurchaseStage(order -> {
+            // Priced once, listeners are told what was paid
+            int totalCost;
+            try {
+                totalCost = ticketPurchaseService.makePayment(order.getAccountId(), order.getPricingContext(),
+                        order.getTicketTypeRequests());
+            } catch (RuntimeException e) {
+                try {
+                    ticketPurchaseService.releaseSeats(order.getAccountId(), order.getTicketTypeRequests());
+                } catch (RuntimeException releaseFailure) {
+                    e.addSuppressed(releaseFailure);
+                }
+                throw e;
+            }
+            ticketPurchaseService.purchaseCompleted(order.getAccountId(), totalCost, order.getTicketTypeRequests());
+        }, paymentParallelism, bufferCapacity, rejectionHandler, (order, e) -> unpublishedOrders.increment());
+
+        validationStage.subscribe(reservationStage);
+        reservationStage.subscribe(paymentStage);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        validationStage.onSubscribe(subscription);
+    }
+
+    @Override
+    public void onNext(PurchaseOrder order) {
+        validationStage.onNext(order);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        validationStage.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        validationStage.onComplete();
+    }
+
+    /**
+     * Stop taking orders, let the orders already taken finish every stage,
+     * then complete subscribers
+     * 
+     */
+    public void cancel() {
+        validationStage.cancel();
+    }
+
+    /**
+     * Get the number of orders that completed every stage but could not be
+     * published to subscribers
+     * 
+     * @return unpublished orders
+     * 
+     */
+    public long getUnpublishedOrders() {
+        return unpublishedOrders.sum();
+    }
+
+    /**
+     * Subscribe to orders that completed every stage
+     * 
+     * @param subscriber completed orders subscriber
+     * 
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super PurchaseOrder> subscriber) {
+        paymentStage.subscribe(subscriber);
+    }
+}
@@ -1,49 +1,501 @@
 package uk.gov.dwp.uc.pairtest;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
 import thirdparty.paymentgateway.TicketPaymentService;
 import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.domain.PricingContext;
+import uk.gov.dwp.uc.pairtest.domain.TicketPurchaseReceipt;
 import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
 
 public class TicketPurchaseService {
+    private static final TicketTypeRequestUtilities ticketTypeRequestUtilities = new TicketTypeRequestUtilities();
+    // Screenings are numbered from 0
+    static final int NO_SCREENING = -1;
+
     private final TicketPaymentService ticketPaymentService;
     private final SeatReservationService seatReservationService;
+    private final Executor concurrentExecutor;
+    private final PurchaseOutbox outbox;
+    private final TicketIdGenerator ticketIdGenerator;
+    private final List<PurchaseListener> purchaseListeners = new CopyOnWriteArrayList<>();
+    private final LongAdder failedCompensations = new LongAdder();
+    private final LongAdder listenerFailures = new LongAdder();
+    private volatile PromotionEngine promotionEngine;
 
     public TicketPurchaseService(TicketPaymentService ticketPaymentService,
             SeatReservationService seatReservationService) {
+        this(ticketPaymentService, seatReservationService, null);
+    }
+
+    /**
+     * 
+     * @param ticketPaymentService   ticket payment service
+     * @param seatReservationService seat reservation service
+     * @param concurrentExecutor     executor seat reservations run on while the
+     *                               payment is taken, null to reserve and pay
+     *                               one after the other
+     * 
+     */
+    public TicketPurchaseService(TicketPaymentService ticketPaymentService,
+            SeatReservationService seatReservationService, Executor concurrentExecutor) {
+        this(ticketPaymentService, seatReservationService, concurrentExecutor, null);
+    }
+
+    /**
+     * 
+     * @param ticketPaymentService   ticket payment service
+     * @param seatReservationService seat reservation service
+     * @param concurrentExecutor     executor seat reservations run on while the
+     *                               payment is taken, null to reserve and pay
+     *                               one after the other
+     * @param outbox                 outbox compensations are recorded in and
+     *                               replayed from, null to compensate on the
+     *                               calling thread
+     * 
+     */
+    public TicketPurchaseService(TicketPaymentService ticketPaymentService,
+            SeatReservationService seatReservationService, Executor concurrentExecutor, PurchaseOutbox outbox) {
+        this(ticketPaymentService, seatReservationService, concurrentExecutor, outbox,
+                TicketIdGenerator.processDefault());
+    }
+
+    /**
+     * 
+     * @param ticketPaymentService   ticket payment service
+     * @param seatReservationService seat reservation service
+     * @param concurrentExecutor     executor seat reservations run on while the
+     *                               payment is taken, null to reserve and pay
+     *                               one after the other
+     * @param outbox                 outbox compensations are recorded in and
+     *                               replayed from, null to compensate on the
+     *                               calling thread
+     * @param ticketIdGenerator      generator of the ticket ids on receipts,
+     *                               shared by every service of this node.
+     *                               Other constructors use the process
+     *                               default
+     * 
+     */
+    public TicketPurchaseService(TicketPaymentService ticketPaymentService,
+            SeatReservationService seatReservationService, Executor concurrentExecutor, PurchaseOutbox outbox,
+            TicketIdGenerator ticketIdGenerator) {
         this.ticketPaymentService = ticketPaymentService;
         this.seatReservationService = seatReservationService;
+        this.concurrentExecutor = concurrentExecutor;
+        this.outbox = outbox;
+        this.ticketIdGenerator = ticketIdGenerator;
     }
 
     /**
      * 
      * Purchase tickets for a given accountId and ticketType
      * 
+     * If the seat reservation or the payment fails the other is compensated,
+     * reserved seats are released and taken payments refunded, before the
+     * failure is rethrown. With an outbox the compensation is recorded for
+     * replay instead of being run on the calling thread
+     * 
      * @param accountId account Id
      * @param ticketTypeRequests ticket type request array
+     * @return receipt with one ticket id per ticket
      * 
      */
-    public void purchase(Long accountId, TicketTypeRequest... ticketTypeRequests) {
-        int totalCost = getTotalCost(ticketTypeRequests);
+    public TicketPurchaseReceipt purchase(Long accountId, TicketTypeRequest... ticketTypeRequests) {
+        return purchase(accountId, PricingContext.STANDARD, ticketTypeRequests);
+    }
+
+    /**
+     * 
+     * Purchase tickets for a given accountId and ticketType, at the best price
+     * the active promotions give in a pricing context
+     * 
+     * @param accountId account Id
+     * @param pricingContext pricing context
+     * @param ticketTypeRequests ticket type request array
+     * @return receipt with one ticket id per ticket
+     * 
+     */
+    public TicketPurchaseReceipt purchase(Long accountId, PricingContext pricingContext,
+            TicketTypeRequest... ticketTypeRequests) {
+        int totalCost = getTotalCost(pricingContext, ticketTypeRequests);
         int totalSeats = getTotalSeatsRequired(ticketTypeRequests);
 
-        seatReservationService.reserveSeat(accountId, totalSeats);
+        if (concurrentExecutor == null) {
+            seatReservationService.reserveSeat(accountId, totalSeats);
+            try {
+                ticketPaymentService.makePayment(accountId, totalCost);
+            } catch (RuntimeException e) {
+                compensate(e, PurchaseOutbox.Compensation.RELEASE_SEATS, accountId, totalSeats);
+                throw e;
+            }
+        } else {
+            purchaseConcurrently(accountId, totalCost, totalSeats);
+        }
+
+        if (!purchaseListeners.isEmpty()) {
+            notifyPurchaseCompleted(NO_SCREENING, accountId, totalSeats, totalCost, ticketTypeRequests);
+        }
+        return new TicketPurchaseReceipt(accountId,
+                ticketIdGenerator.nextIds(getTotalTickets(ticketTypeRequests)), totalSeats, totalCost);
+    }
+
+    /**
+     * Price purchases with a compiled set of promotions, replacing any set
+     * before. Purchases in flight finish at the price they started with
+     * 
+     * @param promotionEngine promotion engine, null for list prices
+     * 
+     */
+    public void setPromotionEngine(PromotionEngine promotionEngine) {
+        this.promotionEngine = promotionEngine;
+    }
+
+    /**
+     * Register a listener notified of every completed purchase. Exceptions
+     * thrown by the listener are counted in getListenerFailures and never fail
+     * the purchase
+     * 
+     * @param purchaseListener purchase listener
+     * 
+     */
+    public void addPurchaseListener(PurchaseListener purchaseListener) {
+        purchaseListeners.add(purchaseListener);
+    }
+
+    /**
+     * Notify purchase listeners of a purchase completed outside purchase, as by
+     * the stages of the purchase pipeline, at the cost it was paid for
+     * 
+     * @param accountId account Id
+     * @param totalCost amount paid
+     * @param ticketTypeRequests ticket type request array
+     * 
+     */
+    void purchaseCompleted(Long accountId, int totalCost, TicketTypeRequest... ticketTypeRequests) {
+        purchaseCompleted(NO_SCREENING, accountId, totalCost, ticketTypeRequests);
+    }
+
+    /**
+     * Notify purchase listeners of a purchase of one screening completed
+     * outside purchase, as by a basket, at the cost it was paid for
+     * 
+     * @param screening screening number, NO_SCREENING if not known
+     * @param accountId account Id
+     * @param totalCost amount paid
+     * @param ticketTypeRequests ticket type request array
+     * 
+     */
+    void purchaseCompleted(int screening, Long accountId, int totalCost, TicketTypeRequest... ticketTypeRequests) {
+        if (!purchaseListeners.isEmpty()) {
+            notifyPurchaseCompleted(screening, accountId, getTotalSeatsRequired(ticketTypeRequests), totalCost,
+                    ticketTypeRequests);
+        }
+    }
+
+    /**
+     * Take a payment already priced, as for a basket of screenings
+     * 
+     * @param accountId account Id
+     * @param totalCost amount to pay
+     * 
+     */
+    void takePayment(long accountId, int totalCost) {
         ticketPaymentService.makePayment(accountId, totalCost);
     }
 
     /**
-     * Get total cost of ticket requests
+     * Get ticket ids for a receipt
+     * 
+     * @param tickets number of tickets
+     * @return one ticket id per ticket
      * 
+     */
+    long[] nextTicketIds(int tickets) {
+        return ticketIdGenerator.nextIds(tickets);
+    }
+
+    /**
+     * Notify purchase listeners of a completed purchase. A listener that
+     * throws is counted and skipped, the other listeners are still notified
+     * 
+     */
+    private void notifyPurchaseCompleted(int screening, long accountId, int totalSeats, int totalCost,
+            TicketTypeRequest... ticketTypeRequests) {
+        int adultTickets = ticketTypeRequestUtilities.getTicketsCount(TicketTypeRequest.Type.ADULT,
+                ticketTypeRequests);
+        int childTickets = ticketTypeRequestUtilities.getTicketsCount(TicketTypeRequest.Type.CHILD,
+                ticketTypeRequests);
+        int infantTickets = ticketTypeRequestUtilities.getTicketsCount(TicketTypeRequest.Type.INFANT,
+                ticketTypeRequests);
+
+        for (PurchaseListener purchaseListener : purchaseListeners) {
+            try {
+                if (screening == NO_SCREENING) {
+                    purchaseListener.purchaseCompleted(accountId, adultTickets, childTickets, infantTickets,
+                            totalSeats, totalCost);
+                } else {
+                    purchaseListener.screeningPurchaseCompleted(screening, accountId, adultTickets, childTickets,
+                            infantTickets, totalSeats, totalCost);
+                }
+            } catch (RuntimeException e) {
+                // the purchase is paid for and reserved, it must not fail now
+                listenerFailures.increment();
+            }
+        }
+    }
+
+    /**
+     * Get the number of times a purchase listener threw, each time for a
+     * purchase that still completed
+     * 
+     * @return purchase listener failures
+     * 
+     */
+    public long getListenerFailures() {
+        return listenerFailures.sum();
+    }
+
+    /**
+     * Reserve seats on the concurrent executor while taking the payment on the
+     * calling thread
+     * 
+     * @param accountId  account Id
+     * @param totalCost  total cost of tickets
+     * @param totalSeats total seats required
+     * 
+     */
+    private void purchaseConcurrently(Long accountId, int totalCost, int totalSeats) {
+        CompletableFuture<Void> reservation = CompletableFuture
+                .runAsync(() -> seatReservationService.reserveSeat(accountId, totalSeats), concurrentExecutor);
+
+        RuntimeException paymentFailure = null;
+        try {
+            ticketPaymentService.makePayment(accountId, totalCost);
+        } catch (RuntimeException e) {
+            paymentFailure = e;
+        }
+
+        RuntimeException reservationFailure = null;
+        try {
+            reservation.join();
+        } catch (CompletionException e) {
+            reservationFailure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+
+        if (reservationFailure != null && paymentFailure != null) {
+            reservationFailure.addSuppressed(paymentFailure);
+            throw reservationFailure;
+        }
+        if (reservationFailure != null) {
+            compensate(reservationFailure, PurchaseOutbox.Compensation.REFUND_PAYMENT, accountId, totalCost);
+            throw reservationFailure;
+        }
+        if (paymentFailure != null) {
+            compensate(paymentFailure, PurchaseOutbox.Compensation.RELEASE_SEATS, accountId, totalSeats);
+            throw paymentFailure;
+        }
+    }
+
+    /**
+     * Compensate a failed purchase, recording a failure of the compensation
+     * against the original failure rather than hiding it
+     * 
+     * @param failure      failure being compensated
+     * @param compensation compensation type
+     * @param accountId    account Id
+     * @param quantity     seats or amount to compensate
+     * 
+     */
+    private void compensate(RuntimeException failure, PurchaseOutbox.Compensation compensation, long accountId,
+            int quantity) {
+        try {
+            compensate(compensation, accountId, quantity);
+        } catch (RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Record a compensation in the outbox, or run it directly without one
+     * 
+     * @param compensation compensation type
+     * @param accountId    account Id
+     * @param quantity     seats or amount to compensate
+     * 
+     */
+    private void compensate(PurchaseOutbox.Compensation compensation, long accountId, int quantity) {
+        compensate(compensation, accountId, quantity, () -> compensateDirectly(compensation, accountId, quantity));
+    }
+
+    /**
+     * Release the seats a basket reserved for a screening, once the basket has
+     * failed, through the outbox like the compensations of purchase. A release
+     * that fails is recorded against the basket's failure
+     * 
+     * @param failure       failure of the basket
+     * @param seatInventory seat inventory the seats were reserved from
+     * @param screening     screening number
+     * @param seats         seats to release
+     * 
+     */
+    void releaseScreeningSeats(RuntimeException failure, ScreeningSeatInventory seatInventory, int screening,
+            int seats) {
+        try {
+            compensate(PurchaseOutbox.Compensation.RELEASE_SCREENING_SEATS, screening, seats, () -> {
+                if (!seatInventory.release(screening, seats)) {
+                    throw new IllegalStateException("Seats of screening " + screening + " could not be released");
+                }
+            });
+        } catch (RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Record a compensation in the outbox, or run it directly without one.
+     * If the outbox cannot record it, because it is closed or the write
+     * fails, the compensation is run directly instead. Where that happens
+     * after the purchase has returned a failure of the direct compensation is
+     * counted in getFailedCompensations, having nowhere else to go
+     * 
+     * @param compensation compensation type
+     * @param key          account Id, or screening for RELEASE_SCREENING_SEATS
+     * @param quantity     seats or amount to compensate
+     * @param directly     runs the compensation without the outbox
+     * 
+     */
+    private void compensate(PurchaseOutbox.Compensation compensation, long key, int quantity, Runnable directly) {
+        if (outbox == null) {
+            directly.run();
+            return;
+        }
+
+        CompletableFuture<Void> durable = outbox.append(compensation, key, quantity);
+        if (durable.isCompletedExceptionally()) {
+            directly.run();
+            return;
+        }
+        durable.whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                try {
+                    directly.run();
+                } catch (RuntimeException e) {
+                    failedCompensations.increment();
+                }
+            }
+        });
+    }
+
+    private void compensateDirectly(PurchaseOutbox.Compensation compensation, long accountId, int quantity) {
+        if (compensation == PurchaseOutbox.Compensation.RELEASE_SEATS) {
+            seatReservationService.releaseSeat(accountId, quantity);
+        } else {
+            ticketPaymentService.refundPayment(accountId, quantity);
+        }
+    }
+
+    /**
+     * Get the number of compensations lost because neither the outbox nor a
+     * direct compensation succeeded, once the purchase had already failed
+     * 
+     * @return failed compensations
+     * 
+     */
+    public long getFailedCompensations() {
+        return failedCompensations.sum();
+    }
+
+    /**
+     * Reserve seats for a given accountId and ticketType, infants excluded
+     * 
+     * @param accountId account Id
+     * @param ticketTypeRequests ticket type request array
+     * 
+     */
+    public void reserveSeats(Long accountId, TicketTypeRequest... ticketTypeRequests) {
+        seatReservationService.reserveSeat(accountId, getTotalSeatsRequired(ticketTypeRequests));
+    }
+
+    /**
+     * Take payment for a given accountId and ticketType
+     * 
+     * @param accountId account Id
+     * @param ticketTypeRequests ticket type request array
+     * @return amount paid
+     * 
+     */
+    public int makePayment(Long accountId, TicketTypeRequest... ticketTypeRequests) {
+        return makePayment(accountId, PricingContext.STANDARD, ticketTypeRequests);
+    }
+
+    /**
+     * Take payment for a given accountId and ticketType, at the best price the
+     * active promotions give in a pricing context. Report the amount returned
+     * to purchaseCompleted rather than pricing the order again, the promotion
+     * engine may have been replaced in between
+     * 
+     * @param accountId account Id
+     * @param pricingContext pricing context
+     * @param ticketTypeRequests ticket type request array
+     * @return amount paid
+     * 
+     */
+    public int makePayment(Long accountId, PricingContext pricingContext, TicketTypeRequest... ticketTypeRequests) {
+        int totalCost = getTotalCost(pricingContext, ticketTypeRequests);
+        ticketPaymentService.makePayment(accountId, totalCost);
+        return totalCost;
+    }
+
+    /**
+     * Release seats previously reserved for a given accountId and ticketType,
+     * through the outbox if there is one
+     * 
+     * @param accountId account Id
+     * @param ticketTypeRequests ticket type request array
+     * 
+     */
+    public void releaseSeats(Long accountId, TicketTypeRequest... ticketTypeRequests) {
+        compensate(PurchaseOutbox.Compensation.RELEASE_SEATS, accountId, getTotalSeatsRequired(ticketTypeRequests));
+    }
+
+    /**
+     * Get total cost of ticket requests, the best promoted price if there is a
+     * promotion engine
+     * 
+     * @param pricingContext pricing context
      * @param ticketTypeRequests ticket type request array
      * @return total cost of tickets
      * 
      */
-    private int getTotalCost(TicketTypeRequest... ticketTypeRequests) {
-        int totalCost = 0;
+    int getTotalCost(PricingContext pricingContext, TicketTypeRequest... ticketTypeRequests) {
+        PromotionEngine currentPromotionEngine = promotionEngine;
+        if (currentPromotionEngine == null) {
+            int totalCost = 0;
+
+            for (TicketTypeRequest ticketTypeRequest : ticketTypeRequests) {
+                totalCost += ticketTypeRequest.getTotalPrice();
+            }
+            return totalCost;
+        }
 
+        int adultTickets = 0;
+        int childTickets = 0;
+        int infantTickets = 0;
         for (TicketTypeRequest ticketTypeRequest : ticketTypeRequests) {
-            totalCost += ticketTypeRequest.getTotalPrice();
+            if (ticketTypeRequest.getTicketType() == TicketTypeRequest.Type.ADULT) {
+                adultTickets += ticketTypeRequest.getNoOfTickets();
+            } else if (ticketTypeRequest.getTicketType() == TicketTypeRequest.Type.CHILD) {
+                childTickets += ticketTypeRequest.getNoOfTickets();
+            } else {
+                infantTickets += ticketTypeRequest.getNoOfTickets();
+            }
         }
-        return totalCost;
+        return currentPromotionEngine.price(pricingContext, adultTickets, childTickets, infantTickets);
     }
 
     /**
@@ -64,4 +516,20 @@ public class TicketPurchaseService {
         }
         return totalSeats;
     }
+
+    /**
+     * Get total tickets of ticket requests, infants included
+     * 
+     * @param ticketTypeRequests ticket type request
+     * @return total tickets
+     * 
+     */
+    private int getTotalTickets(TicketTypeRequest... ticketTypeRequests) {
+        int totalTickets = 0;
+
+        for (TicketTypeRequest ticketTypeRequest : ticketTypeRequests) {
+            totalTickets += ticketTypeRequest.getNoOfTickets();
+        }
+        return totalTickets;
+    }
 }
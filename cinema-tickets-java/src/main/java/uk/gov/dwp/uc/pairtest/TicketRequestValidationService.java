@@ -11,12 +11,13 @@ import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
  * 
  */
 public class TicketRequestValidationService {
+    static final int DEFAULT_MAX_ALLOWED_TICKETS = 20;
     private final int MAX_ALLOWED_TICKETS;
     private final List<TicketTypeRequest.Type> ticketTypes = Arrays
             .asList(TicketTypeRequest.Type.class.getEnumConstants());
 
     TicketRequestValidationService() {
-        this.MAX_ALLOWED_TICKETS = 20;
+        this.MAX_ALLOWED_TICKETS = DEFAULT_MAX_ALLOWED_TICKETS;
     }
 
     TicketRequestValidationService(int maxAllowedTickets) {
@@ -1,5 +1,6 @@
 package uk.gov.dwp.uc.pairtest;
 
+import uk.gov.dwp.uc.pairtest.domain.TicketPurchaseReceipt;
 import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
 import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
 
@@ -17,11 +18,11 @@ public class TicketServiceImpl implements TicketService {
     }
 
     @Override
-    public void purchaseTickets(Long accountId, TicketTypeRequest... ticketTypeRequests)
+    public TicketPurchaseReceipt purchaseTickets(Long accountId, TicketTypeRequest... ticketTypeRequests)
             throws InvalidPurchaseException {
 
         validationService.validate(accountId);
         validationService.validate(ticketTypeRequests);
-        ticketPurchaseService.purchase(accountId, ticketTypeRequests);
+        return ticketPurchaseService.purchase(accountId, ticketTypeRequests);
     }
 }
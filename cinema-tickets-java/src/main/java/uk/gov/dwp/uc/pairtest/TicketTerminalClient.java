@@ -0,0 +1,110 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client for TicketTerminalServer. Requests are pipelined over a single
+ * connection and each returned future completes with the result code of its
+ * response, regardless of the order responses arrive in.
+ * 
+ */
+public class TicketTerminalClient implements Closeable {
+    private static final int REQUEST_FRAME_BYTES = TicketTerminalProtocol.LENGTH_PREFIX_BYTES
+            + TicketTerminalProtocol.REQUEST_BYTES;
+
+    private final SocketChannel channel;
+    private final ByteBuffer requestBuffer = ByteBuffer.allocateDirect(REQUEST_FRAME_BYTES);
+    private final Map<Long, CompletableFuture<Integer>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private final Thread reader;
+
+    public TicketTerminalClient(InetSocketAddress address) throws IOException {
+        this.channel = SocketChannel.open(address);
+        this.channel.socket().setTcpNoDelay(true);
+        this.reader = new Thread(this::readResponses, "ticket-terminal-client");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Send a purchase request
+     * 
+     * @param accountId     account Id
+     * @param adultTickets  adult tickets count
+     * @param childTickets  child tickets count
+     * @param infantTickets infant tickets count
+     * @return future completing with a TicketTerminalProtocol result code
+     * 
+     */
+    public CompletableFuture<Integer> purchase(long accountId, int adultTickets, int childTickets,
+            int infantTickets) {
+        long requestId = nextRequestId.incrementAndGet();
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        inFlight.put(requestId, result);
+
+        try {
+            synchronized (requestBuffer) {
+                requestBuffer.clear();
+                requestBuffer.putInt(TicketTerminalProtocol.REQUEST_BYTES).putLong(requestId).putLong(accountId)
+                        .putInt(adultTickets).putInt(childTickets).putInt(infantTickets).flip();
+                while (requestBuffer.hasRemaining()) {
+                    channel.write(requestBuffer);
+                }
+            }
+        } catch (IOException e) {
+            inFlight.remove(requestId);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Read responses until the connection closes, then fail anything still in
+     * flight
+     * 
+     */
+    private void readResponses() {
+        ByteBuffer responseBuffer = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while (channel.read(responseBuffer) >= 0) {
+                responseBuffer.flip();
+                while (responseBuffer.remaining() >= TicketTerminalProtocol.LENGTH_PREFIX_BYTES
+                        + TicketTerminalProtocol.RESPONSE_BYTES) {
+                    if (responseBuffer.getInt() != TicketTerminalProtocol.RESPONSE_BYTES) {
+                        throw new IOException("Unexpected response frame length");
+                    }
+                    CompletableFuture<Integer> result = inFlight.remove(responseBuffer.getLong());
+                    int resultCode = responseBuffer.getInt();
+                    if (result != null) {
+                        result.complete(resultCode);
+                    }
+                }
+                responseBuffer.compact();
+            }
+        } catch (IOException e) {
+            // connection closed, fail outstanding requests below
+        }
+
+        IOException closed = new IOException("Connection closed");
+        inFlight.values().forEach(result -> result.completeExceptionally(closed));
+        inFlight.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+}
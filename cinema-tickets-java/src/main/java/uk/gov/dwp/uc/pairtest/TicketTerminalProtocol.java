@@ -0,0 +1,29 @@
+package uk.gov.dwp.uc.pairtest;
+
+/**
+ * Binary frame layout shared by TicketTerminalServer and TicketTerminalClient.
+ * 
+ * Every frame starts with an int length of the bytes that follow. All values
+ * are big endian.
+ * 
+ * Request: length(28) | long requestId | long accountId | int adultTickets |
+ * int childTickets | int infantTickets
+ * 
+ * Response: length(12) | long requestId | int resultCode
+ * 
+ * Responses carry the requestId of the request they answer and may arrive in
+ * any order.
+ * 
+ */
+public final class TicketTerminalProtocol {
+    public static final int LENGTH_PREFIX_BYTES = 4;
+    public static final int REQUEST_BYTES = 28;
+    public static final int RESPONSE_BYTES = 12;
+
+    public static final int RESULT_ACCEPTED = 0;
+    public static final int RESULT_REJECTED = 1;
+    public static final int RESULT_FAILED = 2;
+
+    private TicketTerminalProtocol() {
+    }
+}
@@ -0,0 +1,292 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * NIO server for box office terminals speaking TicketTerminalProtocol.
+ * 
+ * A single selector thread reads frames and dispatches each request to the
+ * executor, so a connection can have many requests in flight and responses are
+ * written as soon as each purchase completes, in whatever order that is. Read
+ * and response buffers are direct buffers taken from a pool. Requests the
+ * executor refuses are answered with RESULT_FAILED.
+ * 
+ */
+public class TicketTerminalServer implements Runnable {
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final int RESPONSE_FRAME_BYTES = TicketTerminalProtocol.LENGTH_PREFIX_BYTES
+            + TicketTerminalProtocol.RESPONSE_BYTES;
+    private static final TicketTypeRequestUtilities ticketTypeRequestUtilities = new TicketTypeRequestUtilities();
+
+    private final TicketService ticketService;
+    private final Executor executor;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final DirectBufferPool readBufferPool = new DirectBufferPool(READ_BUFFER_BYTES, 1024);
+    private final DirectBufferPool responseBufferPool = new DirectBufferPool(RESPONSE_FRAME_BYTES, 64 * 1024);
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    /**
+     * 
+     * @param address       address to bind, port 0 picks a free port
+     * @param ticketService ticket service purchases are dispatched to
+     * @param executor      executor purchases run on
+     * @throws IOException if the address cannot be bound
+     * 
+     */
+    public TicketTerminalServer(InetSocketAddress address, TicketService ticketService, Executor executor)
+            throws IOException {
+        this.ticketService = ticketService;
+        this.executor = executor;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(address);
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Start the selector loop on a new thread
+     * 
+     */
+    public void start() {
+        Thread thread = new Thread(this, "ticket-terminal-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the selector loop and close every connection
+     * 
+     */
+    public void stop() {
+        if (running.compareAndSet(true, false)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Selector loop, runs until stop is called
+     * 
+     */
+    @Override
+    public void run() {
+        try {
+            while (running.get()) {
+                selector.select();
+                registerPendingWrites();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            ((Connection) key.attachment()).read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            ((Connection) key.attachment()).write();
+                        }
+                    } catch (IOException e) {
+                        if (key.attachment() != null) {
+                            ((Connection) key.attachment()).close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            running.set(false);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    /**
+     * Turn on write interest for connections with responses queued by workers
+     * 
+     */
+    private void registerPendingWrites() {
+        Connection connection;
+        while ((connection = pendingWrites.poll()) != null) {
+            connection.writeScheduled.set(false);
+            if (connection.key.isValid()) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() != null) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+
+    /**
+     * Run a purchase on a worker thread and queue its response, answer
+     * RESULT_FAILED at once if the executor refuses it
+     * 
+     */
+    private void dispatch(Connection connection, long requestId, long accountId, int adultTickets,
+            int childTickets, int infantTickets) {
+        try {
+            executor.execute(() -> {
+                int resultCode;
+                try {
+                    ticketService.purchaseTickets(accountId, ticketTypeRequestUtilities
+                            .getTicketTypeRequests(adultTickets, childTickets, infantTickets));
+                    resultCode = TicketTerminalProtocol.RESULT_ACCEPTED;
+                } catch (InvalidPurchaseException e) {
+                    resultCode = TicketTerminalProtocol.RESULT_REJECTED;
+                } catch (RuntimeException e) {
+                    resultCode = TicketTerminalProtocol.RESULT_FAILED;
+                }
+                respond(connection, requestId, resultCode);
+            });
+        } catch (RejectedExecutionException e) {
+            respond(connection, requestId, TicketTerminalProtocol.RESULT_FAILED);
+        }
+    }
+
+    /**
+     * Queue a response and have the selector thread write it
+     * 
+     */
+    private void respond(Connection connection, long requestId, int resultCode) {
+        ByteBuffer response = responseBufferPool.acquire();
+        response.putInt(TicketTerminalProtocol.RESPONSE_BYTES).putLong(requestId).putInt(resultCode).flip();
+        connection.responses.offer(response);
+        if (connection.writeScheduled.compareAndSet(false, true)) {
+            pendingWrites.offer(connection);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Per connection state, touched only by the selector thread apart from the
+     * response queue
+     * 
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer = readBufferPool.acquire();
+        private final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean writeScheduled = new AtomicBoolean();
+        private ByteBuffer writing;
+        private SelectionKey key;
+        private boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Read available bytes and dispatch every complete request frame
+         * 
+         */
+        void read() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            while (readBuffer.remaining() >= TicketTerminalProtocol.LENGTH_PREFIX_BYTES) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length != TicketTerminalProtocol.REQUEST_BYTES) {
+                    close();
+                    return;
+                }
+                if (readBuffer.remaining() < TicketTerminalProtocol.LENGTH_PREFIX_BYTES + length) {
+                    break;
+                }
+                readBuffer.getInt();
+                dispatch(this, readBuffer.getLong(), readBuffer.getLong(), readBuffer.getInt(), readBuffer.getInt(),
+                        readBuffer.getInt());
+            }
+            readBuffer.compact();
+        }
+
+        /**
+         * Write queued responses until the socket buffer is full or the queue is
+         * empty
+         * 
+         */
+        void write() throws IOException {
+            while (true) {
+                if (writing == null) {
+                    writing = responses.poll();
+                    if (writing == null) {
+                        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+                channel.write(writing);
+                if (writing.hasRemaining()) {
+                    return;
+                }
+                responseBufferPool.release(writing);
+                writing = null;
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // connection is gone either way
+            }
+            readBufferPool.release(readBuffer);
+        }
+    }
+}
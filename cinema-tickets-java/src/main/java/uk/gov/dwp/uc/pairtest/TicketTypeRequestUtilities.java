@@ -21,4 +21,30 @@ public class TicketTypeRequestUtilities {
         }
         return totalTicketsCount;
     }
+
+    /**
+     * Build ticket type requests from per type ticket counts, ticket types with
+     * a count of 0 are left out
+     * 
+     * @param adultTickets  adult tickets count
+     * @param childTickets  child tickets count
+     * @param infantTickets infant tickets count
+     * @return ticket type request array
+     * 
+     */
+    public TicketTypeRequest[] getTicketTypeRequests(int adultTickets, int childTickets, int infantTickets) {
+        int requestsCount = (adultTickets != 0 ? 1 : 0) + (childTickets != 0 ? 1 : 0) + (infantTickets != 0 ? 1 : 0);
+        TicketTypeRequest[] ticketTypeRequests = new TicketTypeRequest[requestsCount];
+        int i = 0;
+        if (adultTickets != 0) {
+            ticketTypeRequests[i++] = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, adultTickets);
+        }
+        if (childTickets != 0) {
+            ticketTypeRequests[i++] = new TicketTypeRequest(TicketTypeRequest.Type.CHILD, childTickets);
+        }
+        if (infantTickets != 0) {
+            ticketTypeRequests[i] = new TicketTypeRequest(TicketTypeRequest.Type.INFANT, infantTickets);
+        }
+        return ticketTypeRequests;
+    }
 }
@@ -0,0 +1,27 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+/**
+ * Immutable Object
+ * 
+ * One screening's tickets within a basket purchase
+ * 
+ */
+
+public class BasketItem {
+
+    private final int screening;
+    private final TicketTypeRequest[] ticketTypeRequests;
+
+    public BasketItem(int screening, TicketTypeRequest... ticketTypeRequests) {
+        this.screening = screening;
+        this.ticketTypeRequests = ticketTypeRequests == null ? null : ticketTypeRequests.clone();
+    }
+
+    public int getScreening() {
+        return screening;
+    }
+
+    public TicketTypeRequest[] getTicketTypeRequests() {
+        return ticketTypeRequests == null ? null : ticketTypeRequests.clone();
+    }
+}
@@ -0,0 +1,32 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+/**
+ * Circumstances of a purchase that decide which promotions apply
+ * 
+ */
+public enum PricingContext {
+    STANDARD(false, false), OFF_PEAK(true, false), MEMBER(false, true), MEMBER_OFF_PEAK(true, true);
+
+    private final boolean offPeak;
+    private final boolean member;
+
+    private PricingContext(boolean offPeak, boolean member) {
+        this.offPeak = offPeak;
+        this.member = member;
+    }
+
+    public static PricingContext of(boolean offPeak, boolean member) {
+        if (member) {
+            return offPeak ? MEMBER_OFF_PEAK : MEMBER;
+        }
+        return offPeak ? OFF_PEAK : STANDARD;
+    }
+
+    public boolean isOffPeak() {
+        return offPeak;
+    }
+
+    public boolean isMember() {
+        return member;
+    }
+}
@@ -0,0 +1,156 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+/**
+ * Immutable Object
+ * 
+ * A promotion, one of:
+ * - BUNDLE, a fixed price for a set of tickets, e.g. 2 ADULT and 2 CHILD for 50
+ * - PERCENT_OFF, a discount off the whole order
+ * - TICKET_PRICE, a reduced price for one ticket type
+ * 
+ * Each may be limited to off peak purchases, to members, or both
+ * 
+ */
+
+public class Promotion {
+
+    public enum Kind {
+        BUNDLE, PERCENT_OFF, TICKET_PRICE
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final int adultTickets;
+    private final int childTickets;
+    private final int infantTickets;
+    private final TicketTypeRequest.Type ticketType;
+    private final int value;
+    private final boolean offPeakOnly;
+    private final boolean membersOnly;
+
+    private Promotion(String name, Kind kind, int adultTickets, int childTickets, int infantTickets,
+            TicketTypeRequest.Type ticketType, int value, boolean offPeakOnly, boolean membersOnly) {
+        this.name = name;
+        this.kind = kind;
+        this.adultTickets = adultTickets;
+        this.childTickets = childTickets;
+        this.infantTickets = infantTickets;
+        this.ticketType = ticketType;
+        this.value = value;
+        this.offPeakOnly = offPeakOnly;
+        this.membersOnly = membersOnly;
+    }
+
+    /**
+     * Fixed price for a set of tickets, applied as many times as it fits an
+     * order
+     * 
+     * @param name          promotion name
+     * @param adultTickets  adult tickets in the bundle
+     * @param childTickets  child tickets in the bundle
+     * @param infantTickets infant tickets in the bundle
+     * @param price         price of the bundle
+     * @param offPeakOnly   whether only off peak purchases qualify
+     * @param membersOnly   whether only members qualify
+     * @return bundle promotion
+     * 
+     */
+    public static Promotion bundle(String name, int adultTickets, int childTickets, int infantTickets, int price,
+            boolean offPeakOnly, boolean membersOnly) {
+        if (adultTickets < 0 || childTickets < 0 || infantTickets < 0
+                || adultTickets + childTickets + infantTickets == 0 || price < 0) {
+            throw new IllegalArgumentException("Bundle should have tickets and a price of at least 0");
+        }
+        return new Promotion(name, Kind.BUNDLE, adultTickets, childTickets, infantTickets, null, price, offPeakOnly,
+                membersOnly);
+    }
+
+    /**
+     * Percentage off the whole order, the largest qualifying one applies
+     * 
+     * @param name        promotion name
+     * @param percent     percentage off, 0 to 100
+     * @param offPeakOnly whether only off peak purchases qualify
+     * @param membersOnly whether only members qualify
+     * @return percent off promotion
+     * 
+     */
+    public static Promotion percentOff(String name, int percent, boolean offPeakOnly, boolean membersOnly) {
+        if (percent < 0 || percent > 100) {
+            throw new IllegalArgumentException("Percent off should be between 0 and 100");
+        }
+        return new Promotion(name, Kind.PERCENT_OFF, 0, 0, 0, null, percent, offPeakOnly, membersOnly);
+    }
+
+    /**
+     * Reduced price for a ticket type, the lowest qualifying price applies
+     * 
+     * @param name        promotion name
+     * @param ticketType  ticket type
+     * @param price       ticket price
+     * @param offPeakOnly whether only off peak purchases qualify
+     * @param membersOnly whether only members qualify
+     * @return ticket price promotion
+     * 
+     */
+    public static Promotion ticketPrice(String name, TicketTypeRequest.Type ticketType, int price,
+            boolean offPeakOnly, boolean membersOnly) {
+        if (ticketType == null || price < 0) {
+            throw new IllegalArgumentException("Ticket price should have a ticket type and a price of at least 0");
+        }
+        return new Promotion(name, Kind.TICKET_PRICE, 0, 0, 0, ticketType, price, offPeakOnly, membersOnly);
+    }
+
+    /**
+     * Check whether a purchase in a pricing context qualifies
+     * 
+     * @param pricingContext pricing context
+     * @return true if the promotion applies
+     * 
+     */
+    public boolean appliesTo(PricingContext pricingContext) {
+        return (!offPeakOnly || pricingContext.isOffPeak()) && (!membersOnly || pricingContext.isMember());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getAdultTickets() {
+        return adultTickets;
+    }
+
+    public int getChildTickets() {
+        return childTickets;
+    }
+
+    public int getInfantTickets() {
+        return infantTickets;
+    }
+
+    public TicketTypeRequest.Type getTicketType() {
+        return ticketType;
+    }
+
+    /**
+     * Get the bundle price, percentage off or ticket price
+     * 
+     * @return value of the promotion
+     * 
+     */
+    public int getValue() {
+        return value;
+    }
+
+    public boolean isOffPeakOnly() {
+        return offPeakOnly;
+    }
+
+    public boolean isMembersOnly() {
+        return membersOnly;
+    }
+}
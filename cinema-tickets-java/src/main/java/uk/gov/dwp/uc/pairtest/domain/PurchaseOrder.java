@@ -0,0 +1,45 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+/**
+ * Immutable Object
+ * 
+ * A single purchase request (account Id, pricing context and ticket type
+ * requests) as it travels through the purchase pipeline
+ * 
+ */
+
+public class PurchaseOrder {
+
+    private final Long accountId;
+    private final PricingContext pricingContext;
+    private final TicketTypeRequest[] ticketTypeRequests;
+
+    public PurchaseOrder(Long accountId, TicketTypeRequest... ticketTypeRequests) {
+        this(accountId, PricingContext.STANDARD, ticketTypeRequests);
+    }
+
+    /**
+     * 
+     * @param accountId          account Id
+     * @param pricingContext     pricing context, null for standard pricing
+     * @param ticketTypeRequests ticket type requests
+     * 
+     */
+    public PurchaseOrder(Long accountId, PricingContext pricingContext, TicketTypeRequest... ticketTypeRequests) {
+        this.accountId = accountId;
+        this.pricingContext = pricingContext == null ? PricingContext.STANDARD : pricingContext;
+        this.ticketTypeRequests = ticketTypeRequests == null ? null : ticketTypeRequests.clone();
+    }
+
+    public Long getAccountId() {
+        return accountId;
+    }
+
+    public PricingContext getPricingContext() {
+        return pricingContext;
+    }
+
+    public TicketTypeRequest[] getTicketTypeRequests() {
+        return ticketTypeRequests == null ? null : ticketTypeRequests.clone();
+    }
+}
@@ -0,0 +1,58 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+/**
+ * Immutable Object
+ * 
+ * Point in time view of the live sales counters
+ * 
+ */
+
+public class SalesSnapshot {
+
+    private final long purchases;
+    private final long adultTickets;
+    private final long childTickets;
+    private final long infantTickets;
+    private final long seatsReserved;
+    private final long revenue;
+
+    public SalesSnapshot(long purchases, long adultTickets, long childTickets, long infantTickets,
+            long seatsReserved, long revenue) {
+        this.purchases = purchases;
+        this.adultTickets = adultTickets;
+        this.childTickets = childTickets;
+        this.infantTickets = infantTickets;
+        this.seatsReserved = seatsReserved;
+        this.revenue = revenue;
+    }
+
+    public long getPurchases() {
+        return purchases;
+    }
+
+    /**
+     * Get tickets sold of a ticket type
+     * 
+     * @param ticketType ticket type
+     * @return tickets sold
+     * 
+     */
+    public long getTicketsSold(TicketTypeRequest.Type ticketType) {
+        switch (ticketType) {
+            case ADULT:
+                return adultTickets;
+            case CHILD:
+                return childTickets;
+            default:
+                return infantTickets;
+        }
+    }
+
+    public long getSeatsReserved() {
+        return seatsReserved;
+    }
+
+    public long getRevenue() {
+        return revenue;
+    }
+}
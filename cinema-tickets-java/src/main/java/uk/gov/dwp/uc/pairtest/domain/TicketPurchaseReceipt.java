@@ -0,0 +1,40 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+/**
+ * Immutable Object
+ * 
+ * Receipt for a completed purchase, with one ticket id for each ticket issued
+ * (infant tickets included)
+ * 
+ */
+
+public class TicketPurchaseReceipt {
+
+    private final long accountId;
+    private final long[] ticketIds;
+    private final int totalSeats;
+    private final int totalCost;
+
+    public TicketPurchaseReceipt(long accountId, long[] ticketIds, int totalSeats, int totalCost) {
+        this.accountId = accountId;
+        this.ticketIds = ticketIds.clone();
+        this.totalSeats = totalSeats;
+        this.totalCost = totalCost;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public long[] getTicketIds() {
+        return ticketIds.clone();
+    }
+
+    public int getTotalSeats() {
+        return totalSeats;
+    }
+
+    public int getTotalCost() {
+        return totalCost;
+    }
+}
@@ -0,0 +1,364 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.domain.BasketItem;
+import uk.gov.dwp.uc.pairtest.domain.PricingContext;
+import uk.gov.dwp.uc.pairtest.domain.Promotion;
+import uk.gov.dwp.uc.pairtest.domain.TicketPurchaseReceipt;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ *
+ * Basket rules:
+ * - Every screening's ticket requests are validated before any seat is reserved
+ * - One payment is taken for the whole basket
+ * - If any screening cannot be reserved or the payment fails, no seats stay
+ *   reserved and no payment is taken
+ * - Each screening is priced with the active promotions and reported to the
+ *   purchase listeners as a purchase
+ * - With an outbox, releases are recorded and replayed until they succeed
+ * 
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BasketPurchaseServiceTest {
+
+    ExecutorService executor;
+    OffHeapSeatInventory seatInventory;
+    TicketPurchaseService ticketPurchaseService;
+    BasketPurchaseService basketPurchaseService;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    TicketPaymentService mockTicketPaymentService;
+
+    @Mock
+    SeatReservationService mockSeatReservationService;
+
+    @Before
+    public void setup() {
+        executor = Executors.newFixedThreadPool(2);
+        seatInventory = new OffHeapSeatInventory(3, 10);
+        ticketPurchaseService = new TicketPurchaseService(mockTicketPaymentService, mockSeatReservationService);
+        basketPurchaseService = new BasketPurchaseService(seatInventory, ticketPurchaseService, executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 
+     * Double bill reserves both screenings and pays once
+     * 
+     * Parameters:
+     * Account ID: 1
+     * Screening 0: Adult Tickets: 2, Infant Tickets: 1
+     * Screening 1: Adult Tickets: 2, Child Tickets: 2
+     * 
+     * Expected:
+     * One payment of 100
+     * 2 seats reserved on screening 0, 4 on screening 1
+     * 7 ticket ids on the receipt
+     * 
+     */
+    @Test
+    public void basketReservesEveryScreeningAndPaysOnce() {
+        TicketPurchaseReceipt receipt = basketPurchaseService.purchase(1L,
+                new BasketItem(0, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                        new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1)),
+                new BasketItem(1, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                        new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 2)));
+
+        Mockito.verify(mockTicketPaymentService, Mockito.times(1)).makePayment(1L, 100);
+        assertEquals(8, seatInventory.available(0));
+        assertEquals(6, seatInventory.available(1));
+        assertEquals(7, receipt.getTicketIds().length);
+        assertEquals(6, receipt.getTotalSeats());
+        assertEquals(100, receipt.getTotalCost());
+    }
+
+    /**
+     * 
+     * A screening without enough seats fails the whole basket
+     * 
+     * Parameters:
+     * Account ID: 1
+     * Screening 0: Adult Tickets: 3
+     * Screening 1: Adult Tickets: 2
+     * Screening 2: Adult Tickets: 11 (10 seats)
+     * 
+     * Expected:
+     * Not enough seats available
+     * No payment, every screening back to 10 seats
+     * 
+     */
+    @Test
+    public void unavailableScreeningReleasesTheRest() {
+        try {
+            basketPurchaseService.purchase(1L,
+                    new BasketItem(0, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 3)),
+                    new BasketItem(1, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2)),
+                    new BasketItem(2, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 11)));
+            fail("Expected InvalidPurchaseException");
+        } catch (InvalidPurchaseException e) {
+            assertEquals("Not enough seats available", e.getMessage());
+        }
+
+        Mockito.verifyNoInteractions(mockTicketPaymentService);
+        for (int screening = 0; screening < 3; screening++) {
+            assertEquals(10, seatInventory.available(screening));
+        }
+    }
+
+    /**
+     * 
+     * A failed payment releases every screening
+     * 
+     * Parameters:
+     * Account ID: 1
+     * Screening 0: Adult Tickets: 1
+     * Screening 1: Adult Tickets: 1
+     * Payment fails
+     * 
+     * Expected:
+     * Payment failure thrown, both screenings back to 10 seats
+     * 
+     */
+    @Test
+    public void failedPaymentReleasesEveryScreening() {
+        IllegalStateException paymentFailure = new IllegalStateException("Card declined");
+        Mockito.doThrow(paymentFailure).when(mockTicketPaymentService).makePayment(1L, 40);
+
+        try {
+            basketPurchaseService.purchase(1L,
+                    new BasketItem(0, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1)),
+                    new BasketItem(1, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1)));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals(paymentFailure, e);
+        }
+
+        assertEquals(10, seatInventory.available(0));
+        assertEquals(10, seatInventory.available(1));
+    }
+
+    /**
+     * 
+     * After a failed payment, releases go through the outbox and are replayed
+     * until the seat inventory accepts them
+     * 
+     * Parameters:
+     * Account ID: 1
+     * Screening 0: Adult Tickets: 2
+     * Screening 1: Adult Tickets: 1
+     * Payment fails, the outbox is shared with the basket
+     * The seat inventory fails the first release replayed, as an unreachable
+     * shard would
+     * 
+     * Expected:
+     * Payment failure thrown with nothing suppressed, seats held until drained
+     * First drain replays screening 0 only, second drain releases both
+     * screenings back to 10 seats
+     * 
+     */
+    @Test
+    public void failedPaymentReleasesThroughTheOutbox() throws IOException, InterruptedException {
+        IllegalStateException paymentFailure = new IllegalStateException("Card declined");
+        Mockito.doThrow(paymentFailure).when(mockTicketPaymentService).makePayment(1L, 60);
+        AtomicBoolean shardDown = new AtomicBoolean(true);
+        ScreeningSeatInventory flakyInventory = new ScreeningSeatInventory() {
+            @Override
+            public boolean reserve(int screening, int seats) {
+                return seatInventory.reserve(screening, seats);
+            }
+
+            @Override
+            public boolean release(int screening, int seats) {
+                if (screening == 1 && shardDown.getAndSet(false)) {
+                    throw new IllegalStateException("Shard unreachable");
+                }
+                return seatInventory.release(screening, seats);
+            }
+
+            @Override
+            public int available(int screening) {
+                return seatInventory.available(screening);
+            }
+
+            @Override
+            public int getScreenings() {
+                return seatInventory.getScreenings();
+            }
+
+            @Override
+            public int getSeatsPerScreening() {
+                return seatInventory.getSeatsPerScreening();
+            }
+        };
+
+        try (PurchaseOutbox outbox = new PurchaseOutbox(temporaryFolder.getRoot().toPath())) {
+            ticketPurchaseService = new TicketPurchaseService(mockTicketPaymentService, mockSeatReservationService,
+                    null, outbox);
+            basketPurchaseService = new BasketPurchaseService(flakyInventory, ticketPurchaseService, executor);
+
+            try {
+                basketPurchaseService.purchase(1L,
+                        new BasketItem(0, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2)),
+                        new BasketItem(1, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1)));
+                fail("Expected IllegalStateException");
+            } catch (IllegalStateException e) {
+                assertEquals(paymentFailure, e);
+                assertEquals(0, e.getSuppressed().length);
+            }
+            assertEquals(8, seatInventory.available(0));
+            assertEquals(9, seatInventory.available(1));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (outbox.getCommittedPosition() < 2 * PurchaseOutbox.RECORD_BYTES && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            PurchaseOutboxDrainer drainer = new PurchaseOutboxDrainer(outbox, mockSeatReservationService,
+                    flakyInventory, mockTicketPaymentService, 10, PurchaseOutboxDrainer.DEFAULT_MAX_ATTEMPTS);
+            drainer.run();
+            assertEquals(10, seatInventory.available(0));
+            assertEquals(9, seatInventory.available(1));
+
+            drainer.run();
+            assertEquals(10, seatInventory.available(1));
+            assertEquals(outbox.getCommittedPosition(), outbox.getCheckpoint());
+            assertEquals(0, drainer.getDeadLettered());
+        }
+        Mockito.verifyNoInteractions(mockSeatReservationService);
+    }
+
+    /**
+     * 
+     * An invalid screening fails the basket before anything is reserved
+     * 
+     * Parameters:
+     * Account ID: 1
+     * Screening 0: Adult Tickets: 2
+     * Screening 1: Child Tickets: 2
+     * 
+     * Expected:
+     * Child or infant tickets cannot be purchased without adult tickets
+     * No payment, no seats reserved
+     * 
+     */
+    @Test
+    public void invalidScreeningFailsBeforeReserving() {
+        try {
+            basketPurchaseService.purchase(1L,
+                    new BasketItem(0, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2)),
+                    new BasketItem(1, new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 2)));
+            fail("Expected InvalidPurchaseException");
+        } catch (InvalidPurchaseException e) {
+            assertEquals("Child or infant tickets cannot be purchased without adult tickets", e.getMessage());
+        }
+
+        Mockito.verifyNoInteractions(mockTicketPaymentService);
+        assertEquals(10, seatInventory.available(0));
+        assertEquals(10, seatInventory.available(1));
+    }
+
+    /**
+     * 
+     * Basket is priced with promotions and reported to listeners
+     * 
+     * Parameters:
+     * Account ID: 1, member pricing
+     * Promotion: 10% off for members
+     * Screening 0: Adult Tickets: 2
+     * Screening 1: Adult Tickets: 1, Child Tickets: 1
+     * 
+     * Expected:
+     * One payment of 63
+     * Listeners notified of 2 purchases, paid 36 and 27
+     * 
+     */
+    @Test
+    public void basketIsPromotedAndReported() {
+        ticketPurchaseService.setPromotionEngine(
+                new PromotionEngine(20, List.of(Promotion.percentOff("Members", 10, false, true))));
+        List<String> purchases = new ArrayList<>();
+        ticketPurchaseService.addPurchaseListener((accountId, adultTickets, childTickets, infantTickets,
+                totalSeats, totalCost) -> purchases.add(adultTickets + "," + childTickets + "," + totalCost));
+
+        TicketPurchaseReceipt receipt = basketPurchaseService.purchase(1L, PricingContext.MEMBER,
+                new BasketItem(0, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2)),
+                new BasketItem(1, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1),
+                        new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1)));
+
+        Mockito.verify(mockTicketPaymentService).makePayment(1L, 63);
+        assertEquals(63, receipt.getTotalCost());
+        assertEquals(List.of("2,0,36", "1,1,27"), purchases);
+    }
+
+    /**
+     * 
+     * Reservations refused by the executor release the rest
+     * 
+     * Parameters:
+     * Account ID: 1
+     * Screenings 0, 1 and 2: Adult Tickets: 2 each
+     * Executor runs the first reservation, then rejects
+     * 
+     * Expected:
+     * RejectedExecutionException thrown
+     * No payment, every screening back to 10 seats
+     * 
+     */
+    @Test
+    public void rejectedReservationReleasesTheRest() {
+        int[] executed = new int[1];
+        Executor boundedExecutor = task -> {
+            if (executed[0]++ > 0) {
+                throw new RejectedExecutionException("Queue full");
+            }
+            task.run();
+        };
+        basketPurchaseService = new BasketPurchaseService(seatInventory, ticketPurchaseService, boundedExecutor);
+
+        try {
+            basketPurchaseService.purchase(1L,
+                    new BasketItem(0, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2)),
+                    new BasketItem(1, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2)),
+                    new BasketItem(2, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2)));
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException e) {
+            assertEquals("Queue full", e.getMessage());
+        }
+
+        Mockito.verifyNoInteractions(mockTicketPaymentService);
+        for (int screening = 0; screening < 3; screening++) {
+            assertEquals(10, seatInventory.available(screening));
+        }
+    }
+}
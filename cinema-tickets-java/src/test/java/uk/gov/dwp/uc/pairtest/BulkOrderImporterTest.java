@@ -0,0 +1,185 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+
+/**
+ *
+ * Import rules:
+ * - Each order line is validated with the same rules as purchaseTickets
+ * - Accepted orders are purchased in parallel, rejected orders are not
+ * - Every order gets a report line with its outcome
+ * 
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BulkOrderImporterTest {
+
+    BulkOrderImporter bulkOrderImporter;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    TicketPaymentService mockTicketPaymentService;
+
+    @Mock
+    SeatReservationService mockSeatReservationService;
+
+    @Before
+    public void setup() {
+        bulkOrderImporter = new BulkOrderImporter(new ValidationService(),
+                new TicketPurchaseService(mockTicketPaymentService, mockSeatReservationService));
+    }
+
+    /**
+     * 
+     * Mixed order file produces one report line per order
+     * 
+     * Parameters:
+     * Line 1: header comment
+     * Line 2: Account ID 1, 2 adults, 1 child, 1 infant
+     * Line 3: Account ID 0, 1 adult
+     * Line 4: blank
+     * Line 5: Account ID 2, 1 child
+     * Line 6: not a number
+     * Line 7: Account ID 3, 7 adults, 7 children, 7 infants
+     * Line 8: Account ID 4, 20 adults
+     * 
+     * Expected:
+     * 2 accepted orders
+     * Account 1 reserves 3 seats and pays 50
+     * Account 4 reserves 20 seats and pays 400
+     * 
+     */
+    @Test
+    public void mixedOrderFileReportsEveryOrder() throws IOException {
+        Path orders = temporaryFolder.newFile("orders.csv").toPath();
+        Path report = temporaryFolder.getRoot().toPath().resolve("report.csv");
+        Files.write(orders, Arrays.asList(
+                "# accountId,adult,child,infant",
+                "1,2,1,1",
+                "0,1,0,0",
+                "",
+                "2,0,1,0",
+                "3,one,0,0",
+                "3,7,7,7",
+                "4,20,0,0"), StandardCharsets.UTF_8);
+
+        assertEquals(2, bulkOrderImporter.importOrders(orders, report));
+
+        List<String> lines = Files.readAllLines(report, StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList(
+                "2,ACCEPTED",
+                "3,REJECTED,Invalid Account Id",
+                "5,REJECTED,Child or infant tickets cannot be purchased without adult tickets",
+                "6,REJECTED,Malformed order line",
+                "7,REJECTED,Maximum allowed tickets exceeded",
+                "8,ACCEPTED"), lines);
+
+        Mockito.verify(mockSeatReservationService).reserveSeat(1L, 3);
+        Mockito.verify(mockTicketPaymentService).makePayment(1L, 50);
+        Mockito.verify(mockSeatReservationService).reserveSeat(4L, 20);
+        Mockito.verify(mockTicketPaymentService).makePayment(4L, 400);
+        Mockito.verifyNoMoreInteractions(mockSeatReservationService, mockTicketPaymentService);
+    }
+
+    /**
+     * 
+     * Large order files are validated across several batches
+     * 
+     * Parameters:
+     * 5000 orders, Account IDs 1 to 5000, 1 adult each
+     * 
+     * Expected:
+     * 5000 accepted orders
+     * 
+     */
+    @Test
+    public void largeOrderFileIsImported() throws IOException {
+        Path orders = temporaryFolder.newFile("orders.csv").toPath();
+        Path report = temporaryFolder.getRoot().toPath().resolve("report.csv");
+        StringBuilder content = new StringBuilder();
+        for (int accountId = 1; accountId <= 5000; accountId++) {
+            content.append(accountId).append(",1,0,0\r\n");
+        }
+        Files.write(orders, content.toString().getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(5000, bulkOrderImporter.importOrders(orders, report));
+        assertEquals(5000, Files.readAllLines(report, StandardCharsets.UTF_8).size());
+
+        Mockito.verify(mockSeatReservationService, Mockito.times(5000)).reserveSeat(Mockito.anyLong(), Mockito.eq(1));
+        Mockito.verify(mockTicketPaymentService, Mockito.times(5000)).makePayment(Mockito.anyLong(), Mockito.eq(20));
+    }
+
+    /**
+     * 
+     * Accepted orders are purchased on several threads at once, a payment that
+     * fails rejecting only its own order
+     * 
+     * Parameters:
+     * Fork/join pool of 2 threads
+     * 16 orders, Account IDs 1 to 16, 1 adult each
+     * Each payment waits until two payments are in flight
+     * Payment for Account ID 5 fails
+     * 
+     * Expected:
+     * 15 accepted orders
+     * Line 5 rejected with the payment failure
+     * 
+     */
+    @Test
+    public void acceptedOrdersArePurchasedInParallel() throws IOException {
+        ForkJoinPool forkJoinPool = new ForkJoinPool(2);
+        CountDownLatch inFlight = new CountDownLatch(2);
+        Mockito.doAnswer(invocation -> {
+            inFlight.countDown();
+            if (!inFlight.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Payments were not made in parallel");
+            }
+            if (invocation.getArgument(0, Long.class) == 5L) {
+                throw new IllegalStateException("Payment declined");
+            }
+            return null;
+        }).when(mockTicketPaymentService).makePayment(Mockito.anyLong(), Mockito.anyInt());
+        bulkOrderImporter = new BulkOrderImporter(new ValidationService(),
+                new TicketPurchaseService(mockTicketPaymentService, mockSeatReservationService), forkJoinPool);
+        Path orders = temporaryFolder.newFile("orders.csv").toPath();
+        Path report = temporaryFolder.getRoot().toPath().resolve("report.csv");
+        StringBuilder content = new StringBuilder();
+        for (int accountId = 1; accountId <= 16; accountId++) {
+            content.append(accountId).append(",1,0,0\n");
+        }
+        Files.write(orders, content.toString().getBytes(StandardCharsets.UTF_8));
+
+        try {
+            assertEquals(15, bulkOrderImporter.importOrders(orders, report));
+        } finally {
+            forkJoinPool.shutdown();
+        }
+
+        List<String> lines = Files.readAllLines(report, StandardCharsets.UTF_8);
+        assertEquals(16, lines.size());
+        assertEquals("5,REJECTED,Payment declined", lines.get(4));
+        assertEquals("6,ACCEPTED", lines.get(5));
+    }
+}
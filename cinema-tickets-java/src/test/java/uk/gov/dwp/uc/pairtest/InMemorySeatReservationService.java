@@ -0,0 +1,51 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * In-memory stand-in for the seat booking service used by the stress
+ * harness: one screening of fixed capacity, refusing reservations that do
+ * not fit.
+ * 
+ */
+class InMemorySeatReservationService implements SeatReservationService {
+    private final int capacity;
+    private final AtomicInteger reserved = new AtomicInteger();
+
+    InMemorySeatReservationService(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+        while (true) {
+            int current = reserved.get();
+            if (current + totalSeatsToAllocate > capacity) {
+                throw new InvalidPurchaseException("Not enough seats available");
+            }
+            if (reserved.compareAndSet(current, current + totalSeatsToAllocate)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void releaseSeat(long accountId, int totalSeatsToRelease) {
+        while (true) {
+            int current = reserved.get();
+            if (current < totalSeatsToRelease) {
+                throw new IllegalStateException("Fewer seats reserved than released");
+            }
+            if (reserved.compareAndSet(current, current - totalSeatsToRelease)) {
+                return;
+            }
+        }
+    }
+
+    int getReserved() {
+        return reserved.get();
+    }
+}
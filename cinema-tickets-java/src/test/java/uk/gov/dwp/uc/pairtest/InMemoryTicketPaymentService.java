@@ -0,0 +1,70 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+
+/**
+ * In-memory stand-in for the payment gateway used by the stress harness.
+ * Records every payment and refund per account, and declines payments for
+ * every nth account id when asked to.
+ * 
+ */
+class InMemoryTicketPaymentService implements TicketPaymentService {
+    static final int PAYMENTS = 0;
+    static final int PAID = 1;
+    static final int REFUNDS = 2;
+    static final int REFUNDED = 3;
+
+    private final int declineEvery;
+    private final Map<Long, AtomicIntegerArray> accounts = new ConcurrentHashMap<>();
+
+    /**
+     * 
+     * @param declineEvery decline payments for account ids divisible by this, 0
+     *                     to accept every payment
+     * 
+     */
+    InMemoryTicketPaymentService(int declineEvery) {
+        this.declineEvery = declineEvery;
+    }
+
+    @Override
+    public void makePayment(long accountId, int totalAmountToPay) {
+        if (declineEvery > 0 && accountId % declineEvery == 0) {
+            throw new IllegalStateException("Payment declined");
+        }
+        AtomicIntegerArray account = accountOf(accountId);
+        account.incrementAndGet(PAYMENTS);
+        account.addAndGet(PAID, totalAmountToPay);
+    }
+
+    @Override
+    public void refundPayment(long accountId, int totalAmountToRefund) {
+        AtomicIntegerArray account = accountOf(accountId);
+        account.incrementAndGet(REFUNDS);
+        account.addAndGet(REFUNDED, totalAmountToRefund);
+    }
+
+    /**
+     * Get payments, amount paid, refunds and amount refunded for an account
+     * 
+     * @param accountId account Id
+     * @return PAYMENTS, PAID, REFUNDS and REFUNDED totals
+     * 
+     */
+    int[] getTotals(long accountId) {
+        AtomicIntegerArray account = accounts.get(accountId);
+        int[] totals = new int[4];
+        for (int i = 0; account != null && i < totals.length; i++) {
+            totals[i] = account.get(i);
+        }
+        return totals;
+    }
+
+    private AtomicIntegerArray accountOf(long accountId) {
+        return accounts.computeIfAbsent(accountId, id -> new AtomicIntegerArray(4));
+    }
+}
@@ -0,0 +1,66 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.Arrays;
+
+/**
+ * Fixed capacity latency recorder used by the benchmarks, one per thread.
+ * Samples beyond capacity are counted but not kept.
+ * 
+ */
+class LatencyRecorder {
+    private final long[] samples;
+    private int size;
+    private long count;
+
+    LatencyRecorder(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    void record(long nanos) {
+        if (size < samples.length) {
+            samples[size++] = nanos;
+        }
+        count++;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Merge several recorders and print throughput and latency percentiles
+     * 
+     * @param label          benchmark label
+     * @param elapsedNanos   wall clock time of the run
+     * @param recorders      per thread recorders
+     * 
+     */
+    static void report(String label, long elapsedNanos, LatencyRecorder... recorders) {
+        int total = 0;
+        long operations = 0;
+        for (LatencyRecorder recorder : recorders) {
+            total += recorder.size;
+            operations += recorder.count;
+        }
+        long[] merged = new long[total];
+        int offset = 0;
+        for (LatencyRecorder recorder : recorders) {
+            System.arraycopy(recorder.samples, 0, merged, offset, recorder.size);
+            offset += recorder.size;
+        }
+        Arrays.sort(merged);
+
+        System.out.printf("%s: %d ops, %.0f ops/s, p50 %.1f us, p90 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                label, operations, operations * 1e9 / elapsedNanos,
+                percentile(merged, 50), percentile(merged, 90), percentile(merged, 99), percentile(merged, 99.9),
+                merged.length == 0 ? 0 : merged[merged.length - 1] / 1e3);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e3;
+    }
+}
@@ -0,0 +1,223 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Linearizability checker for histories of seat reservations and releases on
+ * one screening, after Wing and Gong with Lowe's memoisation.
+ *
+ * The sequential model is a count of reserved seats out of a capacity: a
+ * reservation succeeds if its seats fit and is refused otherwise, a release
+ * succeeds if that many seats are reserved. The checker searches for an order
+ * of the operations that respects real time (an operation that returned
+ * before another was called comes first) and in which every operation has
+ * the outcome it was observed to have. Search states already explored are
+ * remembered so that equivalent interleavings are only explored once.
+ *
+ */
+class LinearizabilityChecker {
+
+    /**
+     * One completed operation of a history
+     *
+     */
+    static final class Operation {
+        final boolean reserve;
+        final int seats;
+        final boolean succeeded;
+        final long callNanos;
+        final long returnNanos;
+
+        Operation(boolean reserve, int seats, boolean succeeded, long callNanos, long returnNanos) {
+            this.reserve = reserve;
+            this.seats = seats;
+            this.succeeded = succeeded;
+            this.callNanos = callNanos;
+            this.returnNanos = returnNanos;
+        }
+
+        @Override
+        public String toString() {
+            return (reserve ? "reserve " : "release ") + seats + (succeeded ? " ok" : " refused") + " ["
+                    + callNanos + ", " + returnNanos + "]";
+        }
+    }
+
+    private LinearizabilityChecker() {
+    }
+
+    /**
+     * Check a history against the seat count model
+     *
+     * @param history  completed operations
+     * @param capacity seats in the screening
+     * @return true if the history is linearizable
+     *
+     */
+    static boolean isLinearizable(List<Operation> history, int capacity) {
+        Entry head = entries(history);
+        BitSet linearized = new BitSet(history.size());
+        Set<SearchState> explored = new HashSet<>();
+        List<Entry> calls = new ArrayList<>();
+        List<Integer> states = new ArrayList<>();
+        int reserved = 0;
+
+        Entry entry = head.next;
+        while (head.next != null) {
+            if (entry.isCall) {
+                int next = apply(entry.operation, reserved, capacity);
+                boolean fresh = false;
+                if (next >= 0) {
+                    linearized.set(entry.id);
+                    fresh = explored.add(new SearchState((BitSet) linearized.clone(), next));
+                    if (!fresh) {
+                        linearized.clear(entry.id);
+                    }
+                }
+                if (fresh) {
+                    calls.add(entry);
+                    states.add(reserved);
+                    reserved = next;
+                    entry.lift();
+                    entry = head.next;
+                } else {
+                    entry = entry.next;
+                }
+            } else {
+                // The earliest pending return has no linearized call, undo the
+                // last choice and try the next candidate after it
+                if (calls.isEmpty()) {
+                    return false;
+                }
+                Entry call = calls.remove(calls.size() - 1);
+                reserved = states.remove(states.size() - 1);
+                linearized.clear(call.id);
+                call.unlift();
+                entry = call.next;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply an operation to the model
+     *
+     * @return reserved seats afterwards, or -1 if the observed outcome is not
+     *         possible from this state
+     *
+     */
+    private static int apply(Operation operation, int reserved, int capacity) {
+        if (operation.reserve) {
+            boolean fits = reserved + operation.seats <= capacity;
+            if (fits != operation.succeeded) {
+                return -1;
+            }
+            return fits ? reserved + operation.seats : reserved;
+        }
+        boolean held = reserved >= operation.seats;
+        if (held != operation.succeeded) {
+            return -1;
+        }
+        return held ? reserved - operation.seats : reserved;
+    }
+
+    /**
+     * Build the doubly linked list of call and return entries in time order,
+     * calls before returns at the same instant
+     *
+     */
+    private static Entry entries(List<Operation> history) {
+        List<Entry> entries = new ArrayList<>(history.size() * 2);
+        for (int id = 0; id < history.size(); id++) {
+            Operation operation = history.get(id);
+            Entry call = new Entry(id, operation, true, operation.callNanos);
+            Entry response = new Entry(id, operation, false, operation.returnNanos);
+            call.match = response;
+            entries.add(call);
+            entries.add(response);
+        }
+        entries.sort((a, b) -> a.nanos != b.nanos ? Long.compare(a.nanos, b.nanos)
+                : Boolean.compare(b.isCall, a.isCall));
+
+        Entry head = new Entry(-1, null, false, Long.MIN_VALUE);
+        Entry previous = head;
+        for (Entry entry : entries) {
+            previous.next = entry;
+            entry.previous = previous;
+            previous = entry;
+        }
+        return head;
+    }
+
+    private static final class Entry {
+        private final int id;
+        private final Operation operation;
+        private final boolean isCall;
+        private final long nanos;
+        private Entry match;
+        private Entry previous;
+        private Entry next;
+
+        private Entry(int id, Operation operation, boolean isCall, long nanos) {
+            this.id = id;
+            this.operation = operation;
+            this.isCall = isCall;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Unlink a call and its return
+         *
+         */
+        private void lift() {
+            previous.next = next;
+            if (next != null) {
+                next.previous = previous;
+            }
+            match.previous.next = match.next;
+            if (match.next != null) {
+                match.next.previous = match.previous;
+            }
+        }
+
+        /**
+         * Relink a call and its return, in reverse order of lift
+         *
+         */
+        private void unlift() {
+            match.previous.next = match;
+            if (match.next != null) {
+                match.next.previous = match;
+            }
+            previous.next = this;
+            if (next != null) {
+                next.previous = this;
+            }
+        }
+    }
+
+    private static final class SearchState {
+        private final BitSet linearized;
+        private final int reserved;
+
+        private SearchState(BitSet linearized, int reserved) {
+            this.linearized = linearized;
+            this.reserved = reserved;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof SearchState && ((SearchState) other).reserved == reserved
+                    && ((SearchState) other).linearized.equals(linearized);
+        }
+
+        @Override
+        public int hashCode() {
+            return linearized.hashCode() * 31 + reserved;
+        }
+    }
+}
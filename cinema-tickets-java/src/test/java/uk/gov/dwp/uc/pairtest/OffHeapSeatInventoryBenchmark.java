@@ -0,0 +1,88 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures heap and off heap footprint of OffHeapSeatInventory as the number
+ * of screenings grows, and reserve and release throughput on random
+ * screenings of the largest inventory.
+ * 
+ * Usage: OffHeapSeatInventoryBenchmark [screenings] [seatsPerScreening]
+ * [threads] [seconds]
+ * 
+ */
+public class OffHeapSeatInventoryBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int screenings = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int seatsPerScreening = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        OffHeapSeatInventory seatInventory = null;
+        for (int size = Math.max(1, screenings / 100); size <= screenings; size *= 10) {
+            seatInventory = null;
+            long heapBefore = usedHeap();
+            seatInventory = new OffHeapSeatInventory(size, seatsPerScreening);
+            long heapAfter = usedHeap();
+            System.out.printf("%,d screenings of %d seats: heap +%,d bytes, off heap %,d bytes, "
+                    + "direct pool %,d bytes%n", size, seatsPerScreening, heapAfter - heapBefore,
+                    seatInventory.getOffHeapBytes(), directPoolBytes());
+        }
+
+        for (int round = 0; round < 2; round++) {
+            LatencyRecorder[] recorders = run(seatInventory, threads, seconds);
+            LatencyRecorder.report("reserve and release, round " + (round + 1),
+                    TimeUnit.SECONDS.toNanos(seconds), recorders);
+        }
+    }
+
+    private static LatencyRecorder[] run(OffHeapSeatInventory seatInventory, int threads, int seconds)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        LatencyRecorder[] recorders = new LatencyRecorder[threads];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        for (int i = 0; i < threads; i++) {
+            LatencyRecorder recorder = new LatencyRecorder(1_000_000);
+            recorders[i] = recorder;
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    int screening = random.nextInt(seatInventory.getScreenings());
+                    int seats = 1 + random.nextInt(6);
+                    long start = System.nanoTime();
+                    if (seatInventory.reserve(screening, seats)) {
+                        seatInventory.release(screening, seats);
+                    }
+                    recorder.record(System.nanoTime() - start);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        return recorders;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long directPoolBytes() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return -1;
+    }
+}
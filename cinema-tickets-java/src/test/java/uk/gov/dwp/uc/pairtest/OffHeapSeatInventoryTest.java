@@ -0,0 +1,218 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import thirdparty.paymentgateway.TicketPaymentServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ *
+ * Seat inventory rules:
+ * - A reservation takes all of its seats or none
+ * - Seats are never reserved twice, however many threads reserve at once
+ * - Released seats can be reserved again
+ * - Availability reads and seat maps never show part of a reservation, unless
+ * writers keep them busy for every snapshot attempt
+ * - Reads busy for every snapshot attempt return an approximate copy rather
+ * than wait
+ *
+ */
+public class OffHeapSeatInventoryTest {
+
+    /**
+     *
+     * Reservations across words are all or nothing
+     *
+     * Parameters:
+     * 2 screenings of 70 seats (3 words each)
+     * Reserve 40, then 31, then 30 seats of screening 0
+     *
+     * Expected:
+     * 40 and 30 reserved, 31 refused, screening 0 full, screening 1 untouched
+     *
+     */
+    @Test
+    public void reservationsAreAllOrNothing() {
+        OffHeapSeatInventory seatInventory = new OffHeapSeatInventory(2, 70);
+
+        assertTrue(seatInventory.reserve(0, 40));
+        assertFalse(seatInventory.reserve(0, 31));
+        assertEquals(30, seatInventory.available(0));
+        assertTrue(seatInventory.reserve(0, 30));
+        assertEquals(0, seatInventory.available(0));
+        assertEquals(70, seatInventory.available(1));
+        for (int seat = 0; seat < 70; seat++) {
+            assertEquals(OffHeapSeatInventory.RESERVED, seatInventory.seatState(0, seat));
+        }
+
+        assertFalse(seatInventory.release(1, 1));
+        assertTrue(seatInventory.release(0, 45));
+        assertEquals(45, seatInventory.available(0));
+    }
+
+    /**
+     *
+     * Concurrent reservations and releases never oversell
+     *
+     * Parameters:
+     * 1 screening of 100 seats
+     * 8 threads each reserving 3 seats and releasing them 20000 times
+     *
+     * Expected:
+     * Reservations held at once never exceed 33
+     * All 100 seats free at the end
+     *
+     */
+    @Test
+    public void concurrentReservationsNeverOversell() throws InterruptedException {
+        OffHeapSeatInventory seatInventory = new OffHeapSeatInventory(1, 100);
+        AtomicInteger heldReservations = new AtomicInteger();
+        AtomicInteger maximumHeld = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < 20000; j++) {
+                    if (seatInventory.reserve(0, 3)) {
+                        maximumHeld.accumulateAndGet(heldReservations.incrementAndGet(), Math::max);
+                        heldReservations.decrementAndGet();
+                        assertTrue(seatInventory.release(0, 3));
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertTrue(maximumHeld.get() <= 33);
+        assertEquals(100, seatInventory.available(0));
+    }
+
+    /**
+     *
+     * Reads see whole reservations only
+     *
+     * Parameters:
+     * 1 screening of 90 seats (3 words)
+     * 4 threads each reserving 30 seats and releasing them 5000 times
+     * 1 thread reading availability and the seat map meanwhile
+     *
+     * Expected:
+     * Every exact available count is a multiple of 30
+     * Every exact seat map has no HELD seats and matches its available count
+     *
+     */
+    @Test
+    public void readsSeeWholeReservations() throws InterruptedException {
+        OffHeapSeatInventory seatInventory = new OffHeapSeatInventory(1, 90);
+        AtomicBoolean consistent = new AtomicBoolean(true);
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+
+        for (int i = 0; i < 4; i++) {
+            writers.execute(() -> {
+                for (int j = 0; j < 5000; j++) {
+                    if (seatInventory.reserve(0, 30)) {
+                        seatInventory.release(0, 30);
+                    }
+                }
+            });
+        }
+        writers.shutdown();
+
+        byte[] seatStates = new byte[90];
+        while (!writers.awaitTermination(0, TimeUnit.MILLISECONDS)) {
+            long approximateReads = seatInventory.getApproximateReads();
+            if (seatInventory.available(0) % 30 != 0 && seatInventory.getApproximateReads() == approximateReads) {
+                consistent.set(false);
+            }
+            approximateReads = seatInventory.getApproximateReads();
+            int available = seatInventory.seatMap(0, seatStates);
+            if (seatInventory.getApproximateReads() != approximateReads) {
+                continue;
+            }
+            int free = 0;
+            for (byte seatState : seatStates) {
+                if (seatState == OffHeapSeatInventory.HELD) {
+                    consistent.set(false);
+                }
+                free += seatState == OffHeapSeatInventory.FREE ? 1 : 0;
+            }
+            if (free != available || available % 30 != 0) {
+                consistent.set(false);
+            }
+        }
+
+        assertTrue(consistent.get());
+        assertEquals(90, seatInventory.seatMap(0, seatStates));
+    }
+
+    /**
+     *
+     * Reads give up on a snapshot while a move stays in flight
+     *
+     * Parameters:
+     * 1 screening of 40 seats (2 words), 10 reserved
+     * A move begun and not finished, as by a descheduled writer
+     *
+     * Expected:
+     * available and seatMap return 30 approximately, 2 approximate reads
+     * Once the move finishes, reads are exact again
+     *
+     */
+    @Test
+    public void readsDoNotWaitForStalledWriters() {
+        OffHeapSeatInventory seatInventory = new OffHeapSeatInventory(1, 40);
+        assertTrue(seatInventory.reserve(0, 10));
+
+        seatInventory.beginMove(0);
+        assertEquals(30, seatInventory.available(0));
+        assertEquals(30, seatInventory.seatMap(0, new byte[40]));
+        assertEquals(2, seatInventory.getApproximateReads());
+
+        seatInventory.endMove(0);
+        assertEquals(30, seatInventory.available(0));
+        assertEquals(2, seatInventory.getApproximateReads());
+    }
+
+    /**
+     *
+     * Purchases through a screening's seat reservation service use its seats
+     *
+     * Parameters:
+     * 1 screening of 5 seats
+     * Purchase 2 adult and 2 infant tickets, then 2 adult and 2 child tickets
+     *
+     * Expected:
+     * First purchase reserves 2 seats, second refused with Not enough seats
+     * available
+     *
+     */
+    @Test
+    public void purchasesReserveScreeningSeats() {
+        OffHeapSeatInventory seatInventory = new OffHeapSeatInventory(1, 5);
+        TicketPurchaseService ticketPurchaseService = new TicketPurchaseService(new TicketPaymentServiceImpl(),
+                new ScreeningSeatReservationService(seatInventory, 0));
+
+        ticketPurchaseService.purchase(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 2));
+        assertEquals(3, seatInventory.available(0));
+
+        try {
+            ticketPurchaseService.purchase(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                    new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 2));
+        } catch (InvalidPurchaseException e) {
+            assertEquals("Not enough seats available", e.getMessage());
+        }
+        assertEquals(3, seatInventory.available(0));
+    }
+}
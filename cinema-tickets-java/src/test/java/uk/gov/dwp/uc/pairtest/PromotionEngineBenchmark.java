@@ -0,0 +1,93 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import uk.gov.dwp.uc.pairtest.domain.PricingContext;
+import uk.gov.dwp.uc.pairtest.domain.Promotion;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ * Measures compile time and per order pricing cost of PromotionEngine as the
+ * number of active promotions grows, against summing list prices.
+ * 
+ * Usage: PromotionEngineBenchmark [maxPromotions] [lookups]
+ * 
+ */
+public class PromotionEngineBenchmark {
+
+    public static void main(String[] args) {
+        int maxPromotions = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 50_000_000;
+
+        // Random valid order shapes, at most 20 tickets and no more infants
+        // than adults
+        int shapes = 4096;
+        int[] adults = new int[shapes];
+        int[] children = new int[shapes];
+        int[] infants = new int[shapes];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < shapes; i++) {
+            adults[i] = 1 + random.nextInt(10);
+            children[i] = random.nextInt(21 - adults[i]);
+            infants[i] = random.nextInt(Math.min(adults[i], 20 - adults[i] - children[i]) + 1);
+        }
+
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            long sink = 0;
+            for (int i = 0; i < lookups; i++) {
+                int shape = i & (shapes - 1);
+                sink += adults[shape] * TicketTypeRequest.Type.ADULT.price
+                        + children[shape] * TicketTypeRequest.Type.CHILD.price
+                        + infants[shape] * TicketTypeRequest.Type.INFANT.price;
+            }
+            System.out.printf("list prices: %.2f ns/order (%d)%n", (System.nanoTime() - start) / (double) lookups,
+                    sink);
+
+            for (int promotionCount = 1; promotionCount <= maxPromotions; promotionCount *= 4) {
+                List<Promotion> promotions = promotions(promotionCount);
+                long compileStart = System.nanoTime();
+                PromotionEngine promotionEngine = new PromotionEngine(20, promotions);
+                long compileNanos = System.nanoTime() - compileStart;
+
+                PricingContext[] pricingContexts = PricingContext.values();
+                start = System.nanoTime();
+                sink = 0;
+                for (int i = 0; i < lookups; i++) {
+                    int shape = i & (shapes - 1);
+                    sink += promotionEngine.price(pricingContexts[i & 3], adults[shape], children[shape],
+                            infants[shape]);
+                }
+                System.out.printf("%d promotions: compiled in %.2f ms, %.2f ns/order (%d)%n", promotionCount,
+                        compileNanos / 1e6, (System.nanoTime() - start) / (double) lookups, sink);
+            }
+        }
+    }
+
+    /**
+     * A mix of bundles, percentages and member prices
+     * 
+     */
+    private static List<Promotion> promotions(int count) {
+        List<Promotion> promotions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            switch (i % 4) {
+            case 0:
+                promotions.add(Promotion.bundle("Family " + i, 1 + i % 3, 1 + i % 4, 0, 25 + i % 40, false, false));
+                break;
+            case 1:
+                promotions.add(Promotion.bundle("Group " + i, 3 + i % 5, 0, i % 2, 50 + i % 30, i % 8 == 1, false));
+                break;
+            case 2:
+                promotions.add(Promotion.percentOff("Discount " + i, 5 + i % 25, true, i % 8 == 2));
+                break;
+            default:
+                promotions.add(Promotion.ticketPrice("Member " + i, TicketTypeRequest.Type.values()[i % 2],
+                        8 + i % 10, false, true));
+            }
+        }
+        return promotions;
+    }
+}
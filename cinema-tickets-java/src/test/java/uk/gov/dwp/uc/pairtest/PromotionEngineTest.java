@@ -0,0 +1,126 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.domain.PricingContext;
+import uk.gov.dwp.uc.pairtest.domain.Promotion;
+import uk.gov.dwp.uc.pairtest.domain.TicketPurchaseReceipt;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ *
+ * Promotion rules:
+ * - An order pays the cheapest mix of bundles and single tickets
+ * - Bundles apply as many times as they fit an order
+ * - Only promotions qualifying in the pricing context apply
+ * - The largest qualifying percentage comes off the best price
+ * 
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PromotionEngineTest {
+
+    List<Promotion> promotions = Arrays.asList(
+            Promotion.bundle("Family", 2, 2, 0, 50, false, false),
+            Promotion.bundle("Couple", 2, 0, 0, 36, false, false),
+            Promotion.percentOff("Off peak", 20, true, false),
+            Promotion.percentOff("Off peak members", 30, true, true),
+            Promotion.ticketPrice("Member adult", TicketTypeRequest.Type.ADULT, 15, false, true));
+
+    PromotionEngine promotionEngine = new PromotionEngine(20, promotions);
+
+    @Mock
+    TicketPaymentService mockTicketPaymentService;
+
+    @Mock
+    SeatReservationService mockSeatReservationService;
+
+    /**
+     * 
+     * Bundles combine for the best standard price
+     * 
+     * Parameters:
+     * Family: 2 adult and 2 child for 50, Couple: 2 adult for 36
+     * 
+     * Expected:
+     * 1 adult: 20 (list)
+     * 2 adult 2 child: 50 (Family)
+     * 3 adult 2 child: 70 (Family + 1 adult)
+     * 4 adult 2 child: 86 (Family + Couple)
+     * 4 adult 4 child: 100 (2 x Family)
+     * 2 adult 1 child 1 infant: 46 (Couple + 1 child)
+     * 
+     */
+    @Test
+    public void bundlesCombineForBestPrice() {
+        assertEquals(20, promotionEngine.price(PricingContext.STANDARD, 1, 0, 0));
+        assertEquals(50, promotionEngine.price(PricingContext.STANDARD, 2, 2, 0));
+        assertEquals(70, promotionEngine.price(PricingContext.STANDARD, 3, 2, 0));
+        assertEquals(86, promotionEngine.price(PricingContext.STANDARD, 4, 2, 0));
+        assertEquals(100, promotionEngine.price(PricingContext.STANDARD, 4, 4, 0));
+        assertEquals(46, promotionEngine.price(PricingContext.STANDARD, 2, 1, 1));
+    }
+
+    /**
+     * 
+     * Context decides which promotions apply
+     * 
+     * Parameters:
+     * 3 adult tickets in each pricing context
+     * 
+     * Expected:
+     * Standard: 56 (Couple + 1 adult)
+     * Off peak: 44 (56 less 20%)
+     * Member: 45 (3 x 15 member adult)
+     * Member off peak: 31 (45 less 30%, rounded down)
+     * Over 20 tickets: list price 420
+     * 
+     */
+    @Test
+    public void contextDecidesPromotions() {
+        assertEquals(56, promotionEngine.price(PricingContext.STANDARD, 3, 0, 0));
+        assertEquals(44, promotionEngine.price(PricingContext.OFF_PEAK, 3, 0, 0));
+        assertEquals(45, promotionEngine.price(PricingContext.MEMBER, 3, 0, 0));
+        assertEquals(31, promotionEngine.price(PricingContext.MEMBER_OFF_PEAK, 3, 0, 0));
+        assertEquals(420, promotionEngine.price(PricingContext.STANDARD, 21, 0, 0));
+    }
+
+    /**
+     * 
+     * Purchases are charged the promoted price
+     * 
+     * Parameters:
+     * Account ID: 1
+     * Adult Tickets: 2
+     * Child Tickets: 2
+     * Off peak
+     * 
+     * Expected:
+     * Payment of 40 (Family less 20%)
+     * Receipt total cost 40
+     * 
+     */
+    @Test
+    public void purchasesChargePromotedPrice() {
+        TicketPurchaseService ticketPurchaseService = new TicketPurchaseService(mockTicketPaymentService,
+                mockSeatReservationService);
+        ticketPurchaseService.setPromotionEngine(promotionEngine);
+
+        TicketPurchaseReceipt receipt = ticketPurchaseService.purchase(1L, PricingContext.OFF_PEAK,
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 2));
+
+        Mockito.verify(mockTicketPaymentService, Mockito.times(1)).makePayment(1L, 40);
+        Mockito.verify(mockSeatReservationService, Mockito.times(1)).reserveSeat(1L, 4);
+        assertEquals(40, receipt.getTotalCost());
+    }
+}
@@ -0,0 +1,74 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import thirdparty.paymentgateway.TicketPaymentServiceImpl;
+import thirdparty.seatbooking.SeatReservationServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ * Compares purchase throughput through TicketServiceImpl with and without the
+ * audit log, for each full buffer policy.
+ * 
+ * Usage: PurchaseAuditLogBenchmark [threads] [seconds]
+ * 
+ */
+public class PurchaseAuditLogBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        TicketService bare = new TicketServiceImpl(new ValidationService(),
+                new TicketPurchaseService(new TicketPaymentServiceImpl(), new SeatReservationServiceImpl()));
+        run("warm-up", bare, threads, seconds);
+        double bareRate = run("bare", bare, threads, seconds);
+
+        for (PurchaseAuditLog.FullBufferPolicy policy : PurchaseAuditLog.FullBufferPolicy.values()) {
+            Path directory = Files.createTempDirectory("purchase-audit");
+            try (PurchaseAuditLog auditLog = new PurchaseAuditLog(directory, 1 << 16, policy, 16, 64L << 20)) {
+                double auditedRate = run("audited " + policy, new AuditingTicketService(bare, auditLog), threads,
+                        seconds);
+                System.out.printf("  overhead %.1f ns/purchase, dropped %d%n",
+                        (1e9 / auditedRate - 1e9 / bareRate) * threads, auditLog.getDropped());
+            }
+            try (var files = Files.list(directory)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static double run(String label, TicketService ticketService, int threads, int seconds)
+            throws InterruptedException {
+        TicketTypeRequest[] order = { new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1),
+                new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1) };
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        LongAdder operations = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < threads; i++) {
+            long accountId = i + 1;
+            executor.execute(() -> {
+                long count = 0;
+                while ((count & 1023) != 0 || System.nanoTime() < deadline) {
+                    ticketService.purchaseTickets(accountId, order);
+                    count++;
+                }
+                operations.add(count);
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        double rate = operations.sum() * 1e9 / (System.nanoTime() - start);
+        System.out.printf("%s: %.0f purchases/s%n", label, rate);
+        return rate;
+    }
+}
@@ -0,0 +1,206 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ *
+ * Audit rules:
+ * - Every purchase attempt is recorded with its ticket counts and outcome
+ * - Rejections are recorded with their reason, other failures as FAILED with
+ * theirs, whatever the reason text
+ * - Reason codes stay the same across restarts
+ * - Audit files roll once they reach the configured size
+ * 
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PurchaseAuditLogTest {
+
+    Path directory;
+    TicketService ticketService;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    TicketPaymentService mockTicketPaymentService;
+
+    @Mock
+    SeatReservationService mockSeatReservationService;
+
+    @Before
+    public void setup() {
+        directory = temporaryFolder.getRoot().toPath().resolve("audit");
+        ticketService = new TicketServiceImpl(new ValidationService(),
+                new TicketPurchaseService(mockTicketPaymentService, mockSeatReservationService));
+    }
+
+    /**
+     * 
+     * Accepted, rejected and failed attempts are recorded
+     * 
+     * Parameters:
+     * Account ID: 1, Adult Tickets: 2, Infant Tickets: 1 (accepted)
+     * Account ID: null, Adult Tickets: 1 (rejected)
+     * Account ID: 2, Child Tickets: 3 (rejected)
+     * Account ID: 3, Adult Tickets: 1, payment fails with Card declined
+     * 
+     * Expected:
+     * 4 records in order with outcomes accepted, Invalid Account Id, Child or
+     * infant tickets cannot be purchased without adult tickets, FAILED with
+     * Card declined
+     * 
+     */
+    @Test
+    public void attemptsAreRecordedWithOutcome() throws IOException {
+        Mockito.doThrow(new IllegalStateException("Card declined")).when(mockTicketPaymentService)
+                .makePayment(3L, 20);
+
+        try (PurchaseAuditLog auditLog = new PurchaseAuditLog(directory, 8,
+                PurchaseAuditLog.FullBufferPolicy.BLOCK, 1, 1 << 20)) {
+            AuditingTicketService auditingTicketService = new AuditingTicketService(ticketService, auditLog);
+
+            auditingTicketService.purchaseTickets(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                    new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1));
+            attempt(auditingTicketService, null, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+            attempt(auditingTicketService, 2L, new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 3));
+            attempt(auditingTicketService, 3L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+        }
+
+        List<String> records = readRecords();
+        assertEquals(4, records.size());
+        assertEquals("1,2,0,1,accepted", records.get(0));
+        assertEquals(Long.MIN_VALUE + ",1,0,0,Invalid Account Id", records.get(1));
+        assertEquals("2,0,3,0,Child or infant tickets cannot be purchased without adult tickets", records.get(2));
+        assertEquals("3,1,0,0,failed Card declined", records.get(3));
+    }
+
+    /**
+     * 
+     * Audit files roll at the configured size
+     * 
+     * Parameters:
+     * 10000 attempts from 4 threads
+     * Files roll at 64 records
+     * 
+     * Expected:
+     * 10000 records over several files, none larger than 64 records
+     * 
+     */
+    @Test
+    public void auditFilesRoll() throws Exception {
+        try (PurchaseAuditLog auditLog = new PurchaseAuditLog(directory, 256,
+                PurchaseAuditLog.FullBufferPolicy.BLOCK, 1, 64 * PurchaseAuditLog.RECORD_BYTES)) {
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    TicketTypeRequest[] order = { new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1) };
+                    for (int j = 0; j < 2500; j++) {
+                        auditLog.record(1L, order, null, false);
+                    }
+                });
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(0, auditLog.getDropped());
+        }
+
+        long files;
+        try (var paths = Files.list(directory)) {
+            files = paths.peek(path -> {
+                try {
+                    assertTrue(Files.size(path) <= 64 * PurchaseAuditLog.RECORD_BYTES);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }).count();
+        }
+        assertTrue(files > 1);
+        assertEquals(10000, readRecords().size());
+    }
+
+    /**
+     * 
+     * Reasons outside the validation messages are recorded and keep their
+     * codes after a restart
+     * 
+     * Parameters:
+     * Account ID: 1, rejected with Not enough seats available
+     * Restart
+     * Account ID: 2, rejected with Not enough seats available
+     * Account ID: 3, rejected with Basket cannot be null or empty
+     * 
+     * Expected:
+     * 3 records with their reasons, one dictionary entry per distinct reason
+     * 
+     */
+    @Test
+    public void anyReasonIsRecorded() throws IOException {
+        TicketTypeRequest[] order = { new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1) };
+        try (PurchaseAuditLog auditLog = new PurchaseAuditLog(directory, 8,
+                PurchaseAuditLog.FullBufferPolicy.BLOCK, 1, 1 << 20)) {
+            auditLog.record(1L, order, "Not enough seats available", false);
+        }
+        try (PurchaseAuditLog auditLog = new PurchaseAuditLog(directory, 8,
+                PurchaseAuditLog.FullBufferPolicy.BLOCK, 1, 1 << 20)) {
+            auditLog.record(2L, order, "Not enough seats available", false);
+            auditLog.record(3L, order, "Basket cannot be null or empty", false);
+        }
+
+        assertEquals(List.of("1,1,0,0,Not enough seats available", "2,1,0,0,Not enough seats available",
+                "3,1,0,0,Basket cannot be null or empty"), readRecords());
+        assertEquals(2, PurchaseAuditLog.readReasons(directory).size());
+    }
+
+    private void attempt(TicketService auditingTicketService, Long accountId, TicketTypeRequest request) {
+        try {
+            auditingTicketService.purchaseTickets(accountId, request);
+        } catch (RuntimeException e) {
+            // recorded by the audit log
+        }
+    }
+
+    private List<String> readRecords() throws IOException {
+        Map<Integer, String> reasons = PurchaseAuditLog.readReasons(directory);
+        List<String> records = new ArrayList<>();
+        for (int index = 1; Files.exists(directory.resolve("audit-" + index + ".log")); index++) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(directory.resolve("audit-" + index + ".log")));
+            while (buffer.hasRemaining()) {
+                buffer.getLong();
+                long accountId = buffer.getLong();
+                String counts = buffer.getInt() + "," + buffer.getInt() + "," + buffer.getInt();
+                byte outcome = buffer.get();
+                buffer.get();
+                String reason = reasons.get(buffer.getShort() & 0xFFFF);
+
+                records.add(accountId + "," + counts + ","
+                        + (outcome == PurchaseAuditLog.ACCEPTED ? "accepted"
+                                : outcome == PurchaseAuditLog.FAILED ? "failed " + reason : reason));
+            }
+        }
+        return records;
+    }
+}
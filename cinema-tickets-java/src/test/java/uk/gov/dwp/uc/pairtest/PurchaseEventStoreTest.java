@@ -0,0 +1,168 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ *
+ * Event store rules:
+ * - Completed purchases are applied to the ledger
+ * - The ledger is rebuilt on restart from the snapshot and the log after it
+ * - A partially written trailing record is discarded
+ * - Purchases are flushed and snapshotted in the background without a call
+ * 
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PurchaseEventStoreTest {
+
+    Path directory;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    TicketPaymentService mockTicketPaymentService;
+
+    @Mock
+    SeatReservationService mockSeatReservationService;
+
+    @Before
+    public void setup() {
+        directory = temporaryFolder.getRoot().toPath().resolve("purchases");
+    }
+
+    /**
+     * 
+     * Ledger is rebuilt after restart
+     * 
+     * Parameters:
+     * Snapshot every 4 purchases
+     * 10 purchases, Account IDs 1 and 2 alternating
+     * Adult Tickets: 2
+     * Child Tickets: 1
+     * Infant Tickets: 1
+     * 
+     * Expected:
+     * 20 adult, 10 child, 10 infant tickets sold
+     * 30 seats reserved, revenue 500
+     * Each account: 5 purchases, 15 seats, 250 paid
+     * 
+     */
+    @Test
+    public void ledgerIsRebuiltAfterRestart() throws IOException {
+        try (PurchaseEventStore store = PurchaseEventStore.open(directory, 4)) {
+            TicketPurchaseService ticketPurchaseService = new TicketPurchaseService(mockTicketPaymentService,
+                    mockSeatReservationService);
+            ticketPurchaseService.addPurchaseListener(store);
+            for (int i = 0; i < 10; i++) {
+                ticketPurchaseService.purchase(1L + i % 2, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                        new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1),
+                        new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1));
+            }
+            assertLedger(store.getLedger());
+        }
+
+        try (PurchaseEventStore store = PurchaseEventStore.open(directory, 4)) {
+            assertLedger(store.getLedger());
+        }
+    }
+
+    /**
+     * 
+     * Partially written trailing record is discarded
+     * 
+     * Parameters:
+     * 1 purchase logged, then 7 bytes of a second record
+     * 
+     * Expected:
+     * 1 purchase in the ledger
+     * 
+     */
+    @Test
+    public void partialRecordIsDiscarded() throws IOException {
+        try (PurchaseEventStore store = PurchaseEventStore.open(directory, 0)) {
+            store.purchaseCompleted(3L, 1, 0, 0, 1, 20);
+        }
+        try (FileChannel log = FileChannel.open(directory.resolve("purchases.log"), StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            log.write(ByteBuffer.allocate(7));
+        }
+
+        try (PurchaseEventStore store = PurchaseEventStore.open(directory, 0)) {
+            assertEquals(1, store.getLedger().getPurchases());
+            assertEquals(20, store.getLedger().getAccountAmountPaid(3L));
+            store.purchaseCompleted(3L, 1, 0, 0, 1, 20);
+        }
+
+        try (PurchaseEventStore store = PurchaseEventStore.open(directory, 0)) {
+            assertEquals(2, store.getLedger().getPurchases());
+            assertEquals(40, store.getLedger().getAccountAmountPaid(3L));
+        }
+    }
+
+    /**
+     * 
+     * Purchases are flushed and snapshotted in the background
+     * 
+     * Parameters:
+     * Snapshot every 4 purchases, flush every 10 milliseconds
+     * 5 purchases, no flush, snapshot or close
+     * 
+     * Expected:
+     * Log holds 5 records and a snapshot exists within 10 seconds
+     * 
+     */
+    @Test
+    public void purchasesArePersistedInBackground() throws Exception {
+        try (PurchaseEventStore store = PurchaseEventStore.open(directory, 4, 10)) {
+            for (int i = 0; i < 5; i++) {
+                store.purchaseCompleted(3L, 1, 0, 0, 1, 20);
+            }
+
+            Path log = directory.resolve("purchases.log");
+            Path snapshot = directory.resolve("purchases.snapshot");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while ((Files.size(log) < 5 * PurchaseEventStore.RECORD_BYTES || !Files.exists(snapshot))
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+
+            assertEquals(5 * PurchaseEventStore.RECORD_BYTES, Files.size(log));
+            assertTrue(Files.exists(snapshot));
+            assertEquals(0, store.getBackgroundFailures());
+        }
+    }
+
+    private void assertLedger(PurchaseLedger ledger) {
+        assertEquals(10, ledger.getPurchases());
+        assertEquals(20, ledger.getTicketsSold(TicketTypeRequest.Type.ADULT));
+        assertEquals(10, ledger.getTicketsSold(TicketTypeRequest.Type.CHILD));
+        assertEquals(10, ledger.getTicketsSold(TicketTypeRequest.Type.INFANT));
+        assertEquals(30, ledger.getSeatsReserved());
+        assertEquals(500, ledger.getRevenue());
+        for (long accountId = 1; accountId <= 2; accountId++) {
+            assertEquals(5, ledger.getAccountPurchases(accountId));
+            assertEquals(15, ledger.getAccountSeats(accountId));
+            assertEquals(250, ledger.getAccountAmountPaid(accountId));
+        }
+    }
+}
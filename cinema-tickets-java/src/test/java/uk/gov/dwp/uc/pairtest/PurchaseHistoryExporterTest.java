@@ -0,0 +1,204 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * Export rules:
+ * - One row per ticket type bought in a purchase, types with no tickets are
+ * left out
+ * - Rows read back in purchase order across row groups
+ * - Amounts are what was paid, apportioned by list price across the rows
+ * - Rows from many threads are all exported, in order for each thread
+ * - Stripes share few row groups without dropping rows while the writer keeps
+ * up
+ * - There is at least one more row group than stripes
+ * 
+ */
+public class PurchaseHistoryExporterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * 
+     * Exported purchases read back row by row
+     * 
+     * Parameters:
+     * Row groups of 7 rows
+     * 10 purchases, Account IDs 100 down to 91
+     * Adult Tickets: 2
+     * Child Tickets: 1 for even account ids, 0 otherwise
+     * Infant Tickets: 1
+     * 
+     * Expected:
+     * 25 rows in purchase order
+     * Amounts: 40 for adults, 10 for children, 0 for infants
+     * 
+     */
+    @Test
+    public void exportedPurchasesReadBack() throws IOException {
+        Path file = temporaryFolder.getRoot().toPath().resolve("purchases.col");
+        long before = System.currentTimeMillis();
+        try (PurchaseHistoryExporter exporter = new PurchaseHistoryExporter(file, 7, 4)) {
+            for (long accountId = 100; accountId > 90; accountId--) {
+                int childTickets = accountId % 2 == 0 ? 1 : 0;
+                exporter.purchaseCompleted(accountId, 2, childTickets, 1, 2 + childTickets, 40 + childTickets * 10);
+            }
+            assertEquals(0, exporter.getDroppedRows());
+        }
+
+        List<String> rows = new ArrayList<>();
+        long read = PurchaseHistoryReader.read(file, (timestamp, accountId, ticketType, count, amount) -> {
+            assertTrue(timestamp >= before && timestamp <= System.currentTimeMillis());
+            rows.add(accountId + "," + ticketType + "," + count + "," + amount);
+        });
+
+        List<String> expected = new ArrayList<>();
+        for (long accountId = 100; accountId > 90; accountId--) {
+            expected.add(accountId + ",ADULT,2,40");
+            if (accountId % 2 == 0) {
+                expected.add(accountId + ",CHILD,1,10");
+            }
+            expected.add(accountId + ",INFANT,1,0");
+        }
+        assertEquals(25, read);
+        assertEquals(expected, rows);
+    }
+
+    /**
+     * 
+     * Exported amounts are what was paid
+     * 
+     * Parameters:
+     * Account ID: 1, 2 adult and 1 child tickets paid 37 (list price 50)
+     * Account ID: 2, 1 adult and 1 infant ticket paid 15 (list price 20)
+     * 
+     * Expected:
+     * Account 1 amounts: 29 for adults, 8 for children
+     * Account 2 amounts: 15 for adults, 0 for infants
+     * 
+     */
+    @Test
+    public void exportedAmountsArePaidAmounts() throws IOException {
+        Path file = temporaryFolder.getRoot().toPath().resolve("purchases.col");
+        try (PurchaseHistoryExporter exporter = new PurchaseHistoryExporter(file, 7, 4)) {
+            exporter.purchaseCompleted(1L, 2, 1, 0, 3, 37);
+            exporter.purchaseCompleted(2L, 1, 0, 1, 1, 15);
+        }
+
+        List<String> rows = new ArrayList<>();
+        PurchaseHistoryReader.read(file, (timestamp, accountId, ticketType, count, amount) -> rows
+                .add(accountId + "," + ticketType + "," + count + "," + amount));
+
+        assertEquals(List.of("1,ADULT,2,29", "1,CHILD,1,8", "2,ADULT,1,15", "2,INFANT,1,0"), rows);
+    }
+
+    /**
+     * 
+     * Rows from concurrent purchasers are all exported
+     * 
+     * Parameters:
+     * 4 stripes, row groups of 64 rows, 64 row groups
+     * 8 threads, 500 purchases each of 1 adult ticket, account id the thread
+     * number, amount paid the purchase number
+     * 
+     * Expected:
+     * No rows dropped, 4000 rows, each thread's amounts in purchase order
+     * 
+     */
+    @Test
+    public void concurrentPurchasesAreExported() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("purchases.col");
+        try (PurchaseHistoryExporter exporter = new PurchaseHistoryExporter(file, 64, 64, 4)) {
+            Thread[] threads = new Thread[8];
+            for (int t = 0; t < threads.length; t++) {
+                long accountId = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        exporter.purchaseCompleted(accountId, 1, 0, 0, 1, i);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(0, exporter.getDroppedRows());
+        }
+
+        int[] nextAmount = new int[8];
+        long read = PurchaseHistoryReader.read(file, (timestamp, accountId, ticketType, count, amount) -> {
+            assertEquals(nextAmount[(int) accountId]++, amount);
+        });
+        assertEquals(4000, read);
+    }
+
+    /**
+     * 
+     * Few row groups are shared by many threads
+     * 
+     * Parameters:
+     * 2 stripes, row groups of 10 rows, 3 row groups
+     * 16 threads one after another, 25 purchases each of 1 adult ticket 1 ms
+     * apart, account id the thread number, amount paid the purchase number
+     * 
+     * Expected:
+     * No rows dropped, 400 rows, each thread's amounts in purchase order
+     * 
+     */
+    @Test
+    public void fewRowGroupsAreShared() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("purchases.col");
+        try (PurchaseHistoryExporter exporter = new PurchaseHistoryExporter(file, 10, 3, 2)) {
+            for (int t = 0; t < 16; t++) {
+                long accountId = t;
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        exporter.purchaseCompleted(accountId, 1, 0, 0, 1, i);
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                });
+                thread.start();
+                thread.join();
+            }
+            assertEquals(0, exporter.getDroppedRows());
+        }
+
+        int[] nextAmount = new int[16];
+        long read = PurchaseHistoryReader.read(file, (timestamp, accountId, ticketType, count, amount) -> {
+            assertEquals(nextAmount[(int) accountId]++, amount);
+        });
+        assertEquals(400, read);
+    }
+
+    /**
+     * 
+     * Row groups must outnumber stripes
+     * 
+     * Parameters:
+     * 4 stripes, 4 row groups
+     * 
+     * Expected:
+     * IllegalArgumentException
+     * 
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rowGroupsOutnumberStripes() throws IOException {
+        new PurchaseHistoryExporter(temporaryFolder.getRoot().toPath().resolve("purchases.col"), 10, 4, 4);
+    }
+}
@@ -0,0 +1,288 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ *
+ * Outbox rules:
+ * - Failed payments record a seat release instead of releasing inline
+ * - Recorded compensations survive a restart until replayed
+ * - A failed replay is retried and later records are not skipped
+ * - A record failing every attempt is dead lettered so later records drain
+ * - Compensations the outbox cannot record are run directly
+ * - Every append completes, durably or exceptionally, however it races close
+ * 
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PurchaseOutboxTest {
+
+    Path directory;
+    PurchaseOutbox outbox;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    TicketPaymentService mockTicketPaymentService;
+
+    @Mock
+    SeatReservationService mockSeatReservationService;
+
+    @Before
+    public void setup() throws IOException {
+        directory = temporaryFolder.getRoot().toPath().resolve("outbox");
+        outbox = new PurchaseOutbox(directory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        outbox.close();
+    }
+
+    /**
+     * 
+     * Failed payment records a seat release which the drainer replays
+     * 
+     * Parameters:
+     * Account ID: 1
+     * Adult Tickets: 2
+     * Payment: fails
+     * 
+     * Expected:
+     * No inline release
+     * 2 seats released once drained
+     * 
+     */
+    @Test
+    public void failedPaymentIsCompensatedThroughOutbox() throws Exception {
+        Mockito.doThrow(new IllegalStateException("Card declined")).when(mockTicketPaymentService)
+                .makePayment(1L, 40);
+        TicketPurchaseService ticketPurchaseService = new TicketPurchaseService(mockTicketPaymentService,
+                mockSeatReservationService, null, outbox);
+
+        try {
+            ticketPurchaseService.purchase(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2));
+            fail("Expected payment failure");
+        } catch (IllegalStateException e) {
+            assertEquals("Card declined", e.getMessage());
+        }
+        Mockito.verify(mockSeatReservationService, Mockito.never()).releaseSeat(Mockito.anyLong(), Mockito.anyInt());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (outbox.getCommittedPosition() < PurchaseOutbox.RECORD_BYTES && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        new PurchaseOutboxDrainer(outbox, mockSeatReservationService, mockTicketPaymentService, 10).run();
+
+        Mockito.verify(mockSeatReservationService).releaseSeat(1L, 2);
+        Mockito.verify(mockTicketPaymentService, Mockito.never()).refundPayment(Mockito.anyLong(), Mockito.anyInt());
+        assertEquals(outbox.getCommittedPosition(), outbox.getCheckpoint());
+    }
+
+    /**
+     * 
+     * Compensations survive a restart and are replayed once
+     * 
+     * Parameters:
+     * 100 refunds of 20, Account IDs 1 to 100, drained in batches of 30
+     * 
+     * Expected:
+     * Every refund replayed exactly once across restarts
+     * 
+     */
+    @Test
+    public void compensationsSurviveRestart() throws Exception {
+        CompletableFuture<?>[] appends = new CompletableFuture<?>[100];
+        for (int i = 0; i < appends.length; i++) {
+            appends[i] = outbox.append(PurchaseOutbox.Compensation.REFUND_PAYMENT, i + 1, 20);
+        }
+        CompletableFuture.allOf(appends).get(10, TimeUnit.SECONDS);
+        PurchaseOutboxDrainer drainer = new PurchaseOutboxDrainer(outbox, mockSeatReservationService,
+                mockTicketPaymentService, 30);
+        assertEquals(30, drainer.drainBatch());
+        outbox.close();
+
+        outbox = new PurchaseOutbox(directory);
+        new PurchaseOutboxDrainer(outbox, mockSeatReservationService, mockTicketPaymentService, 30).run();
+
+        for (long accountId = 1; accountId <= 100; accountId++) {
+            Mockito.verify(mockTicketPaymentService).refundPayment(accountId, 20);
+        }
+        Mockito.verifyNoMoreInteractions(mockTicketPaymentService);
+    }
+
+    /**
+     * 
+     * Failed replay is retried on the next run
+     * 
+     * Parameters:
+     * Release 1 seat for Account IDs 1, 2 and 3
+     * First release for account 2 fails
+     * 
+     * Expected:
+     * First run replays account 1 only
+     * Second run replays accounts 2 and 3
+     * 
+     */
+    @Test
+    public void failedReplayIsRetried() throws Exception {
+        Mockito.doThrow(new IllegalStateException("Unavailable")).doNothing().when(mockSeatReservationService)
+                .releaseSeat(2L, 1);
+        for (long accountId = 1; accountId <= 3; accountId++) {
+            outbox.append(PurchaseOutbox.Compensation.RELEASE_SEATS, accountId, 1).get(10, TimeUnit.SECONDS);
+        }
+        PurchaseOutboxDrainer drainer = new PurchaseOutboxDrainer(outbox, mockSeatReservationService,
+                mockTicketPaymentService, 10);
+
+        drainer.run();
+        Mockito.verify(mockSeatReservationService).releaseSeat(1L, 1);
+        Mockito.verify(mockSeatReservationService, Mockito.never()).releaseSeat(3L, 1);
+        assertEquals(PurchaseOutbox.RECORD_BYTES, outbox.getCheckpoint());
+
+        drainer.run();
+        Mockito.verify(mockSeatReservationService, Mockito.times(1)).releaseSeat(1L, 1);
+        Mockito.verify(mockSeatReservationService, Mockito.times(2)).releaseSeat(2L, 1);
+        Mockito.verify(mockSeatReservationService, Mockito.times(1)).releaseSeat(3L, 1);
+        assertEquals(outbox.getCommittedPosition(), outbox.getCheckpoint());
+    }
+
+    /**
+     * 
+     * Record failing every attempt is dead lettered
+     * 
+     * Parameters:
+     * Release 1 seat for Account IDs 1, 2 and 3
+     * Every release for account 2 fails, 3 attempts allowed
+     * 
+     * Expected:
+     * Account 2 released 3 times then dead lettered
+     * Accounts 1 and 3 released once, checkpoint at the end of the log
+     * 
+     */
+    @Test
+    public void failingReplayIsDeadLettered() throws Exception {
+        Mockito.doThrow(new IllegalStateException("Unknown account")).when(mockSeatReservationService)
+                .releaseSeat(2L, 1);
+        for (long accountId = 1; accountId <= 3; accountId++) {
+            outbox.append(PurchaseOutbox.Compensation.RELEASE_SEATS, accountId, 1).get(10, TimeUnit.SECONDS);
+        }
+        PurchaseOutboxDrainer drainer = new PurchaseOutboxDrainer(outbox, mockSeatReservationService,
+                mockTicketPaymentService, 10, 3);
+
+        for (int run = 0; run < 4; run++) {
+            drainer.run();
+        }
+
+        Mockito.verify(mockSeatReservationService, Mockito.times(1)).releaseSeat(1L, 1);
+        Mockito.verify(mockSeatReservationService, Mockito.times(3)).releaseSeat(2L, 1);
+        Mockito.verify(mockSeatReservationService, Mockito.times(1)).releaseSeat(3L, 1);
+        assertEquals(outbox.getCommittedPosition(), outbox.getCheckpoint());
+        assertEquals(1, drainer.getDeadLettered());
+
+        List<Long> deadLetters = new ArrayList<>();
+        outbox.readDeadLetters((compensation, accountId, quantity) -> deadLetters.add(accountId));
+        assertEquals(List.of(2L), deadLetters);
+    }
+
+    /**
+     * 
+     * Compensation is run directly when the outbox is closed
+     * 
+     * Parameters:
+     * Account ID: 1
+     * Adult Tickets: 2
+     * Payment: fails
+     * Outbox: closed
+     * 
+     * Expected:
+     * 2 seats released inline
+     * 
+     */
+    @Test
+    public void closedOutboxCompensatesDirectly() throws Exception {
+        Mockito.doThrow(new IllegalStateException("Card declined")).when(mockTicketPaymentService)
+                .makePayment(1L, 40);
+        TicketPurchaseService ticketPurchaseService = new TicketPurchaseService(mockTicketPaymentService,
+                mockSeatReservationService, null, outbox);
+        outbox.close();
+
+        try {
+            ticketPurchaseService.purchase(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2));
+            fail("Expected payment failure");
+        } catch (IllegalStateException e) {
+            assertEquals("Card declined", e.getMessage());
+        }
+
+        Mockito.verify(mockSeatReservationService).releaseSeat(1L, 2);
+        assertEquals(0, ticketPurchaseService.getFailedCompensations());
+    }
+
+    /**
+     * 
+     * Appends racing close all complete
+     * 
+     * Parameters:
+     * 4 threads appending refunds of 20 while the outbox is closed
+     * 
+     * Expected:
+     * Every append future completes within 10 seconds, either durably or with
+     * Outbox closed
+     * 
+     */
+    @Test
+    public void appendsRacingCloseComplete() throws Exception {
+        ExecutorService appenders = Executors.newFixedThreadPool(4);
+        List<Future<List<CompletableFuture<Void>>>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                long accountId = i + 1;
+                results.add(appenders.submit(() -> {
+                    List<CompletableFuture<Void>> appends = new ArrayList<>();
+                    for (int j = 0; j < 5000; j++) {
+                        appends.add(outbox.append(PurchaseOutbox.Compensation.REFUND_PAYMENT, accountId, 20));
+                    }
+                    return appends;
+                }));
+            }
+            Thread.sleep(1);
+            outbox.close();
+
+            for (Future<List<CompletableFuture<Void>>> result : results) {
+                for (CompletableFuture<Void> append : result.get(10, TimeUnit.SECONDS)) {
+                    try {
+                        append.get(10, TimeUnit.SECONDS);
+                    } catch (ExecutionException e) {
+                        assertEquals("Outbox closed", e.getCause().getMessage());
+                    }
+                }
+            }
+        } finally {
+            appenders.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import thirdparty.paymentgateway.TicketPaymentServiceImpl;
+import thirdparty.seatbooking.SeatReservationServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ * Measures first request latency with and without PurchasePathWarmup. Each
+ * run is a fresh JVM, so the purchase path starts cold: the JVM runs the
+ * warm-up with the given iterations, then times the first purchase and the
+ * first requests after it. Medians across runs are printed for each warm-up
+ * iteration count.
+ *
+ * Usage: PurchasePathWarmupBenchmark [runs] [requests] [iterations...]
+ *
+ */
+public class PurchasePathWarmupBenchmark {
+    private static final String RESULT = "RESULT ";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("child")) {
+            child(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int[] warmupIterations = args.length > 2
+                ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[] { 0, 1_000, PurchasePathWarmup.DEFAULT_ITERATIONS };
+
+        System.out.printf("%10s %12s %14s %16s %16s%n", "warm-up", "warm-up ms", "first req us",
+                "first " + requests + " us", "max of " + requests + " us");
+        for (int iterations : warmupIterations) {
+            long[][] results = new long[4][runs];
+            for (int run = 0; run < runs; run++) {
+                long[] result = runChild(iterations, requests);
+                for (int i = 0; i < result.length; i++) {
+                    results[i][run] = result[i];
+                }
+            }
+            System.out.printf("%10d %12.1f %14.1f %16.1f %16.1f%n", iterations, median(results[0]) / 1e6,
+                    median(results[1]) / 1e3, median(results[2]) / 1e3, median(results[3]) / 1e3);
+        }
+    }
+
+    /**
+     * Run one cold JVM and read its warm-up time, first request latency, total
+     * time of the first requests and slowest of them, all in nanoseconds
+     *
+     */
+    private static long[] runChild(int iterations, int requests) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                PurchasePathWarmupBenchmark.class.getName(), "child", String.valueOf(iterations),
+                String.valueOf(requests)).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+
+        String line;
+        try (BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            line = output.readLine();
+        }
+        process.waitFor();
+        if (line == null || !line.startsWith(RESULT)) {
+            throw new IOException("Benchmark run failed: " + line);
+        }
+        return Arrays.stream(line.substring(RESULT.length()).split(" ")).mapToLong(Long::parseLong).toArray();
+    }
+
+    private static void child(int iterations, int requests) throws InterruptedException {
+        Supplier<TicketPurchaseService> ticketPurchaseServiceFactory = () -> new TicketPurchaseService(
+                new TicketPaymentServiceImpl(), new SeatReservationServiceImpl());
+        long warmupStart = System.nanoTime();
+        PurchasePathWarmup warmup = new PurchasePathWarmup(iterations, ticketPurchaseServiceFactory);
+        warmup.start();
+        if (!warmup.awaitReady(5, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Warm-up did not finish");
+        }
+        long warmupNanos = System.nanoTime() - warmupStart;
+
+        // The service requests are served by, built after ready as an
+        // application would
+        TicketService ticketService = new TicketServiceImpl(new ValidationService(),
+                ticketPurchaseServiceFactory.get());
+        TicketTypeRequest[] order = { new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1),
+                new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1) };
+
+        long firstNanos = 0;
+        long totalNanos = 0;
+        long maxNanos = 0;
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            ticketService.purchaseTickets(1L + i, order);
+            long nanos = System.nanoTime() - start;
+            if (i == 0) {
+                firstNanos = nanos;
+            }
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+        System.out.println(RESULT + warmupNanos + " " + firstNanos + " " + totalNanos + " " + maxNanos);
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
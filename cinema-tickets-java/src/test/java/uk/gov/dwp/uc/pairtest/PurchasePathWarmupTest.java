@@ -0,0 +1,144 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import thirdparty.paymentgateway.TicketPaymentServiceImpl;
+import thirdparty.seatbooking.SeatReservationServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.Promotion;
+
+/**
+ *
+ * Warm-up rules:
+ * - Not ready until every configured iteration has run
+ * - Rejected synthetic orders do not stop the warm-up
+ * - With 0 iterations ready at once
+ * - Purchases go through the application's service, its executor, promotions
+ * and listeners, in every pricing context
+ *
+ */
+public class PurchasePathWarmupTest {
+
+    static final Supplier<TicketPurchaseService> NO_OP_SERVICE = () -> new TicketPurchaseService(
+            new TicketPaymentServiceImpl(), new SeatReservationServiceImpl());
+
+    /**
+     *
+     * Warm-up runs every iteration, then reports ready
+     *
+     * Parameters:
+     * 5000 iterations, more than the valid and rejected order shapes
+     *
+     * Expected:
+     * Not ready before start, ready within 30 seconds after, 5000 iterations
+     * completed
+     *
+     */
+    @Test
+    public void readyAfterAllIterations() throws InterruptedException {
+        PurchasePathWarmup warmup = new PurchasePathWarmup(5000, NO_OP_SERVICE);
+
+        assertFalse(warmup.isReady());
+        warmup.start();
+
+        assertTrue(warmup.awaitReady(30, TimeUnit.SECONDS));
+        assertTrue(warmup.isReady());
+        assertEquals(5000, warmup.getCompletedIterations());
+    }
+
+    /**
+     *
+     * Warm-up with no iterations is ready at once
+     *
+     * Parameters:
+     * 0 iterations, run on the calling thread
+     *
+     * Expected:
+     * Ready, 0 iterations completed
+     *
+     */
+    @Test
+    public void readyWithNoIterations() {
+        PurchasePathWarmup warmup = new PurchasePathWarmup(0, NO_OP_SERVICE);
+
+        warmup.run();
+
+        assertTrue(warmup.isReady());
+        assertEquals(0, warmup.getCompletedIterations());
+    }
+
+    /**
+     *
+     * Negative iterations are refused
+     *
+     * Parameters:
+     * -1 iterations
+     *
+     * Expected:
+     * IllegalArgumentException
+     *
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeIterationsRefused() {
+        new PurchasePathWarmup(-1, NO_OP_SERVICE);
+    }
+
+    /**
+     *
+     * Warm-up purchases through the service the factory builds
+     *
+     * Parameters:
+     * 10000 iterations, enough for a pass in every pricing context
+     * Service with a reservation executor, a members 10% off promotion and a
+     * listener
+     *
+     * Expected:
+     * Factory called once, listener notified, a member paid 18 for 1 adult
+     * ticket and a standard purchase paid 20
+     *
+     */
+    @Test
+    public void warmsTheApplicationService() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        AtomicInteger services = new AtomicInteger();
+        AtomicInteger purchases = new AtomicInteger();
+        Set<String> purchasesSeen = ConcurrentHashMap.newKeySet();
+        try {
+            PurchasePathWarmup warmup = new PurchasePathWarmup(10000, () -> {
+                services.incrementAndGet();
+                TicketPurchaseService ticketPurchaseService = new TicketPurchaseService(
+                        new TicketPaymentServiceImpl(), new SeatReservationServiceImpl(), executor);
+                ticketPurchaseService.setPromotionEngine(new PromotionEngine(20,
+                        Collections.singletonList(Promotion.percentOff("Members", 10, false, true))));
+                ticketPurchaseService.addPurchaseListener(
+                        (accountId, adultTickets, childTickets, infantTickets, totalSeats, totalCost) -> {
+                            purchases.incrementAndGet();
+                            purchasesSeen.add(adultTickets + "," + childTickets + "," + infantTickets + ","
+                                    + totalCost);
+                        });
+                return ticketPurchaseService;
+            });
+
+            warmup.run();
+
+            assertTrue(warmup.isReady());
+            assertEquals(1, services.get());
+            assertTrue(purchases.get() > 0);
+            assertTrue(purchasesSeen.contains("1,0,0,18"));
+            assertTrue(purchasesSeen.contains("1,0,0,20"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
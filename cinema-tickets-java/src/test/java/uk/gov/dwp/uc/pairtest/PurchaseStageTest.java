@@ -0,0 +1,160 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseOrder;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ *
+ * Stage rules:
+ * - Orders the action accepted that cannot be published go to the publish
+ * failure handler, not the rejection handler
+ * - A cancelled stage stops taking orders, finishes those in flight, completes
+ * its subscribers and shuts down its workers
+ *
+ */
+public class PurchaseStageTest {
+
+    List<PurchaseOrder> rejected;
+    List<RuntimeException> rejections;
+    List<PurchaseOrder> unpublished;
+    CountDownLatch handled;
+    AtomicBoolean cancelled;
+    Flow.Subscription subscription;
+
+    @Before
+    public void setup() {
+        rejected = new CopyOnWriteArrayList<>();
+        rejections = new CopyOnWriteArrayList<>();
+        unpublished = new CopyOnWriteArrayList<>();
+        handled = new CountDownLatch(1);
+        cancelled = new AtomicBoolean();
+        subscription = new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                // orders are pushed by the tests
+            }
+
+            @Override
+            public void cancel() {
+                cancelled.set(true);
+            }
+        };
+    }
+
+    /**
+     *
+     * An order accepted while upstream fails is handed to the publish failure
+     * handler
+     *
+     * Parameters:
+     * Account ID: 1, Adult Tickets: 1
+     * Upstream fails while the action runs
+     *
+     * Expected:
+     * Order passed to the publish failure handler, none rejected
+     *
+     */
+    @Test
+    public void unpublishedOrdersAreNotRejected() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        PurchaseStage stage = new PurchaseStage(order -> {
+            started.countDown();
+            try {
+                proceed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 1, 4, this::reject, this::unpublished);
+        PurchaseOrder order = new PurchaseOrder(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+
+        stage.onSubscribe(subscription);
+        stage.onNext(order);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        stage.onError(new IllegalStateException("Upstream failed"));
+        proceed.countDown();
+
+        assertTrue(handled.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of(order), unpublished);
+        assertEquals(0, rejected.size());
+    }
+
+    /**
+     *
+     * A cancelled stage finishes its orders in flight and then closes
+     *
+     * Parameters:
+     * Account ID: 1, Adult Tickets: 1, before cancel
+     * Account ID: 2, Adult Tickets: 1, after the stage closed
+     *
+     * Expected:
+     * Upstream subscription cancelled
+     * Account 1 published, subscriber completed
+     * Account 2 rejected, the workers having been shut down
+     *
+     */
+    @Test
+    public void cancelledStageCloses() throws InterruptedException {
+        PurchaseStage stage = new PurchaseStage(order -> {
+        }, 1, 4, this::reject, this::unpublished);
+        List<PurchaseOrder> published = new CopyOnWriteArrayList<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        stage.subscribe(new Flow.Subscriber<PurchaseOrder>() {
+            @Override
+            public void onSubscribe(Flow.Subscription downstream) {
+                downstream.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(PurchaseOrder order) {
+                published.add(order);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+        PurchaseOrder first = new PurchaseOrder(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+        PurchaseOrder second = new PurchaseOrder(2L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+
+        stage.onSubscribe(subscription);
+        stage.onNext(first);
+        stage.cancel();
+
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertTrue(cancelled.get());
+        assertEquals(List.of(first), published);
+
+        stage.onNext(second);
+        assertEquals(List.of(second), rejected);
+        assertTrue(rejections.get(0) instanceof RejectedExecutionException);
+    }
+
+    private void reject(PurchaseOrder order, RuntimeException e) {
+        rejected.add(order);
+        rejections.add(e);
+    }
+
+    private void unpublished(PurchaseOrder order, RuntimeException e) {
+        unpublished.add(order);
+        handled.countDown();
+    }
+}
@@ -0,0 +1,348 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.domain.TicketPurchaseReceipt;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Stress harness for the purchase path.
+ *
+ * Threads buy random orders, valid and invalid, through TicketServiceImpl and
+ * TicketPurchaseService into in-memory payment and seat stand-ins, and
+ * sometimes cancel a purchase to free its seats. Every attempt uses its own
+ * account id so its effects on the stand-ins can be told apart. The history
+ * of every attempt is recorded and checked afterwards for:
+ * - no overselling, reserved seats never above capacity
+ * - no double charges, one payment per accepted purchase and none kept for
+ *   any other attempt
+ * - seats equal to non-INFANT tickets for accepted purchases, none kept for
+ *   any other attempt
+ * - unique ticket ids, one per ticket
+ * - linearizability of reservations and cancellations against a seat count
+ *
+ * Declined payments are compensated by releasing seats after they were
+ * briefly held, which another thread may observe, so histories with declined
+ * payments are checked for the invariants only. So are histories against
+ * OffHeapSeatInventory, which may refuse a reservation racing another that is
+ * about to be rolled back while seats are free, an outcome the seat count
+ * model does not allow.
+ *
+ * Run main for longer runs: PurchaseStressHarness [rounds] [threads]
+ * [purchasesPerThread] [capacity]
+ *
+ */
+class PurchaseStressHarness {
+    private static final String NOT_ENOUGH_SEATS = "Not enough seats available";
+    private static final TicketTypeRequestUtilities ticketTypeRequestUtilities = new TicketTypeRequestUtilities();
+
+    private final int threads;
+    private final int purchasesPerThread;
+    private final int capacity;
+    private final boolean concurrentMode;
+    private final int declineEvery;
+    private final boolean offHeapInventory;
+
+    /**
+     *
+     * @param threads            purchasing threads
+     * @param purchasesPerThread purchase attempts per thread
+     * @param capacity           seats in the screening
+     * @param concurrentMode     whether seats are reserved while the payment is
+     *                           taken
+     * @param declineEvery       decline payments for every nth account, 0 to
+     *                           accept every payment
+     * @param offHeapInventory   whether seats come from OffHeapSeatInventory
+     *                           rather than a simple in-memory counter
+     *
+     */
+    PurchaseStressHarness(int threads, int purchasesPerThread, int capacity, boolean concurrentMode,
+            int declineEvery, boolean offHeapInventory) {
+        this.threads = threads;
+        this.purchasesPerThread = purchasesPerThread;
+        this.capacity = capacity;
+        this.concurrentMode = concurrentMode;
+        this.declineEvery = declineEvery;
+        this.offHeapInventory = offHeapInventory;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int purchasesPerThread = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int capacity = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+
+        int failedRounds = 0;
+        for (int round = 0; round < rounds; round++) {
+            PurchaseStressHarness harness = new PurchaseStressHarness(threads, purchasesPerThread, capacity,
+                    round % 2 == 1, round % 3 == 2 ? 7 : 0, round % 4 >= 2);
+            List<String> violations = harness.run(round);
+            if (!violations.isEmpty()) {
+                failedRounds++;
+                System.out.println("round " + round + ": " + violations);
+            }
+        }
+        System.out.println(rounds + " rounds, " + failedRounds + " with violations");
+    }
+
+    /**
+     * Run the threads and check the recorded history
+     *
+     * @param seed seed of the random orders
+     * @return violations found, empty if none
+     *
+     */
+    List<String> run(long seed) throws InterruptedException {
+        InMemoryTicketPaymentService ticketPaymentService = new InMemoryTicketPaymentService(declineEvery);
+        SeatReservationService seats;
+        if (offHeapInventory) {
+            seats = new ScreeningSeatReservationService(new OffHeapSeatInventory(1, capacity), 0);
+        } else {
+            seats = new InMemorySeatReservationService(capacity);
+        }
+        RecordingSeatReservationService recordingSeats = new RecordingSeatReservationService(seats);
+        ExecutorService executor = concurrentMode ? Executors.newFixedThreadPool(threads) : null;
+        TicketPurchaseService ticketPurchaseService = new TicketPurchaseService(ticketPaymentService, recordingSeats,
+                executor);
+        TicketService ticketService = new TicketServiceImpl(new ValidationService(), ticketPurchaseService);
+
+        Attempt[][] attempts = new Attempt[threads][];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> purchasers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int thread = i;
+            Thread purchaser = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                attempts[thread] = purchase(ticketService, ticketPurchaseService, new Random(seed * 1000 + thread),
+                        thread);
+            });
+            purchasers.add(purchaser);
+            purchaser.start();
+        }
+        start.countDown();
+        for (Thread purchaser : purchasers) {
+            purchaser.join();
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+
+        return check(attempts, ticketPaymentService, recordingSeats);
+    }
+
+    /**
+     * One thread's purchase attempts, cancelling some accepted purchases
+     *
+     */
+    private Attempt[] purchase(TicketService ticketService, TicketPurchaseService ticketPurchaseService,
+            Random random, int thread) {
+        Attempt[] attempts = new Attempt[purchasesPerThread];
+        for (int j = 0; j < purchasesPerThread; j++) {
+            // Account ids are unique per attempt, a few are invalid
+            long accountId = random.nextInt(20) == 0 ? 0 : (long) thread * purchasesPerThread + j + 1;
+            Attempt attempt = new Attempt(accountId, randomOrder(random));
+            attempts[j] = attempt;
+
+            attempt.callNanos = System.nanoTime();
+            try {
+                attempt.receipt = ticketService.purchaseTickets(accountId, attempt.ticketTypeRequests);
+                attempt.outcome = Outcome.ACCEPTED;
+            } catch (InvalidPurchaseException e) {
+                attempt.outcome = NOT_ENOUGH_SEATS.equals(e.getMessage()) ? Outcome.NO_SEATS : Outcome.INVALID;
+            } catch (RuntimeException e) {
+                attempt.outcome = Outcome.FAILED;
+            }
+            attempt.returnNanos = System.nanoTime();
+
+            if (attempt.outcome == Outcome.ACCEPTED && random.nextInt(3) == 0) {
+                attempt.cancelCallNanos = System.nanoTime();
+                try {
+                    ticketPurchaseService.releaseSeats(accountId, attempt.ticketTypeRequests);
+                } catch (RuntimeException e) {
+                    attempt.cancelFailure = e;
+                }
+                attempt.cancelReturnNanos = System.nanoTime();
+            }
+        }
+        return attempts;
+    }
+
+    /**
+     * Check the invariants and linearizability of a run
+     *
+     */
+    private List<String> check(Attempt[][] attempts, InMemoryTicketPaymentService ticketPaymentService,
+            RecordingSeatReservationService recordingSeats) {
+        List<String> violations = new ArrayList<>();
+        List<LinearizabilityChecker.Operation> history = new ArrayList<>();
+        Set<Long> ticketIds = new HashSet<>();
+        int expectedReserved = 0;
+
+        if (recordingSeats.maximumReserved.get() > capacity) {
+            violations.add("Oversold: " + recordingSeats.maximumReserved.get() + " of " + capacity + " seats");
+        }
+        for (Attempt[] threadAttempts : attempts) {
+            for (Attempt attempt : threadAttempts) {
+                int seats = ticketTypeRequestUtilities.getTicketsCount(TicketTypeRequest.Type.ADULT,
+                        attempt.ticketTypeRequests)
+                        + ticketTypeRequestUtilities.getTicketsCount(TicketTypeRequest.Type.CHILD,
+                                attempt.ticketTypeRequests);
+                checkAttempt(attempt, seats, ticketPaymentService, recordingSeats, ticketIds, violations);
+                if (attempt.cancelFailure != null) {
+                    violations.add("Account " + attempt.accountId + " cancellation failed: " + attempt.cancelFailure);
+                }
+
+                if (attempt.outcome == Outcome.ACCEPTED || attempt.outcome == Outcome.NO_SEATS) {
+                    history.add(new LinearizabilityChecker.Operation(true, seats, attempt.outcome == Outcome.ACCEPTED,
+                            attempt.callNanos, attempt.returnNanos));
+                }
+                if (attempt.cancelCallNanos != 0) {
+                    history.add(new LinearizabilityChecker.Operation(false, seats, true, attempt.cancelCallNanos,
+                            attempt.cancelReturnNanos));
+                } else if (attempt.outcome == Outcome.ACCEPTED) {
+                    expectedReserved += seats;
+                }
+            }
+        }
+
+        if (recordingSeats.reserved.get() != expectedReserved) {
+            violations.add("Reserved seats " + recordingSeats.reserved.get() + ", expected " + expectedReserved);
+        }
+        if (declineEvery == 0 && !offHeapInventory && !LinearizabilityChecker.isLinearizable(history, capacity)) {
+            violations.add("History of " + history.size() + " operations is not linearizable");
+        }
+        return violations;
+    }
+
+    private void checkAttempt(Attempt attempt, int seats, InMemoryTicketPaymentService ticketPaymentService,
+            RecordingSeatReservationService recordingSeats, Set<Long> ticketIds, List<String> violations) {
+        if (attempt.accountId == 0) {
+            return;
+        }
+        int[] payments = ticketPaymentService.getTotals(attempt.accountId);
+        int netPaid = payments[InMemoryTicketPaymentService.PAID] - payments[InMemoryTicketPaymentService.REFUNDED];
+        int netSeats = recordingSeats.seatsOf(attempt.accountId);
+        boolean cancelled = attempt.cancelCallNanos != 0;
+
+        if (attempt.outcome == Outcome.ACCEPTED) {
+            int cost = 0;
+            for (TicketTypeRequest ticketTypeRequest : attempt.ticketTypeRequests) {
+                cost += ticketTypeRequest.getTotalPrice();
+            }
+            if (payments[InMemoryTicketPaymentService.PAYMENTS] != 1 || netPaid != cost) {
+                violations.add("Account " + attempt.accountId + " charged " + payments[0] + " times, net " + netPaid
+                        + " for " + cost);
+            }
+            if (netSeats != (cancelled ? 0 : seats) || attempt.receipt.getTotalSeats() != seats) {
+                violations.add("Account " + attempt.accountId + " holds " + netSeats + " seats for " + seats
+                        + " non-infant tickets");
+            }
+            for (long ticketId : attempt.receipt.getTicketIds()) {
+                if (!ticketIds.add(ticketId)) {
+                    violations.add("Ticket id " + ticketId + " issued twice");
+                }
+            }
+            int tickets = seats + ticketTypeRequestUtilities.getTicketsCount(TicketTypeRequest.Type.INFANT,
+                    attempt.ticketTypeRequests);
+            if (attempt.receipt.getTicketIds().length != tickets) {
+                violations.add("Account " + attempt.accountId + " issued " + attempt.receipt.getTicketIds().length
+                        + " ticket ids for " + tickets + " tickets");
+            }
+        } else if (netPaid != 0 || netSeats != 0 || payments[InMemoryTicketPaymentService.PAYMENTS]
+                - payments[InMemoryTicketPaymentService.REFUNDS] > 0) {
+            violations.add("Account " + attempt.accountId + " " + attempt.outcome + " but kept " + netPaid
+                    + " paid and " + netSeats + " seats");
+        }
+    }
+
+    /**
+     * Random order, mostly valid, sometimes with too many tickets or no adults
+     *
+     */
+    private static TicketTypeRequest[] randomOrder(Random random) {
+        int adultTickets = random.nextInt(10) == 0 ? 0 : 1 + random.nextInt(4);
+        int childTickets = random.nextInt(3);
+        int infantTickets = random.nextInt(Math.max(1, adultTickets) + 1);
+        if (random.nextInt(25) == 0) {
+            adultTickets = 21;
+        }
+        if (adultTickets + childTickets + infantTickets == 0) {
+            return new TicketTypeRequest[0];
+        }
+        return ticketTypeRequestUtilities.getTicketTypeRequests(adultTickets, childTickets, infantTickets);
+    }
+
+    enum Outcome {
+        ACCEPTED, NO_SEATS, INVALID, FAILED
+    }
+
+    private static final class Attempt {
+        private final long accountId;
+        private final TicketTypeRequest[] ticketTypeRequests;
+        private Outcome outcome;
+        private TicketPurchaseReceipt receipt;
+        private long callNanos;
+        private long returnNanos;
+        private long cancelCallNanos;
+        private long cancelReturnNanos;
+        private RuntimeException cancelFailure;
+
+        private Attempt(long accountId, TicketTypeRequest[] ticketTypeRequests) {
+            this.accountId = accountId;
+            this.ticketTypeRequests = ticketTypeRequests;
+        }
+    }
+
+    /**
+     * Records seats held per account around the seat service under test. The
+     * running count rises only after a reservation succeeds and falls before
+     * a release is made, so it never exceeds the seats really reserved
+     *
+     */
+    private static final class RecordingSeatReservationService implements SeatReservationService {
+        private final SeatReservationService delegate;
+        private final Map<Long, AtomicInteger> accountSeats = new ConcurrentHashMap<>();
+        private final AtomicInteger reserved = new AtomicInteger();
+        private final AtomicInteger maximumReserved = new AtomicInteger();
+
+        private RecordingSeatReservationService(SeatReservationService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+            delegate.reserveSeat(accountId, totalSeatsToAllocate);
+            maximumReserved.accumulateAndGet(reserved.addAndGet(totalSeatsToAllocate), Math::max);
+            accountSeats.computeIfAbsent(accountId, id -> new AtomicInteger()).addAndGet(totalSeatsToAllocate);
+        }
+
+        @Override
+        public void releaseSeat(long accountId, int totalSeatsToRelease) {
+            reserved.addAndGet(-totalSeatsToRelease);
+            accountSeats.computeIfAbsent(accountId, id -> new AtomicInteger()).addAndGet(-totalSeatsToRelease);
+            delegate.releaseSeat(accountId, totalSeatsToRelease);
+        }
+
+        private int seatsOf(long accountId) {
+            AtomicInteger seats = accountSeats.get(accountId);
+            return seats == null ? 0 : seats.get();
+        }
+    }
+}
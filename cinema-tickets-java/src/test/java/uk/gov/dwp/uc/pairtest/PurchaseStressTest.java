@@ -0,0 +1,127 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ *
+ * Concurrent purchase rules, checked over many short runs:
+ * - Seats are never oversold
+ * - Accepted purchases are charged once, nothing else keeps a charge
+ * - Accepted purchases hold one seat per non-infant ticket, nothing else
+ *   keeps a seat
+ * - Ticket ids are unique
+ * - Reservations and cancellations are linearizable, with in-memory seats and
+ *   no declined payments
+ * 
+ */
+public class PurchaseStressTest {
+
+    /**
+     * 
+     * The checker accepts overlapping operations in any valid order and
+     * rejects impossible outcomes
+     * 
+     * Parameters:
+     * Capacity 5
+     * reserve 3 [0, 10] ok, reserve 3 [5, 15] refused, release 3 [20, 30] ok
+     * then reserve 3 [0, 10] refused alone on an empty screening
+     * 
+     * Expected:
+     * First history linearizable, second not
+     * 
+     */
+    @Test
+    public void checkerAcceptsValidAndRejectsImpossibleHistories() {
+        List<LinearizabilityChecker.Operation> valid = Arrays.asList(
+                new LinearizabilityChecker.Operation(true, 3, true, 0, 10),
+                new LinearizabilityChecker.Operation(true, 3, false, 5, 15),
+                new LinearizabilityChecker.Operation(false, 3, true, 20, 30));
+        List<LinearizabilityChecker.Operation> impossible = Collections
+                .singletonList(new LinearizabilityChecker.Operation(true, 3, false, 0, 10));
+
+        assertTrue(LinearizabilityChecker.isLinearizable(valid, 5));
+        assertFalse(LinearizabilityChecker.isLinearizable(impossible, 5));
+    }
+
+    /**
+     * 
+     * Sequential purchase mode under contention
+     * 
+     * Parameters:
+     * 20 runs of 4 threads x 40 attempts, 20 seats, in-memory seats
+     * 
+     * Expected:
+     * No violations
+     * 
+     */
+    @Test
+    public void sequentialModeHoldsInvariants() throws InterruptedException {
+        assertNoViolations(new PurchaseStressHarness(4, 40, 20, false, 0, false));
+    }
+
+    /**
+     * 
+     * Concurrent purchase mode under contention
+     * 
+     * Parameters:
+     * 20 runs of 4 threads x 40 attempts, 20 seats, in-memory seats
+     * 
+     * Expected:
+     * No violations
+     * 
+     */
+    @Test
+    public void concurrentModeHoldsInvariants() throws InterruptedException {
+        assertNoViolations(new PurchaseStressHarness(4, 40, 20, true, 0, false));
+    }
+
+    /**
+     * 
+     * Declined payments are compensated in both modes
+     * 
+     * Parameters:
+     * 20 runs each of 4 threads x 40 attempts, 20 seats, every 5th payment
+     * declined
+     * 
+     * Expected:
+     * No violations
+     * 
+     */
+    @Test
+    public void declinedPaymentsAreCompensated() throws InterruptedException {
+        assertNoViolations(new PurchaseStressHarness(4, 40, 20, false, 5, false));
+        assertNoViolations(new PurchaseStressHarness(4, 40, 20, true, 5, false));
+    }
+
+    /**
+     * 
+     * Off heap seat inventory behind the purchase path
+     * 
+     * Parameters:
+     * 20 runs each of 4 threads x 40 attempts, 20 seats, both modes
+     * 
+     * Expected:
+     * No invariant violations, linearizability is not checked as refusals may
+     * overlap a reservation being rolled back
+     * 
+     */
+    @Test
+    public void offHeapInventoryHoldsInvariants() throws InterruptedException {
+        assertNoViolations(new PurchaseStressHarness(4, 40, 20, false, 0, true));
+        assertNoViolations(new PurchaseStressHarness(4, 40, 20, true, 0, true));
+    }
+
+    private void assertNoViolations(PurchaseStressHarness harness) throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            assertEquals(Collections.emptyList(), harness.run(round));
+        }
+    }
+}
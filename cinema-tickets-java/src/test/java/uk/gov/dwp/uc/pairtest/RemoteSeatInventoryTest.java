@@ -0,0 +1,115 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * Remote shard rules:
+ * - A shard that does not answer fails the request within the timeout
+ * - A reservation whose reply is lost is released, its outcome being unknown
+ *
+ */
+public class RemoteSeatInventoryTest {
+
+    ServerSocket hungShard;
+    List<String> received;
+
+    /**
+     * Start a shard that reads every request but only answers releases
+     *
+     */
+    @Before
+    public void startHungShard() throws IOException {
+        hungShard = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        received = new CopyOnWriteArrayList<>();
+        Thread acceptor = new Thread(() -> {
+            while (true) {
+                Socket socket;
+                try {
+                    socket = hungShard.accept();
+                } catch (IOException e) {
+                    return;
+                }
+                Thread connection = new Thread(() -> serve(socket));
+                connection.setDaemon(true);
+                connection.start();
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void stopHungShard() throws IOException {
+        hungShard.close();
+    }
+
+    /**
+     *
+     * A reservation the shard never answers times out and is released
+     *
+     * Parameters:
+     * 200 ms timeout
+     * Reserve 2 seats of screening 3 on a shard that does not answer
+     *
+     * Expected:
+     * UncheckedIOException caused by SocketTimeoutException
+     * The shard received the reservation, then a release of the same seats
+     *
+     */
+    @Test
+    public void unansweredReservationIsReleased() {
+        try (RemoteSeatInventory seatInventory = new RemoteSeatInventory(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), hungShard.getLocalPort()), 10, 10, 200)) {
+            long start = System.nanoTime();
+            try {
+                seatInventory.reserve(3, 2);
+                fail("Expected the reservation to time out");
+            } catch (UncheckedIOException e) {
+                assertTrue(e.getCause() instanceof SocketTimeoutException);
+            }
+            assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        }
+
+        assertEquals(List.of("RESERVE 3 2", "RELEASE 3 2"), received);
+    }
+
+    private void serve(Socket socket) {
+        try (Socket connection = socket;
+                DataInputStream input = new DataInputStream(connection.getInputStream());
+                DataOutputStream output = new DataOutputStream(connection.getOutputStream())) {
+            while (true) {
+                byte operation = input.readByte();
+                int screening = input.readInt();
+                int seats = input.readInt();
+                if (operation == SeatShardProtocol.RESERVE) {
+                    received.add("RESERVE " + screening + " " + seats);
+                } else if (operation == SeatShardProtocol.RELEASE) {
+                    received.add("RELEASE " + screening + " " + seats);
+                    output.writeInt(1);
+                    output.flush();
+                }
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import thirdparty.paymentgateway.TicketPaymentServiceImpl;
+import thirdparty.seatbooking.SeatReservationServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ * Compares purchase throughput with and without SalesCounters registered, to
+ * show the recording overhead on the purchase path.
+ * 
+ * Usage: SalesCountersBenchmark [threads] [seconds]
+ * 
+ */
+public class SalesCountersBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        TicketPurchaseService bare = new TicketPurchaseService(new TicketPaymentServiceImpl(),
+                new SeatReservationServiceImpl());
+        TicketPurchaseService counted = new TicketPurchaseService(new TicketPaymentServiceImpl(),
+                new SeatReservationServiceImpl());
+        SalesCounters salesCounters = new SalesCounters();
+        counted.addPurchaseListener(salesCounters);
+
+        for (int round = 0; round < 2; round++) {
+            double bareRate = run(bare, threads, seconds);
+            double countedRate = run(counted, threads, seconds);
+            System.out.printf("round %d: bare %.0f ops/s, with sales counters %.0f ops/s, overhead %.1f ns/op%n",
+                    round + 1, bareRate, countedRate, (1e9 / countedRate - 1e9 / bareRate) * threads);
+        }
+        System.out.println("purchases counted: " + salesCounters.snapshot().getPurchases());
+    }
+
+    private static double run(TicketPurchaseService ticketPurchaseService, int threads, int seconds)
+            throws InterruptedException {
+        TicketTypeRequest[] order = { new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1),
+                new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1) };
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        LongAdder operations = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < threads; i++) {
+            long accountId = i + 1;
+            executor.execute(() -> {
+                long count = 0;
+                while ((count & 1023) != 0 || System.nanoTime() < deadline) {
+                    ticketPurchaseService.purchase(accountId, order);
+                    count++;
+                }
+                operations.add(count);
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        return operations.sum() * 1e9 / (System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,157 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import thirdparty.paymentgateway.TicketPaymentServiceImpl;
+import thirdparty.seatbooking.SeatReservationServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.BasketItem;
+import uk.gov.dwp.uc.pairtest.domain.SalesSnapshot;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ *
+ * Sales counter rules:
+ * - Every purchase is counted once across concurrent writers
+ * - A snapshot never shows part of a purchase, unless a writer holds a stripe
+ * for SNAPSHOT_ATTEMPTS reads, when it is read approximately and counted
+ * - Purchases of a screening are counted in the totals and for the screening
+ * 
+ */
+public class SalesCountersTest {
+
+    /**
+     * 
+     * Concurrent purchases are all counted and snapshots stay consistent
+     * 
+     * Parameters:
+     * 8 writer threads, 50000 purchases each
+     * Adult Tickets: 2
+     * Child Tickets: 1
+     * Infant Tickets: 1
+     * 
+     * Expected:
+     * 400000 purchases, 800000 adult, 400000 child, 400000 infant tickets
+     * 1200000 seats, revenue 20000000
+     * Every snapshot read meanwhile has seats = 3 x purchases and revenue = 50 x
+     * purchases
+     * 
+     */
+    @Test
+    public void concurrentPurchasesAreCountedConsistently() throws InterruptedException {
+        SalesCounters salesCounters = new SalesCounters(4);
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        AtomicBoolean consistent = new AtomicBoolean(true);
+
+        for (int i = 0; i < 8; i++) {
+            writers.execute(() -> {
+                for (int j = 0; j < 50000; j++) {
+                    salesCounters.purchaseCompleted(1L, 2, 1, 1, 3, 50);
+                }
+            });
+        }
+        writers.shutdown();
+        while (!writers.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+            SalesSnapshot snapshot = salesCounters.snapshot();
+            if (snapshot.getSeatsReserved() != 3 * snapshot.getPurchases()
+                    || snapshot.getRevenue() != 50 * snapshot.getPurchases()) {
+                consistent.set(false);
+            }
+        }
+
+        SalesSnapshot snapshot = salesCounters.snapshot();
+        assertTrue(consistent.get());
+        assertEquals(400000, snapshot.getPurchases());
+        assertEquals(800000, snapshot.getTicketsSold(TicketTypeRequest.Type.ADULT));
+        assertEquals(400000, snapshot.getTicketsSold(TicketTypeRequest.Type.CHILD));
+        assertEquals(400000, snapshot.getTicketsSold(TicketTypeRequest.Type.INFANT));
+        assertEquals(1200000, snapshot.getSeatsReserved());
+        assertEquals(20000000, snapshot.getRevenue());
+    }
+
+    /**
+     * 
+     * Snapshots give up waiting for a stripe whose writer stalls
+     * 
+     * Parameters:
+     * 1 stripe, 1 purchase of 2 adult tickets, seats 2, cost 40
+     * An update begun and not finished, as by a descheduled writer
+     * 
+     * Expected:
+     * Snapshot returns 1 purchase and revenue 40 approximately, 1 approximate
+     * read
+     * Once the update finishes, snapshots are exact again
+     * 
+     */
+    @Test
+    public void snapshotsDoNotWaitForStalledWriters() {
+        SalesCounters salesCounters = new SalesCounters(1);
+        salesCounters.purchaseCompleted(1L, 2, 0, 0, 2, 40);
+
+        assertTrue(salesCounters.beginUpdate(0));
+        SalesSnapshot snapshot = salesCounters.snapshot();
+        assertEquals(1, snapshot.getPurchases());
+        assertEquals(40, snapshot.getRevenue());
+        assertEquals(1, salesCounters.getApproximateReads());
+
+        salesCounters.endUpdate(0);
+        assertEquals(1, salesCounters.snapshot().getPurchases());
+        assertEquals(1, salesCounters.getApproximateReads());
+    }
+
+    /**
+     * 
+     * Basket purchases are counted per screening
+     * 
+     * Parameters:
+     * Account ID: 1, basket of screening 0 with 2 adult tickets and screening 3
+     * with 1 adult and 1 child ticket
+     * Account ID: 2, 1 adult ticket with no screening
+     * 
+     * Expected:
+     * Totals: 3 purchases, 4 adult and 1 child tickets, revenue 90
+     * Screening 0: 1 purchase, 2 adult tickets, revenue 40
+     * Screening 3: 1 purchase, 1 adult and 1 child ticket, revenue 30
+     * Screening 1: nothing sold
+     * 
+     */
+    @Test
+    public void screeningPurchasesAreCountedPerScreening() {
+        SalesCounters salesCounters = new SalesCounters(4);
+        TicketPurchaseService ticketPurchaseService = new TicketPurchaseService(new TicketPaymentServiceImpl(),
+                new SeatReservationServiceImpl());
+        ticketPurchaseService.addPurchaseListener(salesCounters);
+        BasketPurchaseService basketPurchaseService = new BasketPurchaseService(new OffHeapSeatInventory(4, 10),
+                ticketPurchaseService, Runnable::run);
+
+        basketPurchaseService.purchase(1L, new BasketItem(0, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2)),
+                new BasketItem(3, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1),
+                        new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1)));
+        ticketPurchaseService.purchase(2L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+
+        SalesSnapshot total = salesCounters.snapshot();
+        assertEquals(3, total.getPurchases());
+        assertEquals(4, total.getTicketsSold(TicketTypeRequest.Type.ADULT));
+        assertEquals(1, total.getTicketsSold(TicketTypeRequest.Type.CHILD));
+        assertEquals(90, total.getRevenue());
+
+        SalesSnapshot screening0 = salesCounters.snapshot(0);
+        assertEquals(1, screening0.getPurchases());
+        assertEquals(2, screening0.getTicketsSold(TicketTypeRequest.Type.ADULT));
+        assertEquals(40, screening0.getRevenue());
+
+        SalesSnapshot screening3 = salesCounters.snapshot(3);
+        assertEquals(1, screening3.getPurchases());
+        assertEquals(1, screening3.getTicketsSold(TicketTypeRequest.Type.ADULT));
+        assertEquals(1, screening3.getTicketsSold(TicketTypeRequest.Type.CHILD));
+        assertEquals(30, screening3.getRevenue());
+
+        assertEquals(0, salesCounters.snapshot(1).getPurchases());
+    }
+}
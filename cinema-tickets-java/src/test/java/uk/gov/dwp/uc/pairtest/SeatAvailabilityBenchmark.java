@@ -0,0 +1,98 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mixed availability read and reservation workloads on OffHeapSeatInventory.
+ * 
+ * First every thread mixes snapshot reads (seats left, or the whole seat map
+ * for one read in ten) with reserve and release at high read ratios, then
+ * writer threads run alone and alongside dedicated reader threads to show how
+ * much readers slow writers down.
+ * 
+ * Usage: SeatAvailabilityBenchmark [threads] [seconds] [screenings]
+ * 
+ */
+public class SeatAvailabilityBenchmark {
+    private static final int SEATS_PER_SCREENING = 300;
+    // Keeps read results live so reads are not optimised away
+    static volatile long readResults;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int screenings = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        OffHeapSeatInventory seatInventory = new OffHeapSeatInventory(screenings, SEATS_PER_SCREENING);
+
+        run(seatInventory, threads, 1, 0.98, 0);
+        for (double readRatio : new double[] { 0.98, 0.99, 0.999 }) {
+            LatencyRecorder[][] recorders = run(seatInventory, threads, seconds, readRatio, 0);
+            long elapsedNanos = TimeUnit.SECONDS.toNanos(seconds);
+            LatencyRecorder.report(String.format("%.1f%% reads, reads", readRatio * 100), elapsedNanos,
+                    recorders[0]);
+            LatencyRecorder.report(String.format("%.1f%% reads, writes", readRatio * 100), elapsedNanos,
+                    recorders[1]);
+        }
+
+        int writers = Math.max(1, threads / 2);
+        int readers = Math.max(1, threads - writers);
+        LatencyRecorder[][] alone = run(seatInventory, writers, seconds, 0, 0);
+        LatencyRecorder.report(writers + " writers alone", TimeUnit.SECONDS.toNanos(seconds), alone[1]);
+        LatencyRecorder[][] shared = run(seatInventory, writers, seconds, 0, readers);
+        LatencyRecorder.report(writers + " writers with " + readers + " readers", TimeUnit.SECONDS.toNanos(seconds),
+                shared[1]);
+        LatencyRecorder.report(readers + " readers", TimeUnit.SECONDS.toNanos(seconds), shared[0]);
+    }
+
+    /**
+     * Run mixed threads, each reading with the given probability, and
+     * dedicated readers
+     * 
+     * @return read recorders then write recorders
+     * 
+     */
+    private static LatencyRecorder[][] run(OffHeapSeatInventory seatInventory, int threads, int seconds,
+            double readRatio, int readers) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads + readers);
+        LatencyRecorder[] readRecorders = new LatencyRecorder[threads + readers];
+        LatencyRecorder[] writeRecorders = new LatencyRecorder[threads];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        for (int i = 0; i < threads + readers; i++) {
+            LatencyRecorder readRecorder = new LatencyRecorder(1_000_000);
+            LatencyRecorder writeRecorder = new LatencyRecorder(1_000_000);
+            readRecorders[i] = readRecorder;
+            if (i < threads) {
+                writeRecorders[i] = writeRecorder;
+            }
+            double threadReadRatio = i < threads ? readRatio : 1;
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                byte[] seatStates = new byte[SEATS_PER_SCREENING];
+                long sink = 0;
+                while (System.nanoTime() < deadline) {
+                    int screening = random.nextInt(seatInventory.getScreenings());
+                    long start = System.nanoTime();
+                    if (random.nextDouble() < threadReadRatio) {
+                        sink += random.nextInt(10) == 0 ? seatInventory.seatMap(screening, seatStates)
+                                : seatInventory.available(screening);
+                        readRecorder.record(System.nanoTime() - start);
+                    } else {
+                        int seats = 1 + random.nextInt(6);
+                        if (seatInventory.reserve(screening, seats)) {
+                            seatInventory.release(screening, seats);
+                        }
+                        writeRecorder.record(System.nanoTime() - start);
+                    }
+                }
+                readResults += sink;
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        return new LatencyRecorder[][] { readRecorders, writeRecorders };
+    }
+}
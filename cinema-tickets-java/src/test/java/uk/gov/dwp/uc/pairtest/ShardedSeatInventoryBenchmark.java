@@ -0,0 +1,105 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts SeatShardServer processes on this machine and measures reserve and
+ * release throughput through ShardedSeatInventory as shards are added one at
+ * a time, including how long each rebalance takes. Throughput can only grow
+ * with shards while the machine has cores to spare for them.
+ * 
+ * Usage: ShardedSeatInventoryBenchmark [maxShards] [screenings] [threads]
+ * [seconds]
+ * 
+ */
+public class ShardedSeatInventoryBenchmark {
+    private static final int SEATS_PER_SCREENING = 300;
+
+    public static void main(String[] args) throws Exception {
+        int maxShards = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int screenings = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        List<Process> shardProcesses = new ArrayList<>();
+        try (ShardedSeatInventory seatInventory = new ShardedSeatInventory(screenings, SEATS_PER_SCREENING)) {
+            for (int shards = 1; shards <= maxShards; shards++) {
+                InetSocketAddress address = startShard(shardProcesses, screenings);
+                long start = System.nanoTime();
+                int moved = seatInventory.addShard(address);
+                System.out.printf("added shard %d: moved %,d screenings in %.1f ms%n", shards, moved,
+                        (System.nanoTime() - start) / 1e6);
+
+                run(seatInventory, threads, 1);
+                LatencyRecorder[] recorders = run(seatInventory, threads, seconds);
+                LatencyRecorder.report(shards + " shards", TimeUnit.SECONDS.toNanos(seconds), recorders);
+            }
+        } finally {
+            for (Process process : shardProcesses) {
+                process.getOutputStream().close();
+                process.waitFor(10, TimeUnit.SECONDS);
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * Start a shard JVM on the benchmark's classpath and wait for it to report
+     * its port
+     * 
+     */
+    private static InetSocketAddress startShard(List<Process> shardProcesses, int screenings) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                SeatShardServer.class.getName(), "0", String.valueOf(screenings),
+                String.valueOf(SEATS_PER_SCREENING)).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        shardProcesses.add(process);
+
+        BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII));
+        String line = output.readLine();
+        if (line == null || !line.startsWith("READY ")) {
+            throw new IOException("Shard failed to start: " + line);
+        }
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(line.substring(6)));
+    }
+
+    private static LatencyRecorder[] run(ShardedSeatInventory seatInventory, int threads, int seconds)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        LatencyRecorder[] recorders = new LatencyRecorder[threads];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        for (int i = 0; i < threads; i++) {
+            LatencyRecorder recorder = new LatencyRecorder(1_000_000);
+            recorders[i] = recorder;
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    int screening = random.nextInt(seatInventory.getScreenings());
+                    int seats = 1 + random.nextInt(6);
+                    long start = System.nanoTime();
+                    if (seatInventory.reserve(screening, seats)) {
+                        seatInventory.release(screening, seats);
+                    }
+                    recorder.record(System.nanoTime() - start);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        return recorders;
+    }
+}
@@ -0,0 +1,248 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ *
+ * Sharding rules:
+ * - Screenings spread evenly over shards
+ * - Adding a shard only moves screenings to the new shard, about 1/n of them
+ * - Reservations follow their screening to its new owner
+ * - A failed move leaves every screening with its reservations on its old
+ * owner
+ * - Adding a shard that never answers fails within the shard timeout
+ *
+ */
+public class ShardedSeatInventoryTest {
+
+    List<SeatShardServer> servers = new ArrayList<>();
+
+    @After
+    public void stopServers() {
+        for (SeatShardServer server : servers) {
+            server.stop();
+        }
+    }
+
+    /**
+     *
+     * Adding a shard moves about a quarter of screenings, all to the new shard
+     *
+     * Parameters:
+     * 100000 screenings, 3 shards then 4
+     *
+     * Expected:
+     * Each of 3 shards owns 33333 +/- 15%
+     * Moved screenings between 20% and 30%, every one to shard 3
+     *
+     */
+    @Test
+    public void addingShardMovesOnlyItsShare() {
+        ConsistentHashRing ring = new ConsistentHashRing().withShard("a").withShard("b").withShard("c");
+        ConsistentHashRing newRing = ring.withShard("d");
+        int[] owned = new int[3];
+        int moved = 0;
+
+        for (int screening = 0; screening < 100000; screening++) {
+            int owner = ring.ownerOf(screening);
+            owned[owner]++;
+            int newOwner = newRing.ownerOf(screening);
+            if (newOwner != owner) {
+                assertEquals(3, newOwner);
+                moved++;
+            }
+        }
+
+        for (int count : owned) {
+            assertTrue(Math.abs(count - 33333) < 5000);
+        }
+        assertTrue(moved > 20000 && moved < 30000);
+    }
+
+    /**
+     *
+     * Reservations survive rebalancing onto a new shard
+     *
+     * Parameters:
+     * 2000 screenings of 10 seats over 2 shards
+     * 3 seats reserved in every screening, then a third shard added
+     *
+     * Expected:
+     * Every screening still has 7 seats available and refuses 8 more
+     * Moved screenings are free on their old shard and hold the 3 seats on the
+     * new one
+     *
+     */
+    @Test
+    public void reservationsMoveWithTheirScreenings() throws IOException {
+        List<OffHeapSeatInventory> shardInventories = new ArrayList<>();
+        try (ShardedSeatInventory seatInventory = new ShardedSeatInventory(2000, 10)) {
+            seatInventory.addShard(startShard(shardInventories));
+            seatInventory.addShard(startShard(shardInventories));
+            for (int screening = 0; screening < 2000; screening++) {
+                assertTrue(seatInventory.reserve(screening, 3));
+            }
+
+            int moved = seatInventory.addShard(startShard(shardInventories));
+
+            assertEquals(3, seatInventory.getShards());
+            assertTrue(moved > 400 && moved < 900);
+            int onNewShard = 0;
+            for (int screening = 0; screening < 2000; screening++) {
+                assertEquals(7, seatInventory.available(screening));
+                assertFalse(seatInventory.reserve(screening, 8));
+                if (shardInventories.get(2).available(screening) == 7) {
+                    onNewShard++;
+                    assertEquals(10, shardInventories.get(0).available(screening));
+                    assertEquals(10, shardInventories.get(1).available(screening));
+                }
+            }
+            assertEquals(moved, onNewShard);
+        }
+    }
+
+    /**
+     *
+     * Failed move is rolled back
+     *
+     * Parameters:
+     * 2000 screenings of 10 seats over 2 shards
+     * 3 seats reserved in every screening, then a third shard added whose
+     * imports fail after 400 screenings, part way through the second batch
+     *
+     * Expected:
+     * Adding the shard fails, 2 shards remain
+     * Every screening still has 7 seats available and refuses 8 more
+     *
+     */
+    @Test
+    public void failedMoveIsRolledBack() throws IOException {
+        List<OffHeapSeatInventory> shardInventories = new ArrayList<>();
+        try (ShardedSeatInventory seatInventory = new ShardedSeatInventory(2000, 10)) {
+            seatInventory.addShard(startShard(shardInventories));
+            seatInventory.addShard(startShard(shardInventories));
+            for (int screening = 0; screening < 2000; screening++) {
+                assertTrue(seatInventory.reserve(screening, 3));
+            }
+
+            InetSocketAddress failingShard = startShard(shardInventories, 400);
+            try {
+                seatInventory.addShard(failingShard);
+                fail("Expected the move to fail");
+            } catch (RuntimeException e) {
+                // the new shard dropped the connection
+            }
+
+            assertEquals(2, seatInventory.getShards());
+            for (int screening = 0; screening < 2000; screening++) {
+                assertEquals(7, seatInventory.available(screening));
+                assertFalse(seatInventory.reserve(screening, 8));
+            }
+        }
+    }
+
+    /**
+     *
+     * Adding a hung shard times out and is rolled back
+     *
+     * Parameters:
+     * 200 screenings of 10 seats over 2 shards, 200 ms shard timeout
+     * 3 seats reserved in every screening, then a shard added that accepts
+     * connections but never answers
+     *
+     * Expected:
+     * Adding the shard fails within 30 seconds, 2 shards remain
+     * Every screening still has 7 seats available
+     *
+     */
+    @Test
+    public void hungShardTimesOut() throws IOException {
+        List<OffHeapSeatInventory> shardInventories = new ArrayList<>();
+        try (ShardedSeatInventory seatInventory = new ShardedSeatInventory(200, 10, 200);
+                ServerSocket hungShard = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            seatInventory.addShard(startShard(shardInventories));
+            seatInventory.addShard(startShard(shardInventories));
+            for (int screening = 0; screening < 200; screening++) {
+                assertTrue(seatInventory.reserve(screening, 3));
+            }
+
+            long start = System.nanoTime();
+            try {
+                seatInventory.addShard(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                        hungShard.getLocalPort()));
+                fail("Expected the move to time out");
+            } catch (RuntimeException e) {
+                // the new shard never answered
+            }
+
+            assertTrue(System.nanoTime() - start < 30_000_000_000L);
+            assertEquals(2, seatInventory.getShards());
+            for (int screening = 0; screening < 200; screening++) {
+                assertEquals(7, seatInventory.available(screening));
+            }
+        }
+    }
+
+    private InetSocketAddress startShard(List<OffHeapSeatInventory> shardInventories) throws IOException {
+        return startShard(shardInventories, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Start a shard whose reservations fail once it has made maxReservations
+     *
+     */
+    private InetSocketAddress startShard(List<OffHeapSeatInventory> shardInventories, int maxReservations)
+            throws IOException {
+        OffHeapSeatInventory shardInventory = new OffHeapSeatInventory(2000, 10);
+        AtomicInteger reservations = new AtomicInteger();
+        ScreeningSeatInventory servedInventory = new ScreeningSeatInventory() {
+            @Override
+            public boolean reserve(int screening, int seats) {
+                if (reservations.incrementAndGet() > maxReservations) {
+                    throw new IllegalStateException("Shard failed");
+                }
+                return shardInventory.reserve(screening, seats);
+            }
+
+            @Override
+            public boolean release(int screening, int seats) {
+                return shardInventory.release(screening, seats);
+            }
+
+            @Override
+            public int available(int screening) {
+                return shardInventory.available(screening);
+            }
+
+            @Override
+            public int getScreenings() {
+                return shardInventory.getScreenings();
+            }
+
+            @Override
+            public int getSeatsPerScreening() {
+                return shardInventory.getSeatsPerScreening();
+            }
+        };
+        SeatShardServer server = new SeatShardServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                servedInventory);
+        server.start();
+        servers.add(server);
+        shardInventories.add(shardInventory);
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+}
@@ -0,0 +1,83 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import thirdparty.paymentgateway.TicketPaymentServiceImpl;
+import thirdparty.seatbooking.SeatReservationServiceImpl;
+
+/**
+ * Local load test for TicketHttpServer, reports requests per second and
+ * latency percentiles over loopback.
+ * 
+ * Usage: TicketHttpServerBenchmark [clients] [seconds] [serverThreads]
+ * 
+ */
+public class TicketHttpServerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int serverThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        // Without TCP_NODELAY small responses wait on delayed acknowledgements
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        ExecutorService serverExecutor = Executors.newFixedThreadPool(serverThreads);
+        TicketHttpServer server = new TicketHttpServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                new TicketServiceImpl(new ValidationService(),
+                        new TicketPurchaseService(new TicketPaymentServiceImpl(), new SeatReservationServiceImpl())),
+                serverExecutor);
+        server.start();
+
+        URI uri = URI.create("http://127.0.0.1:" + server.getPort() + TicketHttpServer.PURCHASES_PATH);
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .POST(HttpRequest.BodyPublishers.ofString("{\"accountId\":1,\"ADULT\":2,\"CHILD\":1,\"INFANT\":1}"))
+                .build();
+
+        run("warm-up", clients, Math.max(1, seconds / 2), uri, request);
+        run("purchase", clients, seconds, uri, request);
+
+        server.stop(0);
+        serverExecutor.shutdown();
+    }
+
+    private static void run(String label, int clients, int seconds, URI uri, HttpRequest request)
+            throws InterruptedException {
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(clients);
+        LatencyRecorder[] recorders = new LatencyRecorder[clients];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < clients; i++) {
+            LatencyRecorder recorder = new LatencyRecorder(1_000_000);
+            recorders[i] = recorder;
+            clientExecutor.execute(() -> {
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                while (System.nanoTime() < deadline) {
+                    long begin = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != 200) {
+                            throw new IllegalStateException("Unexpected status " + response.statusCode());
+                        }
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    recorder.record(System.nanoTime() - begin);
+                }
+            });
+        }
+
+        clientExecutor.shutdown();
+        clientExecutor.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        LatencyRecorder.report(label, System.nanoTime() - start, recorders);
+    }
+}
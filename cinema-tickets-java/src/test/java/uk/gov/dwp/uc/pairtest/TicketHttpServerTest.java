@@ -0,0 +1,236 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+
+/**
+ *
+ * HTTP rules:
+ * - Valid purchases are accepted with status 200
+ * - Invalid or malformed purchases are rejected with status 400 and the reason
+ * - Other purchase failures respond with status 500
+ * - Only POST is allowed
+ * - The readiness probe responds 503 until the warm-up has finished, then 200
+ * 
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TicketHttpServerTest {
+
+    TicketHttpServer ticketHttpServer;
+    ExecutorService executor;
+    HttpClient httpClient;
+    URI purchasesUri;
+
+    @Mock
+    TicketPaymentService mockTicketPaymentService;
+
+    @Mock
+    SeatReservationService mockSeatReservationService;
+
+    @Before
+    public void setup() throws IOException {
+        executor = Executors.newFixedThreadPool(2);
+        TicketServiceImpl ticketService = new TicketServiceImpl(new ValidationService(),
+                new TicketPurchaseService(mockTicketPaymentService, mockSeatReservationService));
+        ticketHttpServer = new TicketHttpServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                ticketService, executor);
+        ticketHttpServer.start();
+
+        httpClient = HttpClient.newHttpClient();
+        purchasesUri = URI.create("http://127.0.0.1:" + ticketHttpServer.getPort() + TicketHttpServer.PURCHASES_PATH);
+    }
+
+    @After
+    public void tearDown() {
+        ticketHttpServer.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * 
+     * Valid purchase is accepted
+     * 
+     * Parameters:
+     * Account ID: 7
+     * Adult Tickets: 2
+     * Child Tickets: 1
+     * Infant Tickets: 1
+     * 
+     * Expected:
+     * Status: 200
+     * Total Ticket Cost: 50
+     * Total Seats Reserved: 3
+     * 
+     */
+    @Test
+    public void validPurchaseIsAccepted() throws Exception {
+        HttpResponse<String> response = post("{ \"accountId\": 7, \"ADULT\": 2, \"CHILD\": 1, \"INFANT\": 1 }");
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().matches("\\{\"status\":\"ACCEPTED\",\"ticketIds\":\\[(\"\\d+\",){3}\"\\d+\"]}"));
+
+        Mockito.verify(mockSeatReservationService).reserveSeat(7L, 3);
+        Mockito.verify(mockTicketPaymentService).makePayment(7L, 50);
+    }
+
+    /**
+     * 
+     * Invalid purchase is rejected with the validation reason
+     * 
+     * Parameters:
+     * Account ID: 7
+     * Infant Tickets: 1
+     * 
+     * Expected:
+     * Status: 400
+     * Reason: Child or infant tickets cannot be purchased without adult tickets
+     * 
+     */
+    @Test
+    public void invalidPurchaseIsRejected() throws Exception {
+        HttpResponse<String> response = post("{\"accountId\":7,\"INFANT\":1}");
+
+        assertEquals(400, response.statusCode());
+        assertEquals("{\"status\":\"REJECTED\",\"reason\":"
+                + "\"Child or infant tickets cannot be purchased without adult tickets\"}", response.body());
+
+        Mockito.verifyNoInteractions(mockTicketPaymentService);
+        Mockito.verifyNoInteractions(mockSeatReservationService);
+    }
+
+    /**
+     * 
+     * Malformed payloads are rejected
+     * 
+     * Parameters:
+     * Unknown field, duplicate field, trailing content, non numeric count
+     * 
+     * Expected:
+     * Status: 400
+     * Reason: Malformed purchase request
+     * 
+     */
+    @Test
+    public void malformedPurchaseIsRejected() throws Exception {
+        String[] payloads = {
+                "{\"accountId\":7,\"SENIOR\":1}",
+                "{\"accountId\":7,\"ADULT\":1,\"ADULT\":1}",
+                "{\"accountId\":7,\"ADULT\":1}}",
+                "{\"accountId\":7,\"ADULT\":\"1\"}",
+                "" };
+
+        for (String payload : payloads) {
+            HttpResponse<String> response = post(payload);
+            assertEquals(400, response.statusCode());
+            assertEquals("{\"status\":\"REJECTED\",\"reason\":\"Malformed purchase request\"}", response.body());
+        }
+
+        Mockito.verifyNoInteractions(mockTicketPaymentService);
+        Mockito.verifyNoInteractions(mockSeatReservationService);
+    }
+
+    /**
+     * 
+     * Purchase failing outside validation responds with a server error
+     * 
+     * Parameters:
+     * Account ID: 7
+     * Adult Tickets: 1
+     * Payment fails with IllegalStateException
+     * 
+     * Expected:
+     * Status: 500
+     * Reason: Purchase failed
+     * 
+     */
+    @Test
+    public void failedPurchaseIsServerError() throws Exception {
+        Mockito.doThrow(new IllegalStateException("Payment gateway unavailable")).when(mockTicketPaymentService)
+                .makePayment(7L, 20);
+
+        HttpResponse<String> response = post("{\"accountId\":7,\"ADULT\":1}");
+
+        assertEquals(500, response.statusCode());
+        assertEquals("{\"status\":\"FAILED\",\"reason\":\"Purchase failed\"}", response.body());
+        Mockito.verify(mockSeatReservationService).releaseSeat(7L, 1);
+    }
+
+    /**
+     * 
+     * Methods other than POST are not allowed
+     * 
+     * Expected:
+     * Status: 405
+     * 
+     */
+    @Test
+    public void getIsNotAllowed() throws Exception {
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(purchasesUri).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(405, response.statusCode());
+    }
+
+    /**
+     * 
+     * Readiness follows the purchase path warm-up
+     * 
+     * Parameters:
+     * Warm-up of 0 iterations, not yet run, then run
+     * 
+     * Expected:
+     * Status 503 and STARTING before the warm-up, 200 and READY after
+     * 
+     */
+    @Test
+    public void readyOnceWarmedUp() throws Exception {
+        PurchasePathWarmup warmup = new PurchasePathWarmup(0, () -> new TicketPurchaseService(
+                mockTicketPaymentService, mockSeatReservationService));
+        TicketHttpServer warmingServer = new TicketHttpServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                new TicketServiceImpl(new ValidationService(),
+                        new TicketPurchaseService(mockTicketPaymentService, mockSeatReservationService)),
+                executor, warmup::isReady);
+        warmingServer.start();
+        try {
+            HttpRequest probe = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + warmingServer.getPort()
+                    + TicketHttpServer.READY_PATH)).GET().build();
+
+            HttpResponse<String> starting = httpClient.send(probe, HttpResponse.BodyHandlers.ofString());
+            warmup.run();
+            HttpResponse<String> ready = httpClient.send(probe, HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(503, starting.statusCode());
+            assertEquals("{\"status\":\"STARTING\"}", starting.body());
+            assertEquals(200, ready.statusCode());
+            assertEquals("{\"status\":\"READY\"}", ready.body());
+        } finally {
+            warmingServer.stop(0);
+        }
+    }
+
+    private HttpResponse<String> post(String body) throws Exception {
+        return httpClient.send(HttpRequest.newBuilder(purchasesUri)
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,197 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.domain.PricingContext;
+import uk.gov.dwp.uc.pairtest.domain.Promotion;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseOrder;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ *
+ * Pipeline rules:
+ * - Valid orders reach every stage and are published to subscribers
+ * - Orders rejected by a stage are passed to the rejection handler and go no
+ * further
+ * - Completion propagates once every in-flight order has been processed
+ * - Orders are priced once in their pricing context, listeners see the amount
+ * paid
+ * 
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TicketPurchasePipelineTest {
+
+    TicketPurchaseService ticketPurchaseService;
+    TicketPurchasePipeline pipeline;
+    List<PurchaseOrder> completed;
+    List<String> rejections;
+    CountDownLatch done;
+
+    @Mock
+    TicketPaymentService mockTicketPaymentService;
+
+    @Mock
+    SeatReservationService mockSeatReservationService;
+
+    @Before
+    public void setup() {
+        completed = new CopyOnWriteArrayList<>();
+        rejections = new CopyOnWriteArrayList<>();
+        done = new CountDownLatch(1);
+
+        ticketPurchaseService = new TicketPurchaseService(mockTicketPaymentService, mockSeatReservationService);
+        pipeline = new TicketPurchasePipeline(new ValidationService(), ticketPurchaseService,
+                2, 2, 2, 4, (order, e) -> rejections.add(e.getMessage()));
+
+        pipeline.subscribe(new Flow.Subscriber<PurchaseOrder>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(PurchaseOrder order) {
+                completed.add(order);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+    }
+
+    /**
+     * 
+     * Valid orders are reserved and paid for through the pipeline
+     * 
+     * Parameters:
+     * 50 orders, Account IDs 1 to 50
+     * Adult Tickets: 2
+     * Infant Tickets: 1
+     * 
+     * Expected:
+     * 50 completed orders
+     * Each account reserves 2 seats and pays 40
+     * 
+     */
+    @Test
+    public void validOrdersCompleteEveryStage() throws InterruptedException {
+        try (SubmissionPublisher<PurchaseOrder> orders = new SubmissionPublisher<>()) {
+            orders.subscribe(pipeline);
+            for (long accountId = 1; accountId <= 50; accountId++) {
+                orders.submit(new PurchaseOrder(accountId,
+                        new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                        new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1)));
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(50, completed.size());
+        assertEquals(0, rejections.size());
+
+        for (long accountId = 1; accountId <= 50; accountId++) {
+            Mockito.verify(mockSeatReservationService).reserveSeat(accountId, 2);
+            Mockito.verify(mockTicketPaymentService).makePayment(accountId, 40);
+        }
+    }
+
+    /**
+     * 
+     * Invalid orders are rejected by the validation stage
+     * 
+     * Parameters:
+     * Account ID: 0, Adult Tickets: 1
+     * Account ID: 2, Child Tickets: 1
+     * Account ID: 3, Adult Tickets: 1
+     * 
+     * Expected:
+     * 1 completed order
+     * Rejections: Invalid Account Id, Child or infant tickets cannot be purchased
+     * without adult tickets
+     * 
+     */
+    @Test
+    public void invalidOrdersAreRejected() throws InterruptedException {
+        try (SubmissionPublisher<PurchaseOrder> orders = new SubmissionPublisher<>()) {
+            orders.subscribe(pipeline);
+            orders.submit(new PurchaseOrder(0L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1)));
+            orders.submit(new PurchaseOrder(2L, new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1)));
+            orders.submit(new PurchaseOrder(3L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1)));
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, completed.size());
+        assertEquals(3L, (long) completed.get(0).getAccountId());
+        assertEquals(2, rejections.size());
+        assertTrue(rejections.contains("Invalid Account Id"));
+        assertTrue(rejections.contains("Child or infant tickets cannot be purchased without adult tickets"));
+
+        Mockito.verify(mockSeatReservationService).reserveSeat(3L, 1);
+        Mockito.verify(mockTicketPaymentService).makePayment(3L, 20);
+        Mockito.verifyNoMoreInteractions(mockSeatReservationService, mockTicketPaymentService);
+    }
+
+    /**
+     * 
+     * Orders are paid for at their promoted price and listeners are told the
+     * amount paid, even when the promotions change after payment
+     * 
+     * Parameters:
+     * Promotion: Members 10% off
+     * Account ID: 1, Members, Adult Tickets: 2
+     * Promotions removed while the payment is taken
+     * 
+     * Expected:
+     * Account pays 36
+     * Listener sees a total cost of 36
+     * 
+     */
+    @Test
+    public void ordersArePricedInTheirContext() throws InterruptedException {
+        List<Integer> listenerCosts = new CopyOnWriteArrayList<>();
+        ticketPurchaseService.setPromotionEngine(new PromotionEngine(20,
+                Collections.singletonList(Promotion.percentOff("Members", 10, false, true))));
+        ticketPurchaseService.addPurchaseListener(
+                (accountId, adultTickets, childTickets, infantTickets, totalSeats, totalCost) -> listenerCosts
+                        .add(totalCost));
+        Mockito.doAnswer(invocation -> {
+            ticketPurchaseService.setPromotionEngine(null);
+            return null;
+        }).when(mockTicketPaymentService).makePayment(1L, 36);
+
+        try (SubmissionPublisher<PurchaseOrder> orders = new SubmissionPublisher<>()) {
+            orders.subscribe(pipeline);
+            orders.submit(new PurchaseOrder(1L, PricingContext.MEMBER,
+                    new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2)));
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, completed.size());
+        assertEquals(PricingContext.MEMBER, completed.get(0).getPricingContext());
+        Mockito.verify(mockTicketPaymentService).makePayment(1L, 36);
+        assertEquals(Collections.singletonList(36), listenerCosts);
+    }
+}
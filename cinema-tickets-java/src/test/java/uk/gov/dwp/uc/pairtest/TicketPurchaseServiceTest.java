@@ -0,0 +1,321 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.domain.TicketPurchaseReceipt;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ *
+ * Compensation rules:
+ * - Seats are released when the payment fails
+ * - Payments are refunded when the seat reservation fails (concurrent mode)
+ * - Nothing is compensated when both fail, the reservation failure is thrown
+ * 
+ * Receipt rules:
+ * - One unique ticket id per ticket, infants included
+ * - Services not given a ticket id generator never issue the same id
+ * 
+ * Listener rules:
+ * - A failing listener never fails a completed purchase
+ * 
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TicketPurchaseServiceTest {
+
+    ExecutorService executor;
+    TicketPurchaseService sequentialPurchaseService;
+    TicketPurchaseService concurrentPurchaseService;
+
+    @Mock
+    TicketPaymentService mockTicketPaymentService;
+
+    @Mock
+    SeatReservationService mockSeatReservationService;
+
+    @Before
+    public void setup() {
+        executor = Executors.newSingleThreadExecutor();
+        sequentialPurchaseService = new TicketPurchaseService(mockTicketPaymentService, mockSeatReservationService);
+        concurrentPurchaseService = new TicketPurchaseService(mockTicketPaymentService, mockSeatReservationService,
+                executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 
+     * Concurrent purchase reserves and pays
+     * 
+     * Parameters:
+     * Account ID: 1
+     * Adult Tickets: 2
+     * Child Tickets: 1
+     * 
+     * Expected:
+     * Total Ticket Cost: 50
+     * Total Seats Reserved: 3
+     * 
+     */
+    @Test
+    public void concurrentPurchaseReservesAndPays() {
+        concurrentPurchaseService.purchase(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1));
+
+        Mockito.verify(mockSeatReservationService).reserveSeat(1L, 3);
+        Mockito.verify(mockTicketPaymentService).makePayment(1L, 50);
+        Mockito.verifyNoMoreInteractions(mockSeatReservationService, mockTicketPaymentService);
+    }
+
+    /**
+     * 
+     * Failed payment releases the reserved seats
+     * 
+     * Parameters:
+     * Account ID: 2
+     * Adult Tickets: 3
+     * Payment: fails
+     * 
+     * Expected:
+     * Payment failure is thrown
+     * 3 seats released for both modes
+     * 
+     */
+    @Test
+    public void failedPaymentReleasesSeats() {
+        Mockito.doThrow(new IllegalStateException("Card declined")).when(mockTicketPaymentService)
+                .makePayment(2L, 60);
+
+        for (TicketPurchaseService purchaseService : new TicketPurchaseService[] { sequentialPurchaseService,
+                concurrentPurchaseService }) {
+            try {
+                purchaseService.purchase(2L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 3));
+                fail("Expected payment failure");
+            } catch (IllegalStateException e) {
+                assertEquals("Card declined", e.getMessage());
+            }
+        }
+
+        Mockito.verify(mockSeatReservationService, Mockito.times(2)).reserveSeat(2L, 3);
+        Mockito.verify(mockSeatReservationService, Mockito.times(2)).releaseSeat(2L, 3);
+        Mockito.verify(mockTicketPaymentService, Mockito.never()).refundPayment(Mockito.anyLong(), Mockito.anyInt());
+    }
+
+    /**
+     * 
+     * Failed reservation refunds the payment in concurrent mode
+     * 
+     * Parameters:
+     * Account ID: 3
+     * Adult Tickets: 1
+     * Infant Tickets: 1
+     * Seat reservation: fails
+     * 
+     * Expected:
+     * Reservation failure is thrown
+     * Payment of 20 refunded
+     * 
+     */
+    @Test
+    public void failedReservationRefundsPayment() {
+        Mockito.doThrow(new IllegalStateException("Screening full")).when(mockSeatReservationService)
+                .reserveSeat(3L, 1);
+
+        try {
+            concurrentPurchaseService.purchase(3L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1),
+                    new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1));
+            fail("Expected reservation failure");
+        } catch (IllegalStateException e) {
+            assertEquals("Screening full", e.getMessage());
+        }
+
+        Mockito.verify(mockTicketPaymentService).makePayment(3L, 20);
+        Mockito.verify(mockTicketPaymentService).refundPayment(3L, 20);
+        Mockito.verify(mockSeatReservationService, Mockito.never()).releaseSeat(Mockito.anyLong(), Mockito.anyInt());
+    }
+
+    /**
+     * 
+     * Nothing is compensated when both the reservation and payment fail
+     * 
+     * Parameters:
+     * Account ID: 4
+     * Adult Tickets: 1
+     * Seat reservation: fails
+     * Payment: fails
+     * 
+     * Expected:
+     * Reservation failure is thrown with the payment failure suppressed
+     * No release or refund
+     * 
+     */
+    @Test
+    public void failedReservationAndPaymentAreNotCompensated() {
+        Mockito.doThrow(new IllegalStateException("Screening full")).when(mockSeatReservationService)
+                .reserveSeat(4L, 1);
+        Mockito.doThrow(new IllegalStateException("Card declined")).when(mockTicketPaymentService)
+                .makePayment(4L, 20);
+
+        try {
+            concurrentPurchaseService.purchase(4L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+            fail("Expected reservation failure");
+        } catch (IllegalStateException e) {
+            assertEquals("Screening full", e.getMessage());
+            assertEquals("Card declined", e.getSuppressed()[0].getMessage());
+        }
+
+        Mockito.verify(mockSeatReservationService, Mockito.never()).releaseSeat(Mockito.anyLong(), Mockito.anyInt());
+        Mockito.verify(mockTicketPaymentService, Mockito.never()).refundPayment(Mockito.anyLong(), Mockito.anyInt());
+    }
+
+    /**
+     * 
+     * Receipt has one ticket id per ticket
+     * 
+     * Parameters:
+     * Account ID: 5
+     * Adult Tickets: 2
+     * Child Tickets: 1
+     * Infant Tickets: 2
+     * 
+     * Expected:
+     * 5 increasing ticket ids from node 7
+     * Total Seats: 3
+     * Total Cost: 50
+     * 
+     */
+    @Test
+    public void receiptHasOneTicketIdPerTicket() {
+        TicketPurchaseService purchaseService = new TicketPurchaseService(mockTicketPaymentService,
+                mockSeatReservationService, null, null, new TicketIdGenerator(7));
+
+        TicketPurchaseReceipt receipt = purchaseService.purchase(5L,
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1),
+                new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 2));
+
+        long[] ticketIds = receipt.getTicketIds();
+        assertEquals(5L, receipt.getAccountId());
+        assertEquals(5, ticketIds.length);
+        assertEquals(3, receipt.getTotalSeats());
+        assertEquals(50, receipt.getTotalCost());
+        for (int i = 0; i < ticketIds.length; i++) {
+            long nodeId = (ticketIds[i] >>> TicketIdGenerator.SEQUENCE_BITS) & ((1 << TicketIdGenerator.NODE_BITS) - 1);
+            assertEquals(7, nodeId);
+            assertTrue(i == 0 || ticketIds[i] > ticketIds[i - 1]);
+        }
+    }
+
+    /**
+     * 
+     * Ticket ids are unique across threads
+     * 
+     * Parameters:
+     * 8 threads, 20000 orders of 20 tickets each
+     * 
+     * Expected:
+     * 3200000 distinct ticket ids
+     * 
+     */
+    @Test
+    public void ticketIdsAreUniqueAcrossThreads() throws InterruptedException {
+        TicketIdGenerator ticketIdGenerator = new TicketIdGenerator(1);
+        Set<Long> ticketIds = ConcurrentHashMap.newKeySet();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+
+        for (int i = 0; i < 8; i++) {
+            threads.execute(() -> {
+                for (int j = 0; j < 20000; j++) {
+                    for (long ticketId : ticketIdGenerator.nextIds(20)) {
+                        ticketIds.add(ticketId);
+                    }
+                }
+            });
+        }
+        threads.shutdown();
+        assertTrue(threads.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertEquals(3200000, ticketIds.size());
+    }
+
+    /**
+     * 
+     * Services built without a generator share the process default
+     * 
+     * Parameters:
+     * 2 services, 1000 purchases of 20 adult tickets each, alternating
+     * 
+     * Expected:
+     * 20000 distinct ticket ids
+     * 
+     */
+    @Test
+    public void defaultServicesShareTicketIds() {
+        TicketPurchaseService[] purchaseServices = {
+                new TicketPurchaseService(mockTicketPaymentService, mockSeatReservationService),
+                new TicketPurchaseService(mockTicketPaymentService, mockSeatReservationService) };
+        Set<Long> ticketIds = new HashSet<>();
+
+        for (int i = 0; i < 1000; i++) {
+            for (long ticketId : purchaseServices[i % 2]
+                    .purchase(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 20)).getTicketIds()) {
+                ticketIds.add(ticketId);
+            }
+        }
+
+        assertEquals(20000, ticketIds.size());
+    }
+
+    /**
+     * 
+     * Failing listener does not fail the purchase
+     * 
+     * Parameters:
+     * Account ID: 1
+     * Adult Tickets: 1
+     * First listener throws, second records purchases
+     * 
+     * Expected:
+     * Receipt for 1 seat, second listener notified, 1 listener failure
+     * 
+     */
+    @Test
+    public void failingListenerDoesNotFailPurchase() {
+        long[] notified = new long[1];
+        sequentialPurchaseService.addPurchaseListener((accountId, adultTickets, childTickets, infantTickets,
+                totalSeats, totalCost) -> {
+            throw new IllegalStateException("Store unavailable");
+        });
+        sequentialPurchaseService.addPurchaseListener((accountId, adultTickets, childTickets, infantTickets,
+                totalSeats, totalCost) -> notified[0] = accountId);
+
+        TicketPurchaseReceipt receipt = sequentialPurchaseService.purchase(1L,
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+
+        assertEquals(1, receipt.getTotalSeats());
+        assertEquals(1L, notified[0]);
+        assertEquals(1, sequentialPurchaseService.getListenerFailures());
+        Mockito.verify(mockTicketPaymentService).makePayment(1L, 20);
+    }
+}
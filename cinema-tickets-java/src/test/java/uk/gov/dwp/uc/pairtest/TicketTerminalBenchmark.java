@@ -0,0 +1,79 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import thirdparty.paymentgateway.TicketPaymentServiceImpl;
+import thirdparty.seatbooking.SeatReservationServiceImpl;
+
+/**
+ * Loopback benchmark for TicketTerminalServer, reports requests per second and
+ * latency percentiles with a fixed number of requests in flight per
+ * connection.
+ * 
+ * Usage: TicketTerminalBenchmark [connections] [inFlightPerConnection] [seconds]
+ * 
+ */
+public class TicketTerminalBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int inFlight = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        ExecutorService serverExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        TicketTerminalServer server = new TicketTerminalServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                new TicketServiceImpl(new ValidationService(),
+                        new TicketPurchaseService(new TicketPaymentServiceImpl(), new SeatReservationServiceImpl())),
+                serverExecutor);
+        server.start();
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+
+        run("warm-up", address, connections, inFlight, Math.max(1, seconds / 2));
+        run("purchase", address, connections, inFlight, seconds);
+
+        server.stop();
+        serverExecutor.shutdown();
+    }
+
+    private static void run(String label, InetSocketAddress address, int connections, int inFlight, int seconds)
+            throws Exception {
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(connections);
+        LatencyRecorder[] recorders = new LatencyRecorder[connections];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < connections; i++) {
+            LatencyRecorder recorder = new LatencyRecorder(5_000_000);
+            recorders[i] = recorder;
+            TicketTerminalClient client = new TicketTerminalClient(address);
+            clientExecutor.execute(() -> {
+                Semaphore window = new Semaphore(inFlight);
+                try (client) {
+                    while (System.nanoTime() < deadline) {
+                        window.acquire();
+                        long begin = System.nanoTime();
+                        client.purchase(1L, 2, 1, 1).whenComplete((resultCode, e) -> {
+                            synchronized (recorder) {
+                                recorder.record(System.nanoTime() - begin);
+                            }
+                            window.release();
+                        });
+                    }
+                    window.acquire(inFlight);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        clientExecutor.shutdown();
+        clientExecutor.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        LatencyRecorder.report(label, System.nanoTime() - start, recorders);
+    }
+}
@@ -0,0 +1,144 @@
+package uk.gov.dwp.uc.pairtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+
+/**
+ *
+ * Terminal protocol rules:
+ * - Valid purchases are answered with RESULT_ACCEPTED
+ * - Invalid purchases are answered with RESULT_REJECTED
+ * - Purchases the executor refuses are answered with RESULT_FAILED and the
+ * connection stays open
+ * - Many requests can be in flight on one connection, each response matched by
+ * request id
+ * 
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TicketTerminalServerTest {
+
+    TicketTerminalServer ticketTerminalServer;
+    TicketTerminalClient ticketTerminalClient;
+    ExecutorService executor;
+
+    @Mock
+    TicketPaymentService mockTicketPaymentService;
+
+    @Mock
+    SeatReservationService mockSeatReservationService;
+
+    @Before
+    public void setup() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        TicketServiceImpl ticketService = new TicketServiceImpl(new ValidationService(),
+                new TicketPurchaseService(mockTicketPaymentService, mockSeatReservationService));
+        ticketTerminalServer = new TicketTerminalServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                ticketService, executor);
+        ticketTerminalServer.start();
+        ticketTerminalClient = new TicketTerminalClient(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), ticketTerminalServer.getPort()));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ticketTerminalClient.close();
+        ticketTerminalServer.stop();
+        executor.shutdown();
+    }
+
+    /**
+     * 
+     * Valid and invalid purchases are answered with their result codes
+     * 
+     * Parameters:
+     * Account ID: 4, Adult Tickets: 2, Child Tickets: 1, Infant Tickets: 1
+     * Account ID: 0, Adult Tickets: 1
+     * Account ID: 5, Infant Tickets: 1
+     * 
+     * Expected:
+     * ACCEPTED, REJECTED, REJECTED
+     * Account 4 reserves 3 seats and pays 50
+     * 
+     */
+    @Test
+    public void purchasesAreAnsweredWithResultCodes() throws Exception {
+        CompletableFuture<Integer> valid = ticketTerminalClient.purchase(4L, 2, 1, 1);
+        CompletableFuture<Integer> invalidAccount = ticketTerminalClient.purchase(0L, 1, 0, 0);
+        CompletableFuture<Integer> infantOnly = ticketTerminalClient.purchase(5L, 0, 0, 1);
+
+        assertEquals(TicketTerminalProtocol.RESULT_ACCEPTED, (int) valid.get(10, TimeUnit.SECONDS));
+        assertEquals(TicketTerminalProtocol.RESULT_REJECTED, (int) invalidAccount.get(10, TimeUnit.SECONDS));
+        assertEquals(TicketTerminalProtocol.RESULT_REJECTED, (int) infantOnly.get(10, TimeUnit.SECONDS));
+
+        Mockito.verify(mockSeatReservationService).reserveSeat(4L, 3);
+        Mockito.verify(mockTicketPaymentService).makePayment(4L, 50);
+        Mockito.verifyNoMoreInteractions(mockSeatReservationService, mockTicketPaymentService);
+    }
+
+    /**
+     * 
+     * Pipelined requests all complete
+     * 
+     * Parameters:
+     * 2000 requests sent without waiting, Account IDs 1 to 2000, 1 adult each
+     * 
+     * Expected:
+     * 2000 ACCEPTED responses
+     * 
+     */
+    @Test
+    public void pipelinedRequestsAllComplete() throws Exception {
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (long accountId = 1; accountId <= 2000; accountId++) {
+            results.add(ticketTerminalClient.purchase(accountId, 1, 0, 0));
+        }
+
+        for (CompletableFuture<Integer> result : results) {
+            assertEquals(TicketTerminalProtocol.RESULT_ACCEPTED, (int) result.get(10, TimeUnit.SECONDS));
+        }
+        Mockito.verify(mockSeatReservationService, Mockito.times(2000)).reserveSeat(Mockito.anyLong(), Mockito.eq(1));
+    }
+
+    /**
+     * 
+     * Purchases refused by the executor fail without dropping the connection
+     * 
+     * Parameters:
+     * Executor shut down
+     * Account ID: 1, Adult Tickets: 1, twice
+     * 
+     * Expected:
+     * FAILED, FAILED
+     * No seats reserved or payments taken
+     * 
+     */
+    @Test
+    public void refusedPurchasesFail() throws Exception {
+        executor.shutdown();
+
+        assertEquals(TicketTerminalProtocol.RESULT_FAILED,
+                (int) ticketTerminalClient.purchase(1L, 1, 0, 0).get(10, TimeUnit.SECONDS));
+        assertEquals(TicketTerminalProtocol.RESULT_FAILED,
+                (int) ticketTerminalClient.purchase(1L, 1, 0, 0).get(10, TimeUnit.SECONDS));
+        Mockito.verifyNoInteractions(mockSeatReservationService, mockTicketPaymentService);
+    }
+}